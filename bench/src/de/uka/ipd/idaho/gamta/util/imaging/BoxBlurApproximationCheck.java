@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitaet Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITAET KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util.imaging;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+import de.uka.ipd.idaho.gamta.util.imaging.Imaging.AnalysisImage;
+
+/**
+ * Error bound check for the box blur approximation of the Gaussian blur in
+ * Imaging. This class blurs copies of the same images with both the exact
+ * blur and the box blur approximation, and checks that the brightness of no
+ * pixel deviates by more than the documented bound of MAX_DEVIATION levels,
+ * both for synthetic page images and for random noise with hard edges, which
+ * is the worst case for the approximation. The check covers equal as well as
+ * different radii in either direction. For sharply edged blurs and for radii
+ * below 3, the box blur mode has to fall back to the exact blur, so results
+ * have to be identical. This class does not require JMH, and its main()
+ * method exits with status 1 if any check fails, so it can run as part of a
+ * build.
+ * 
+ * @author sautter
+ */
+public class BoxBlurApproximationCheck {
+	
+	/** the maximum deviation of any single pixel, in brightness levels (out of 128) */
+	public static final int MAX_DEVIATION = 8;
+	
+	private static int failures = 0;
+	
+	/**
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		int[][] radii = {{3, 3}, {4, 4}, {5, 7}, {8, 3}, {10, 10}, {3, 16}};
+		BufferedImage[] images = {
+			SyntheticPageImages.createPageImage(72, 4711),
+			SyntheticPageImages.createPageImage(150, 4711),
+			createNoiseImage(400, 300, 4711),
+		};
+		String[] names = {
+			"page, 72 dpi",
+			"page, 150 dpi",
+			"noise",
+		};
+		
+		for (int i = 0; i < images.length; i++) {
+			for (int r = 0; r < radii.length; r++)
+				check(names[i], images[i], radii[r][0], radii[r][1], false, MAX_DEVIATION);
+			
+			//	box blur mode has to fall back to the exact blur
+			check(names[i], images[i], 2, 2, false, 0);
+			check(names[i], images[i], 2, 5, false, 0);
+			check(names[i], images[i], 4, 4, true, 0);
+		}
+		
+		if (failures == 0)
+			System.out.println("Box blur approximation check passed");
+		else {
+			System.out.println("Box blur approximation check failed in " + failures + " cases");
+			System.exit(1);
+		}
+	}
+	
+	/* create an image of black and white blocks of random size, to have as
+	 * many hard edges as possible */
+	private static BufferedImage createNoiseImage(int width, int height, long seed) {
+		Random rand = new Random(seed);
+		BufferedImage ni = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		WritableRaster raster = ni.getRaster();
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			if ((y == 0) || (rand.nextInt(4) == 0)) {
+				for (int x = 0; x < width; x++)
+					row[x] = (((x == 0) || (rand.nextInt(3) == 0)) ? (rand.nextBoolean() ? 0 : 255) : row[x-1]);
+			}
+			raster.setSamples(0, y, width, 1, 0, row);
+		}
+		return ni;
+	}
+	
+	private static void check(String name, BufferedImage image, int hRadius, int vRadius, boolean sharpEdge, int maxDeviation) {
+		name = (name + ", radius " + hRadius + "/" + vRadius + (sharpEdge ? ", sharp edge" : ""));
+		byte[] expected = blur(image, hRadius, vRadius, sharpEdge, Imaging.BLUR_MODE_EXACT);
+		byte[] actual = blur(image, hRadius, vRadius, sharpEdge, Imaging.BLUR_MODE_BOX_APPROXIMATION);
+		int width = image.getWidth();
+		int maxDev = 0;
+		int maxDevIndex = -1;
+		for (int i = 0; i < expected.length; i++) {
+			int dev = Math.abs(expected[i] - actual[i]);
+			if (dev > maxDev) {
+				maxDev = dev;
+				maxDevIndex = i;
+			}
+		}
+		if (maxDev > maxDeviation)
+			fail(name, ("brightness " + actual[maxDevIndex] + " instead of " + expected[maxDevIndex] + " at " + (maxDevIndex % width) + "/" + (maxDevIndex / width) + ", deviation " + maxDev + " exceeds " + maxDeviation));
+	}
+	
+	/* blur a copy of an image and return the resulting brightness */
+	private static byte[] blur(BufferedImage image, int hRadius, int vRadius, boolean sharpEdge, int blurMode) {
+		BufferedImage bi = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+		bi.setData(image.getRaster());
+		AnalysisImage ai = Imaging.wrapImage(bi, null);
+		Imaging.gaussBlur(ai, hRadius, vRadius, sharpEdge, blurMode);
+		return ai.getBrightnessPlane();
+	}
+	
+	private static void fail(String name, String message) {
+		System.out.println(name + ": " + message);
+		failures++;
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitaet Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITAET KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util.imaging;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import de.uka.ipd.idaho.gamta.util.imaging.Imaging.Complex;
+
+/**
+ * Regression check for the FFT code in Imaging. This class holds a copy of
+ * the original recursive Cooley-Tukey FFT over Complex objects, as well as
+ * of the original per-pixel getFft() image sampling, and compares the
+ * results of the current implementations against them, both on random
+ * vectors and on synthetic page images. All values have to agree within a
+ * small tolerance relative to the magnitude of the transform, as the
+ * iterative FFT adds up the same terms in a different order. This class does
+ * not require JMH, and its main() method exits with status 1 if any check
+ * fails, so it can run as part of a build.
+ * 
+ * @author sautter
+ */
+public class FftRegressionCheck {
+	
+	/** the maximum deviation of any single value, relative to the largest absolute value in the transform */
+	public static final double TOLERANCE = 1e-9;
+	
+	private static int failures = 0;
+	
+	/**
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		Random rand = new Random(4711);
+		
+		//	random vectors of all power of 2 lengths up to 4096
+		for (int n = 1; n <= 4096; n <<= 1)
+			for (int r = 0; r < 4; r++) {
+				Complex[] x = new Complex[n];
+				for (int i = 0; i < n; i++)
+					x[i] = new Complex(((rand.nextDouble() * 2) - 1), ((r == 0) ? 0 : ((rand.nextDouble() * 2) - 1)));
+				Complex[] expected = computeFftOriginal(x);
+				check(("computeFft(Complex[]), n=" + n + ", run " + r), new Complex[][] {expected}, new Complex[][] {Imaging.computeFft(x)});
+				double[] re = new double[n];
+				double[] im = new double[n];
+				for (int i = 0; i < n; i++) {
+					re[i] = x[i].re;
+					im[i] = x[i].im;
+				}
+				Imaging.computeFft(re, im);
+				Complex[] y = new Complex[n];
+				for (int i = 0; i < n; i++)
+					y[i] = new Complex(re[i], im[i]);
+				check(("computeFft(double[], double[]), n=" + n + ", run " + r), new Complex[][] {expected}, new Complex[][] {y});
+			}
+		
+		//	synthetic page images, plus small random images smaller than the transform
+		BufferedImage[] images = {
+			SyntheticPageImages.createPageImage(150, 4711),
+			SyntheticPageImages.createPageImage(72, 815),
+			createNoiseImage(100, 60, BufferedImage.TYPE_INT_RGB, rand),
+			createNoiseImage(37, 211, BufferedImage.TYPE_BYTE_GRAY, rand),
+		};
+		int[][] tdims = {
+			{256, 256},
+			{128, 64},
+			{64, 512},
+		};
+		for (int i = 0; i < images.length; i++)
+			for (int t = 0; t < tdims.length; t++)
+				for (int r = 0; r < 2; r++) {
+					boolean repeatImage = (r == 0);
+					Complex[][] expected = getFftOriginal(images[i], tdims[t][0], tdims[t][1], repeatImage);
+					Imaging.getFftCache().clear();
+					Complex[][] fft = Imaging.getFft(images[i], tdims[t][0], tdims[t][1], repeatImage);
+					check(("getFft(), image " + i + " (" + images[i].getWidth() + "x" + images[i].getHeight() + "), " + tdims[t][0] + "x" + tdims[t][1] + ", repeat=" + repeatImage), expected, fft);
+				}
+		
+		if (failures == 0)
+			System.out.println("FFT regression check passed");
+		else {
+			System.out.println("FFT regression check failed in " + failures + " cases");
+			System.exit(1);
+		}
+	}
+	
+	private static BufferedImage createNoiseImage(int width, int height, int type, Random rand) {
+		BufferedImage bi = new BufferedImage(width, height, type);
+		for (int x = 0; x < width; x++)
+			for (int y = 0; y < height; y++)
+				bi.setRGB(x, y, rand.nextInt(0x01000000));
+		return bi;
+	}
+	
+	private static void check(String name, Complex[][] expected, Complex[][] actual) {
+		if (expected.length != actual.length) {
+			fail(name, ("transform width " + actual.length + " instead of " + expected.length));
+			return;
+		}
+		double max = 0;
+		for (int x = 0; x < expected.length; x++)
+			for (int y = 0; y < expected[x].length; y++)
+				max = Math.max(max, expected[x][y].abs());
+		double tolerance = (TOLERANCE * Math.max(1, max));
+		for (int x = 0; x < expected.length; x++) {
+			if (expected[x].length != actual[x].length) {
+				fail(name, ("transform height " + actual[x].length + " instead of " + expected[x].length + " at " + x));
+				return;
+			}
+			for (int y = 0; y < expected[x].length; y++) {
+				double dRe = Math.abs(expected[x][y].re - actual[x][y].re);
+				double dIm = Math.abs(expected[x][y].im - actual[x][y].im);
+				if ((dRe > tolerance) || (dIm > tolerance)) {
+					fail(name, ("value " + actual[x][y] + " instead of " + expected[x][y] + " at " + x + "/" + y));
+					return;
+				}
+			}
+		}
+	}
+	
+	private static void fail(String name, String message) {
+		System.out.println(name + ": " + message);
+		failures++;
+	}
+	
+	/* original recursive radix 2 Cooley-Tukey FFT, as in Imaging before the
+	 * switch to the iterative in-place implementation */
+	private static Complex[] computeFftOriginal(Complex[] x) {
+		int N = x.length;
+		
+		// base case
+		if (N == 1)
+			return new Complex[] {x[0]};
+		
+		// radix 2 Cooley-Tukey FFT
+		if (N % 2 != 0)
+			throw new RuntimeException("N is not a power of 2");
+		
+		// fft of even terms
+		Complex[] even = new Complex[N/2];
+		for (int k = 0; k < N/2; k++)
+			even[k] = x[2*k];
+		Complex[] q = computeFftOriginal(even);
+		
+		// fft of odd terms
+		Complex[] odd  = even;  // reuse the array
+		for (int k = 0; k < N/2; k++)
+			odd[k] = x[2*k + 1];
+		Complex[] r = computeFftOriginal(odd);
+		
+		// combine
+		Complex[] y = new Complex[N];
+		for (int k = 0; k < N/2; k++) {
+			double kth = -2 * k * Math.PI / N;
+			Complex wk = new Complex(Math.cos(kth), Math.sin(kth));
+			y[k]	   = q[k].plus(wk.times(r[k]));
+			y[k + N/2] = q[k].minus(wk.times(r[k]));
+		}
+		return y;
+	}
+	
+	/* original image sampling and 2D transform of Imaging.getFft(), without
+	 * the caching */
+	private static Complex[][] getFftOriginal(BufferedImage image, int tdimx, int tdimy, boolean repeatImage) {
+		int iw = image.getWidth();
+		int ih = image.getHeight();
+		int agg = 1;
+		agg = Math.max(agg, ((iw + tdimx - 1) / tdimx));
+		agg = Math.max(agg, ((ih + tdimy - 1) / tdimy));
+		
+		Complex[][] ytrans = new Complex[tdimy][]; // first dimension is vertical here
+		Complex[] row;
+		int ix;
+		int iy;
+		float[] hsb = new float[3];
+		float bs;
+		int rgb;
+		int wrgb = Color.WHITE.getRGB();
+		for (int y = 0; y < tdimy; y++) {
+			row = new Complex[tdimx];
+			for (int x = 0; x < tdimx; x++) {
+				ix = (x * agg);
+				iy = (y * agg);
+				bs = 0;
+				for (int ax = 0; ax < agg; ax++) {
+					for (int ay = 0; ay < agg; ay++) {
+						if (repeatImage)
+							rgb = image.getRGB(((ix + ax) % iw), ((iy + ay) % ih));
+						else rgb = ((y < ih) ? image.getRGB(((ix + ax) % iw), y) : wrgb);
+						hsb = new Color(rgb).getColorComponents(hsb);
+						bs += hsb[2];
+					}
+				}
+				row[x] = new Complex((bs / (agg * agg)), 0);
+			}
+			ytrans[y] = computeFftOriginal(row);
+		}
+		
+		Complex[] col;
+		Complex[][] fft = new Complex[tdimx][];
+		for (int x = 0; x < tdimx; x++) {
+			col = new Complex[tdimy];
+			for (int y = 0; y < tdimy; y++)
+				col[y] = ytrans[y][x];
+			fft[x] = computeFftOriginal(col);
+			if (x == 0)
+				fft[0][0] = new Complex(0, 0); // exclude DC
+		}
+		return fft;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitaet Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITAET KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util.imaging;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.uka.ipd.idaho.gamta.util.ProgressMonitor;
+import de.uka.ipd.idaho.gamta.util.imaging.Imaging.AnalysisImage;
+import de.uka.ipd.idaho.gamta.util.imaging.Imaging.ImagePartRectangle;
+
+/**
+ * JMH benchmarks for the main entry points of Imaging, running on synthetic
+ * page images at several resolutions. As most of the benchmarked methods
+ * modify the image they work on, each invocation works on a fresh copy of
+ * the page image, and the FFT cache is cleared before each invocation. The
+ * content box for the column and row splitting benchmarks comes from a
+ * separate copy of the page image, so computing it does not leave any
+ * brightness data behind in the analysis image the other benchmarks work on.
+ * 
+ * @author sautter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImagingBenchmark {
+	
+	/** the resolution of the synthetic page image */
+	@Param({"150", "300", "600"})
+	public int dpi;
+	
+	private BufferedImage pageImage;
+	private AnalysisImage analysisImage;
+	private ImagePartRectangle contentBox;
+	
+	@Setup(Level.Trial)
+	public void createPageImage() {
+		this.pageImage = SyntheticPageImages.createPageImage(this.dpi, 4711);
+	}
+	
+	@Setup(Level.Invocation)
+	public void wrapPageImage() {
+		Imaging.getFftCache().clear();
+		this.analysisImage = Imaging.wrapImage(SyntheticPageImages.copyImage(this.pageImage), null);
+		this.contentBox = Imaging.getContentBox(Imaging.wrapImage(SyntheticPageImages.copyImage(this.pageImage), null));
+	}
+	
+	@Benchmark
+	public byte[] getBrightnessPlane() {
+		return this.analysisImage.getBrightnessPlane();
+	}
+	
+	@Benchmark
+	public byte[][] getBrightness() {
+		return this.analysisImage.getBrightness();
+	}
+	
+	@Benchmark
+	public boolean gaussBlur() {
+		return Imaging.gaussBlur(this.analysisImage, (this.dpi / 25));
+	}
+	
+	@Benchmark
+	public Imaging.Complex[][] getFft() {
+		return this.analysisImage.getFft();
+	}
+	
+	@Benchmark
+	public boolean correctPageRotation() {
+		return Imaging.correctPageRotation(this.analysisImage, 0.1, Imaging.ADJUST_MODE_SQUARE_ROOT);
+	}
+	
+	@Benchmark
+	public boolean eliminateBackground() {
+		return Imaging.eliminateBackground(this.analysisImage, this.dpi);
+	}
+	
+	@Benchmark
+	public boolean featherDust() {
+		return Imaging.featherDust(this.analysisImage, this.dpi, false, true);
+	}
+	
+	@Benchmark
+	public int[][] getRegionColoring() {
+		return Imaging.getRegionColoring(this.analysisImage, ((byte) 120), true);
+	}
+	
+	@Benchmark
+	public ImagePartRectangle[] splitIntoColumns() {
+		return Imaging.splitIntoColumns(this.contentBox);
+	}
+	
+	@Benchmark
+	public ImagePartRectangle[] splitIntoRows() {
+		return Imaging.splitIntoRows(this.contentBox);
+	}
+	
+	@Benchmark
+	public AnalysisImage correctImage() {
+		return Imaging.correctImage(this.analysisImage, this.dpi, ProgressMonitor.silent);
+	}
+}
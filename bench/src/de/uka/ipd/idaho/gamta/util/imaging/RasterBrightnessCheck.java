@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitaet Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITAET KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util.imaging;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+
+/**
+ * Identity check for the raster fast paths that compute the brightness of
+ * analysis images. This class holds a copy of the original per-pixel
+ * brightness computation from AnalysisImage, and checks that the brightness
+ * plane computed from the raster data is byte for byte the same for
+ * synthetic page images of every image type with a dedicated fast path
+ * (TYPE_BYTE_GRAY, TYPE_BYTE_BINARY with 1, 2, and 4 bits per pixel,
+ * TYPE_INT_RGB, and TYPE_3BYTE_BGR), as well as for one type going through
+ * the generic fallback. As the fast paths compute offsets into the raster
+ * data themselves, the check also covers sub images, whose rasters are
+ * translated against their data. This class does not require JMH, and its
+ * main() method exits with status 1 if any check fails, so it can run as
+ * part of a build.
+ * 
+ * @author sautter
+ */
+public class RasterBrightnessCheck {
+	
+	private static int failures = 0;
+	
+	/**
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		int[] dpis = {72, 150};
+		for (int d = 0; d < dpis.length; d++) {
+			check(("TYPE_BYTE_GRAY, " + dpis[d] + " dpi"), SyntheticPageImages.createPageImage(dpis[d], 4711, BufferedImage.TYPE_BYTE_GRAY));
+			check(("TYPE_BYTE_BINARY, " + dpis[d] + " dpi"), SyntheticPageImages.createPageImage(dpis[d], 4711, BufferedImage.TYPE_BYTE_BINARY));
+			check(("TYPE_BYTE_BINARY (2 bit), " + dpis[d] + " dpi"), createPackedPageImage(dpis[d], 2));
+			check(("TYPE_BYTE_BINARY (4 bit), " + dpis[d] + " dpi"), createPackedPageImage(dpis[d], 4));
+			check(("TYPE_INT_RGB, " + dpis[d] + " dpi"), SyntheticPageImages.createPageImage(dpis[d], 4711, BufferedImage.TYPE_INT_RGB));
+			check(("TYPE_3BYTE_BGR, " + dpis[d] + " dpi"), SyntheticPageImages.createPageImage(dpis[d], 4711, BufferedImage.TYPE_3BYTE_BGR));
+			check(("TYPE_INT_ARGB (generic), " + dpis[d] + " dpi"), SyntheticPageImages.createPageImage(dpis[d], 4711, BufferedImage.TYPE_INT_ARGB));
+		}
+		
+		if (failures == 0)
+			System.out.println("Raster brightness check passed");
+		else {
+			System.out.println("Raster brightness check failed in " + failures + " cases");
+			System.exit(1);
+		}
+	}
+	
+	/* draw a synthetic page into a packed image with 2 or 4 bits per pixel
+	 * and a gray scale palette */
+	private static BufferedImage createPackedPageImage(int dpi, int bits) {
+		int colors = (1 << bits);
+		byte[] palette = new byte[colors];
+		for (int c = 0; c < colors; c++)
+			palette[c] = ((byte) ((c * 255) / (colors - 1)));
+		BufferedImage pi = SyntheticPageImages.createPageImage(dpi, 4711);
+		BufferedImage ppi = new BufferedImage(pi.getWidth(), pi.getHeight(), BufferedImage.TYPE_BYTE_BINARY, new IndexColorModel(bits, colors, palette, palette, palette));
+		ppi.createGraphics().drawImage(pi, 0, 0, null);
+		return ppi;
+	}
+	
+	private static void check(String name, BufferedImage image) {
+		check(name, image, 0, 0);
+		
+		//	sub images at odd offsets, so packed pixels do not start at byte boundaries
+		int width = image.getWidth();
+		int height = image.getHeight();
+		check(name, image.getSubimage(7, 13, (width - 7 - 3), (height - 13 - 5)), 7, 13);
+		check(name, image.getSubimage((width / 3) + 1, (height / 4) + 3, (width / 2), (height / 2)), ((width / 3) + 1), ((height / 4) + 3));
+	}
+	
+	private static void check(String name, BufferedImage image, int x, int y) {
+		if ((x != 0) || (y != 0))
+			name = (name + ", sub image at " + x + "/" + y);
+		byte[] expected = getBrightnessOriginal(image);
+		byte[] actual = Imaging.computeBrightness(image);
+		if (expected.length != actual.length) {
+			fail(name, ("brightness plane length " + actual.length + " instead of " + expected.length));
+			return;
+		}
+		int width = image.getWidth();
+		for (int i = 0; i < expected.length; i++)
+			if (expected[i] != actual[i]) {
+				fail(name, ("brightness " + actual[i] + " instead of " + expected[i] + " at " + (i % width) + "/" + (i / width)));
+				return;
+			}
+	}
+	
+	private static void fail(String name, String message) {
+		System.out.println(name + ": " + message);
+		failures++;
+	}
+	
+	/* original per-pixel brightness computation of AnalysisImage, written to
+	 * a row-major plane instead of the former column-major array */
+	private static byte[] getBrightnessOriginal(BufferedImage image) {
+		byte[] brightness = new byte[image.getWidth() * image.getHeight()];
+		float[] hsb = null;
+		int rgb;
+		int b;
+		for (int c = 0; c < image.getWidth(); c++) {
+			for (int r = 0; r < image.getHeight(); r++) {
+				rgb = image.getRGB(c, r);
+				hsb = new Color(rgb).getColorComponents(hsb);
+				b = ((int) (hsb[2] * 128));
+				brightness[(r * image.getWidth()) + c] = ((b == 128) ? 127 : ((byte) b));
+			}
+		}
+		return brightness;
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitaet Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITAET KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util.imaging;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+/**
+ * Generator for synthetic page images to run benchmarks on. The generated
+ * pages are letter size, gray scale, and depend only on the resolution and
+ * random seed handed to the generator, so benchmark runs are reproducible
+ * across machines (no fonts involved). Each page has a slightly noisy
+ * background, two columns of 'text' made up from dark blocks of glyph size,
+ * a few specks of dust in the margins, and a slight skew.
+ * 
+ * @author sautter
+ */
+public class SyntheticPageImages {
+	
+	/** the skew angle of generated pages, in degrees */
+	public static final double SKEW_DEGREES = 0.4;
+	
+	/**
+	 * Create a synthetic page image.
+	 * @param dpi the resolution of the page image
+	 * @param seed the seed for the random layout of the page
+	 * @return the page image
+	 */
+	public static BufferedImage createPageImage(int dpi, long seed) {
+		int width = ((dpi * 17) / 2);
+		int height = (dpi * 11);
+		Random rand = new Random(seed);
+		BufferedImage pi = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		
+		//	noisy background
+		WritableRaster raster = pi.getRaster();
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++)
+				row[x] = (236 + rand.nextInt(16));
+			raster.setSamples(0, y, width, 1, 0, row);
+		}
+		
+		Graphics2D g = pi.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		
+		//	dust in margins
+		for (int d = 0; d < 24; d++) {
+			g.setColor(new Color(40, 40, 40));
+			int ds = (1 + rand.nextInt(Math.max(1, (dpi / 100))));
+			int dx = (rand.nextBoolean() ? rand.nextInt(dpi / 2) : (width - 1 - rand.nextInt(dpi / 2)));
+			g.fillRect(dx, rand.nextInt(height), ds, ds);
+		}
+		
+		//	two columns of text, slightly skewed
+		g.rotate(Math.toRadians(SKEW_DEGREES), (width / 2), (height / 2));
+		int margin = dpi;
+		int columnGap = (dpi / 3);
+		int columnWidth = ((width - (2 * margin) - columnGap) / 2);
+		int glyphHeight = Math.max(3, (dpi / 12));
+		int lineHeight = ((glyphHeight * 3) / 2);
+		for (int c = 0; c < 2; c++) {
+			int left = (margin + (c * (columnWidth + columnGap)));
+			for (int top = margin; (top + glyphHeight) < (height - margin); top += lineHeight) {
+				if (rand.nextInt(12) == 0)
+					continue; // paragraph break
+				int x = left;
+				int lineEnd = (left + columnWidth);
+				while (x < lineEnd) {
+					int wordLength = (2 + rand.nextInt(8));
+					for (int l = 0; (l < wordLength) && (x < lineEnd); l++) {
+						int glyphWidth = Math.max(2, ((glyphHeight * (4 + rand.nextInt(4))) / 10));
+						int gray = (16 + rand.nextInt(48));
+						g.setColor(new Color(gray, gray, gray));
+						int ascent = (rand.nextInt(4) == 0) ? (glyphHeight / 3) : 0;
+						g.fillRect(x, (top - ascent), Math.min(glyphWidth, (lineEnd - x)), (glyphHeight + ascent));
+						x += (glyphWidth + Math.max(1, (glyphHeight / 8)));
+					}
+					x += (glyphHeight / 2);
+				}
+			}
+		}
+		g.dispose();
+		return pi;
+	}
+	
+	/**
+	 * Create a synthetic page image in a specific image type, e.g. to check
+	 * code that works directly on the raster data of specific image types.
+	 * The page is drawn in gray scale first, as by the two argument version
+	 * of this method, and then converted to the argument type. For color
+	 * types, the conversion also adds a few colored blocks, so the color
+	 * components of pixels actually differ from one another.
+	 * @param dpi the resolution of the page image
+	 * @param seed the seed for the random layout of the page
+	 * @param type the type of the page image, one of the TYPE_... constants
+	 *            in BufferedImage
+	 * @return the page image
+	 */
+	public static BufferedImage createPageImage(int dpi, long seed, int type) {
+		BufferedImage pi = createPageImage(dpi, seed);
+		if (type == pi.getType())
+			return pi;
+		BufferedImage tpi = new BufferedImage(pi.getWidth(), pi.getHeight(), type);
+		Graphics2D g = tpi.createGraphics();
+		g.drawImage(pi, 0, 0, null);
+		if (tpi.getColorModel().getNumColorComponents() > 1) {
+			Random rand = new Random(seed);
+			for (int b = 0; b < 64; b++) {
+				g.setColor(new Color(rand.nextInt(0x01000000)));
+				g.fillRect(rand.nextInt(pi.getWidth()), rand.nextInt(pi.getHeight()), (1 + rand.nextInt(dpi)), (1 + rand.nextInt(dpi)));
+			}
+		}
+		g.dispose();
+		return tpi;
+	}
+	
+	/**
+	 * Create a copy of an image, e.g. to have a fresh image for each run of
+	 * a benchmark that modifies its input.
+	 * @param image the image to copy
+	 * @return a copy of the argument image
+	 */
+	public static BufferedImage copyImage(BufferedImage image) {
+		return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+	}
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitaet Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITAET KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util.imaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.SequenceInputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.uka.ipd.idaho.gamta.util.imaging.PageImageSource.AbstractPageImageSource;
+import de.uka.ipd.idaho.gamta.util.imaging.PageImageSource.CachingDecorator;
+
+/**
+ * Page image source decorating another page image source with a two-tier
+ * cache. The first tier holds decoded page images, the second tier holds
+ * the encoded page image data as read from the wrapped source, which is
+ * much smaller than the decoded images. Requests are served from the first
+ * tier if possible, then by decoding from the second tier, and only then by
+ * loading from the wrapped page image source, which fills both tiers. Both
+ * tiers are bounded by the number of bytes they hold, and each evicts its
+ * least recently used entries independently of the other.<br>
+ * Page images served from the first tier are shared between all requests
+ * for them, so client code must not modify them. This is meant for read-only
+ * access paths like rendering, which tend to request the same pages over and
+ * over again.<br>
+ * Page images stored via the static storePageImage() methods of PageImage
+ * are discarded from the cache automatically if the page image source is
+ * registered with PageImage. Client code that changes page images in the
+ * wrapped source by other means has to invalidate them via the invalidate()
+ * methods.
+ * 
+ * @author sautter
+ */
+public class CachingPageImageSource extends AbstractPageImageSource implements CachingDecorator {
+	
+	/* Encoded page image: meta data from the page image header, plus the data
+	 * of the actual image, and the page image source the data came from */
+	private static class EncodedPageImage {
+		final byte[] header;
+		final byte[] data;
+		final PageImageSource source;
+		EncodedPageImage(byte[] header, byte[] data, PageImageSource source) {
+			this.header = header;
+			this.data = data;
+			this.source = source;
+		}
+		PageImageInputStream getInputStream() throws IOException {
+			return new PageImageInputStream(new SequenceInputStream(new ByteArrayInputStream(this.header), new ByteArrayInputStream(this.data)), this.source);
+		}
+	}
+	
+	private final PageImageSource source;
+	private final WeightedCache decodedPageImages;
+	private final WeightedCache encodedPageImages;
+	
+	private final AtomicLong decodedHits = new AtomicLong();
+	private final AtomicLong encodedHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * Constructor
+	 * @param source the page image source to wrap
+	 * @param decodedCacheBytes the maximum number of bytes of decoded page
+	 *            images to hold in memory
+	 * @param encodedCacheBytes the maximum number of bytes of encoded page
+	 *            image data to hold in memory
+	 */
+	public CachingPageImageSource(PageImageSource source, long decodedCacheBytes, long encodedCacheBytes) {
+		this.source = source;
+		this.decodedPageImages = new WeightedCache(decodedCacheBytes);
+		this.encodedPageImages = new WeightedCache(encodedCacheBytes);
+	}
+	
+	/**
+	 * @return the wrapped page image source
+	 */
+	public PageImageSource getSource() {
+		return this.source;
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.imaging.PageImageSource#isPageImageAvailable(java.lang.String)
+	 */
+	public boolean isPageImageAvailable(String name) {
+		if (this.decodedPageImages.get(name) != null)
+			return true;
+		if (this.encodedPageImages.get(name) != null)
+			return true;
+		return this.source.isPageImageAvailable(name);
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.imaging.PageImageSource.AbstractPageImageSource#getPageImage(java.lang.String)
+	 */
+	public PageImage getPageImage(String name) throws IOException {
+		
+		//	check decoded tier
+		PageImage pi = ((PageImage) this.decodedPageImages.get(name));
+		if (pi != null) {
+			this.decodedHits.incrementAndGet();
+			return pi;
+		}
+		
+		//	check encoded tier, and load if not there
+		EncodedPageImage epi = ((EncodedPageImage) this.encodedPageImages.get(name));
+		if (epi == null) {
+			epi = this.loadEncodedPageImage(name);
+			if (epi == null)
+				return null;
+		}
+		else this.encodedHits.incrementAndGet();
+		
+		//	decode and cache page image
+		pi = new PageImage(epi.getInputStream());
+		PageImage cachedPi = ((PageImage) this.decodedPageImages.putIfAbsent(name, pi, Imaging.getCacheWeight(pi.image)));
+		return ((cachedPi == null) ? pi : cachedPi);
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.imaging.PageImageSource#getPageImageAsStream(java.lang.String)
+	 */
+	public PageImageInputStream getPageImageAsStream(String name) throws IOException {
+		EncodedPageImage epi = ((EncodedPageImage) this.encodedPageImages.get(name));
+		if (epi == null) {
+			epi = this.loadEncodedPageImage(name);
+			if (epi == null)
+				return null;
+		}
+		else this.encodedHits.incrementAndGet();
+		return epi.getInputStream();
+	}
+	
+	private EncodedPageImage loadEncodedPageImage(String name) throws IOException {
+		this.misses.incrementAndGet();
+		PageImageInputStream piis = this.source.getPageImageAsStream(name);
+		if (piis == null)
+			return null;
+		
+		//	read image data
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[8192];
+			for (int r; (r = piis.read(buffer, 0, buffer.length)) != -1;)
+				data.write(buffer, 0, r);
+		}
+		finally {
+			piis.close();
+		}
+		
+		//	re-create header from meta data
+		ByteArrayOutputStream header = new ByteArrayOutputStream(16);
+		writeInt(header, piis.originalWidth);
+		writeInt(header, piis.originalHeight);
+		writeInt(header, piis.originalDpi);
+		writeInt(header, piis.currentDpi);
+		writeInt(header, piis.leftEdge);
+		writeInt(header, piis.rightEdge);
+		writeInt(header, piis.topEdge);
+		writeInt(header, piis.bottomEdge);
+		
+		//	cache encoded page image
+		EncodedPageImage epi = new EncodedPageImage(header.toByteArray(), data.toByteArray(), piis.source);
+		EncodedPageImage cachedEpi = ((EncodedPageImage) this.encodedPageImages.putIfAbsent(name, epi, (epi.header.length + epi.data.length)));
+		return ((cachedEpi == null) ? epi : cachedEpi);
+	}
+	
+	private static void writeInt(ByteArrayOutputStream out, int theInt) {
+		out.write((theInt >>> 8) & 255);
+		out.write(theInt & 255);
+	}
+	
+	/**
+	 * Remove a page image from both tiers of the cache, e.g. after it was
+	 * changed in the wrapped page image source.
+	 * @param name the name of the page image to remove
+	 */
+	public void invalidate(String name) {
+		this.decodedPageImages.remove(name);
+		this.encodedPageImages.remove(name);
+	}
+	
+	/**
+	 * Remove a page image from both tiers of the cache, e.g. after it was
+	 * changed in the wrapped page image source.
+	 * @param docId the ID of the document the page image belongs to
+	 * @param pageId the ID of the page
+	 */
+	public void invalidate(String docId, int pageId) {
+		this.invalidate(PageImage.getPageImageName(docId, pageId));
+	}
+	
+	/**
+	 * Remove all page images of a document from both tiers of the cache.
+	 * @param docId the ID of the document whose page images to remove
+	 */
+	public void invalidateDocument(String docId) {
+		this.decodedPageImages.removePrefix(docId + ".");
+		this.encodedPageImages.removePrefix(docId + ".");
+	}
+	
+	/**
+	 * @return the number of requests served by decoded page images
+	 */
+	public long getDecodedHitCount() {
+		return this.decodedHits.get();
+	}
+	
+	/**
+	 * @return the number of requests served by decoding cached page image data
+	 */
+	public long getEncodedHitCount() {
+		return this.encodedHits.get();
+	}
+	
+	/**
+	 * @return the number of requests passed through to the wrapped page image
+	 *            source
+	 */
+	public long getMissCount() {
+		return this.misses.get();
+	}
+	
+	/**
+	 * @return the cache holding decoded page images
+	 */
+	public WeightedCache getDecodedCache() {
+		return this.decodedPageImages;
+	}
+	
+	/**
+	 * @return the cache holding encoded page image data
+	 */
+	public WeightedCache getEncodedCache() {
+		return this.encodedPageImages;
+	}
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitaet Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITAET KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util.imaging;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Engine for rotating images around their center, working on primitive
+ * arrays of pixels rather than through the generic accessors of
+ * BufferedImage. The sine and cosine terms of the rotation are computed once
+ * per row and column rather than per pixel, and the rows of the rotated
+ * image are split up among the Imaging worker threads. The rotated image has
+ * the same size as the original one, areas rotated in from outside the
+ * original image are white, and the result is always of TYPE_INT_RGB.<br>
+ * For small angles, like the ones in the deskewing of scanned pages,
+ * rotation can also be done as a sequence of three shears, which only ever
+ * shift whole rows or columns of pixels.
+ * 
+ * @author sautter
+ */
+public class ImageRotation {
+	
+	/** interpolation mode taking the pixel closest to the exact source position, as Java2D does by default */
+	public static final int INTERPOLATION_NEAREST_NEIGHBOR = 0;
+	
+	/** interpolation mode blending the four pixels around the exact source position */
+	public static final int INTERPOLATION_BILINEAR = 1;
+	
+	private static final int WHITE = 0xFFFFFF;
+	
+	private ImageRotation() {}
+	
+	/**
+	 * Rotate an image around its center. Positive angles rotate clockwise,
+	 * the same way as Graphics2D.rotate() does. With nearest neighbor
+	 * interpolation, the result is the same as drawing the image to a white
+	 * canvas through a rotated Graphics2D.
+	 * @param image the image to rotate
+	 * @param angle the angle to rotate by (in radians)
+	 * @param interpolation the interpolation mode
+	 * @return the rotated image
+	 */
+	public static BufferedImage rotate(BufferedImage image, double angle, int interpolation) {
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		final BufferedImage rImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		final int[] rPixels = ((DataBufferInt) rImage.getRaster().getDataBuffer()).getData();
+		
+		//	precompute the terms of the inverse rotation depending on the column only, and on the row only, both from pixel centers
+		double cos = Math.cos(angle);
+		double sin = Math.sin(angle);
+		double centerX = (width / 2);
+		double centerY = (height / 2);
+		final double[] colSrcX = new double[width];
+		final double[] colSrcY = new double[width];
+		for (int x = 0; x < width; x++) {
+			double dx = (x + 0.5 - centerX);
+			colSrcX[x] = (cos * dx);
+			colSrcY[x] = (-sin * dx);
+		}
+		final double[] rowSrcX = new double[height];
+		final double[] rowSrcY = new double[height];
+		for (int y = 0; y < height; y++) {
+			double dy = (y + 0.5 - centerY);
+			rowSrcX[y] = (centerX + (sin * dy));
+			rowSrcY[y] = (centerY + (cos * dy));
+		}
+		
+		//	rotate rows in parallel
+		if (interpolation == INTERPOLATION_BILINEAR) {
+			final int[] pixels = getPixels(image);
+			Imaging.runParallel(height, new Imaging.ParallelRangeTask() {
+				void run(int from, int to) {
+					for (int y = from; y < to; y++)
+						for (int x = 0, p = (y * width); x < width; x++, p++) {
+							
+							//	shift to pixel centers, and get the four surrounding pixels
+							double srcX = (rowSrcX[y] + colSrcX[x] - 0.5);
+							double srcY = (rowSrcY[y] + colSrcY[x] - 0.5);
+							int x0 = ((int) Math.floor(srcX));
+							int y0 = ((int) Math.floor(srcY));
+							double fx = (srcX - x0);
+							double fy = (srcY - y0);
+							int rgb00 = getPixel(pixels, width, height, x0, y0);
+							int rgb10 = getPixel(pixels, width, height, (x0 + 1), y0);
+							int rgb01 = getPixel(pixels, width, height, x0, (y0 + 1));
+							int rgb11 = getPixel(pixels, width, height, (x0 + 1), (y0 + 1));
+							
+							//	blend channels
+							int rgb = 0;
+							for (int s = 16; s >= 0; s -= 8) {
+								double top = ((((rgb00 >> s) & 0xFF) * (1 - fx)) + (((rgb10 >> s) & 0xFF) * fx));
+								double bottom = ((((rgb01 >> s) & 0xFF) * (1 - fx)) + (((rgb11 >> s) & 0xFF) * fx));
+								rgb |= (((int) ((top * (1 - fy)) + (bottom * fy) + 0.5)) << s);
+							}
+							rPixels[p] = rgb;
+						}
+				}
+			});
+		}
+		else {
+			
+			//	go fixed point for nearest neighbor, as Java2D does, so we get by with integer additions and shifts per pixel
+			final int[] fColSrcX = toFixedPoint(colSrcX);
+			final int[] fColSrcY = toFixedPoint(colSrcY);
+			final int[] fRowSrcX = toFixedPoint(rowSrcX);
+			final int[] fRowSrcY = toFixedPoint(rowSrcY);
+			
+			//	read gray images directly from their bytes, saving the conversion of the whole image up front
+			final byte[] grayPixels = getGrayPixels(image);
+			final int[] pixels = ((grayPixels == null) ? getPixels(image) : null);
+			Imaging.runParallel(height, new Imaging.ParallelRangeTask() {
+				void run(int from, int to) {
+					for (int y = from; y < to; y++) {
+						int fRowX = fRowSrcX[y];
+						int fRowY = fRowSrcY[y];
+						for (int x = 0, p = (y * width); x < width; x++, p++) {
+							int srcX = ((fRowX + fColSrcX[x]) >> FIXED_POINT_SHIFT);
+							int srcY = ((fRowY + fColSrcY[x]) >> FIXED_POINT_SHIFT);
+							if ((srcX < 0) || (srcY < 0) || (srcX >= width) || (srcY >= height))
+								rPixels[p] = WHITE;
+							else if (grayPixels == null)
+								rPixels[p] = (pixels[(srcY * width) + srcX] & WHITE);
+							else rPixels[p] = grayRgb[grayPixels[(srcY * width) + srcX] & 0xFF];
+						}
+					}
+				}
+			});
+		}
+		
+		//	finally ...
+		return rImage;
+	}
+	
+	/**
+	 * Rotate an image around its center by a sequence of three shears,
+	 * namely a horizontal, a vertical, and another horizontal one. Each shear
+	 * only shifts rows or columns by a whole number of pixels, copying runs
+	 * of pixels as they are, without any per pixel trigonometry. The result
+	 * is close to the one of general rotation for small angles, as in
+	 * deskewing scanned pages, but deviates by up to a pixel. Positive
+	 * angles rotate clockwise, the same way as Graphics2D.rotate() does.
+	 * Angles of more than 45 degrees in either direction are handed to the
+	 * general rotation with nearest neighbor interpolation.
+	 * @param image the image to rotate
+	 * @param angle the angle to rotate by (in radians)
+	 * @return the rotated image
+	 */
+	public static BufferedImage rotateByShears(BufferedImage image, double angle) {
+		if (Math.abs(angle) > (Math.PI / 4))
+			return rotate(image, angle, INTERPOLATION_NEAREST_NEIGHBOR);
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		int[] pixels = getPixels(image);
+		BufferedImage rImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int[] rPixels = ((DataBufferInt) rImage.getRaster().getDataBuffer()).getData();
+		
+		//	rotation by a equals shearing by -tan(a/2) horizontally, sin(a) vertically, and -tan(a/2) horizontally again
+		double hShear = -Math.tan(angle / 2);
+		double vShear = Math.sin(angle);
+		int[] hBuffer = new int[width * height];
+		shearRows(pixels, hBuffer, width, height, hShear);
+		int[] vBuffer = new int[width * height];
+		shearColumns(hBuffer, vBuffer, width, height, vShear);
+		shearRows(vBuffer, rPixels, width, height, hShear);
+		
+		//	finally ...
+		return rImage;
+	}
+	
+	/* shift each row of pixels horizontally by the given fraction of its
+	 * distance from the vertical center line */
+	private static void shearRows(final int[] pixels, final int[] sPixels, final int width, final int height, double shear) {
+		final int[] shifts = new int[height];
+		for (int y = 0; y < height; y++)
+			shifts[y] = ((int) Math.round(shear * (y + 0.5 - (height / 2))));
+		Imaging.runParallel(height, new Imaging.ParallelRangeTask() {
+			void run(int from, int to) {
+				for (int y = from; y < to; y++) {
+					int ro = (y * width);
+					int shift = shifts[y];
+					int start = Math.max(0, shift);
+					int end = Math.min(width, (width + shift));
+					if (start >= end) {
+						fillWhite(sPixels, ro, (ro + width));
+						continue;
+					}
+					fillWhite(sPixels, ro, (ro + start));
+					System.arraycopy(pixels, (ro + start - shift), sPixels, (ro + start), (end - start));
+					fillWhite(sPixels, (ro + end), (ro + width));
+				}
+			}
+		});
+	}
+	
+	/* shift each column of pixels vertically by the given fraction of its
+	 * distance from the horizontal center line, processing bands of rows to
+	 * walk memory in order */
+	private static void shearColumns(final int[] pixels, final int[] sPixels, final int width, final int height, double shear) {
+		final int[] shifts = new int[width];
+		for (int x = 0; x < width; x++)
+			shifts[x] = ((int) Math.round(shear * (x + 0.5 - (width / 2))));
+		Imaging.runParallel(height, new Imaging.ParallelRangeTask() {
+			void run(int from, int to) {
+				for (int y = from; y < to; y++)
+					for (int x = 0, p = (y * width); x < width; x++, p++) {
+						int srcY = (y - shifts[x]);
+						sPixels[p] = (((srcY < 0) || (srcY >= height)) ? WHITE : pixels[(srcY * width) + x]);
+					}
+			}
+		});
+	}
+	
+	/* 16 fractional bits leave 15 bits for the integer part, enough for
+	 * pages of some 160 by 160 inches at 200 DPI */
+	private static final int FIXED_POINT_SHIFT = 16;
+	private static int[] toFixedPoint(double[] values) {
+		int[] fValues = new int[values.length];
+		for (int v = 0; v < values.length; v++)
+			fValues[v] = ((int) Math.floor(values[v] * (1 << FIXED_POINT_SHIFT)));
+		return fValues;
+	}
+	
+	private static void fillWhite(int[] pixels, int from, int to) {
+		for (int p = from; p < to; p++)
+			pixels[p] = WHITE;
+	}
+	
+	private static int getPixel(int[] pixels, int width, int height, int x, int y) {
+		if ((x < 0) || (y < 0) || (x >= width) || (y >= height))
+			return WHITE;
+		return pixels[(y * width) + x];
+	}
+	
+	/* RGB values of gray pixels, the gray values as they are, as Java2D does
+	 * when drawing gray images, rather than gamma corrected, as getRGB() does */
+	private static final int[] grayRgb = new int[256];
+	static {
+		for (int v = 0; v < grayRgb.length; v++)
+			grayRgb[v] = ((v << 16) | (v << 8) | v);
+	}
+	
+	/* Get the pixel array of a gray image if it is not a sub image, null
+	 * otherwise */
+	private static byte[] getGrayPixels(BufferedImage image) {
+		if (image.getType() != BufferedImage.TYPE_BYTE_GRAY)
+			return null;
+		WritableRaster raster = image.getRaster();
+		if ((raster.getSampleModelTranslateX() != 0) || (raster.getSampleModelTranslateY() != 0))
+			return null;
+		if (((ComponentSampleModel) raster.getSampleModel()).getScanlineStride() != image.getWidth())
+			return null;
+		byte[] pixels = ((DataBufferByte) raster.getDataBuffer()).getData();
+		return ((pixels.length == (image.getWidth() * image.getHeight())) ? pixels : null);
+	}
+	
+	/* Get the RGB values of all pixels of an image in a single array, row by
+	 * row, reading the raster directly for the common image types */
+	private static int[] getPixels(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int type = image.getType();
+		if ((type == BufferedImage.TYPE_INT_RGB) || (type == BufferedImage.TYPE_INT_ARGB)) {
+			
+			//	use pixel array as it is if image is not a sub image (we only ever read it)
+			WritableRaster raster = image.getRaster();
+			if ((raster.getSampleModelTranslateX() == 0) && (raster.getSampleModelTranslateY() == 0) && (((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() == width)) {
+				int[] pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+				if (pixels.length == (width * height))
+					return pixels;
+			}
+			return ((int[]) raster.getDataElements(0, 0, width, height, new int[width * height]));
+		}
+		int[] pixels = new int[width * height];
+		if ((type == BufferedImage.TYPE_BYTE_GRAY) || (type == BufferedImage.TYPE_BYTE_BINARY)) {
+			
+			int[] lut;
+			if (type == BufferedImage.TYPE_BYTE_GRAY) {
+				lut = grayRgb;
+				byte[] row = new byte[width];
+				for (int y = 0; y < height; y++) {
+					image.getRaster().getDataElements(0, y, width, 1, row);
+					for (int x = 0, p = (y * width); x < width; x++, p++)
+						pixels[p] = lut[row[x] & 0xFF];
+				}
+				return pixels;
+			}
+			else {
+				ColorModel cm = image.getColorModel();
+				lut = new int[1 << cm.getPixelSize()];
+				for (int v = 0; v < lut.length; v++)
+					lut[v] = cm.getRGB(v);
+			}
+			int[] row = new int[width];
+			for (int y = 0; y < height; y++) {
+				image.getRaster().getSamples(0, y, width, 1, 0, row);
+				for (int x = 0, p = (y * width); x < width; x++, p++)
+					pixels[p] = lut[row[x]];
+			}
+		}
+		else image.getRGB(0, 0, width, height, pixels, 0, width);
+		return pixels;
+	}
+}
@@ -29,8 +29,16 @@ package de.uka.ipd.idaho.gamta.util.imaging;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -46,6 +54,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.imageio.ImageIO;
 
@@ -63,12 +76,329 @@ import de.uka.ipd.idaho.stringUtils.csvHandler.StringTupel;
  */
 public class Imaging {
 	
-	private static final int analysisImageCacheSize = 128;
-	private static Map analysisImageCache = Collections.synchronizedMap(new LinkedHashMap(128, 0.9f, true) {
-		protected boolean removeEldestEntry(Entry eldest) {
-			return (this.size() > analysisImageCacheSize);
+	private static int parallelism = Runtime.getRuntime().availableProcessors();
+	private static ExecutorService workerPool = null;
+	private static final HashMap workerPoolUsers = new HashMap(); // pools currently in use by runParallel(), mapped to number of users
+	private static final ThreadLocal isWorkerThread = new ThreadLocal();
+	
+	/**
+	 * Set the maximum number of threads to use for splitting up computation
+	 * intensive image operations, like FFT computation. Setting this property
+	 * to 1 has all computations execute in the calling thread, which is
+	 * deterministic and easier to debug. Values less than 1 reset parallelism
+	 * to the number of available processors, which is also the default.
+	 * @param p the maximum number of threads to use
+	 */
+	public static synchronized void setParallelism(int p) {
+		if (p < 1)
+			p = Runtime.getRuntime().availableProcessors();
+		if (p == parallelism)
+			return;
+		parallelism = p;
+		
+		//	shut down pool right away only if no other thread is using it, otherwise last user does it
+		if ((workerPool != null) && !workerPoolUsers.containsKey(workerPool))
+			workerPool.shutdown();
+		workerPool = null;
+	}
+	
+	/**
+	 * Retrieve the maximum number of threads used for splitting up
+	 * computation intensive image operations.
+	 * @return the parallelism
+	 */
+	public static synchronized int getParallelism() {
+		return parallelism;
+	}
+	
+	private static synchronized ExecutorService acquireWorkerPool() {
+		if (workerPool == null)
+			workerPool = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+				private int threadNumber = 0;
+				public Thread newThread(final Runnable r) {
+					Thread t = new Thread(new Runnable() {
+						public void run() {
+							isWorkerThread.set(Boolean.TRUE);
+							r.run();
+						}
+					}, ("ImagingWorker-" + this.threadNumber++));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		int[] users = ((int[]) workerPoolUsers.get(workerPool));
+		if (users == null) {
+			users = new int[1];
+			workerPoolUsers.put(workerPool, users);
 		}
-	});
+		users[0]++;
+		return workerPool;
+	}
+	
+	private static synchronized void releaseWorkerPool(ExecutorService pool) {
+		int[] users = ((int[]) workerPoolUsers.get(pool));
+		if (--users[0] != 0)
+			return;
+		workerPoolUsers.remove(pool);
+		if (pool != workerPool)
+			pool.shutdown(); // replaced by setParallelism() while we were using it
+	}
+	
+	/* Mark the current thread as a worker thread, so runParallel() processes
+	 * all indexes in the calling thread. This is for threads that already
+	 * run in parallel at a coarser level, e.g. one page each. */
+	static void markWorkerThread() {
+		isWorkerThread.set(Boolean.TRUE);
+	}
+	
+	/* Brightness of pixels by their blue component, in the very same way the
+	 * former per-pixel new Color(rgb).getColorComponents()[2] did it */
+	private static final byte[] blueBrightness = new byte[256];
+	static {
+		for (int blue = 0; blue < blueBrightness.length; blue++) {
+			int b = ((int) ((((float) blue) / 255f) * 128));
+			blueBrightness[blue] = ((b == 128) ? 127 : ((byte) b));
+		}
+	}
+	
+	/* Compute the brightness of an image, reading raster data directly for
+	 * the most common image types, and falling back to bulk getRGB() for any
+	 * other type. The result is the same in either case. The returned array
+	 * holds the brightness values row by row. */
+	static byte[] computeBrightness(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		byte[] brightness = new byte[width * height];
+		if ((width == 0) || (height == 0))
+			return brightness;
+		
+		WritableRaster raster = image.getRaster();
+		SampleModel sm = raster.getSampleModel();
+		DataBuffer db = raster.getDataBuffer();
+		int smtx = raster.getSampleModelTranslateX();
+		int smty = raster.getSampleModelTranslateY();
+		int type = image.getType();
+		
+		//	gray image, read gray value from raster and map through color model (might apply gamma correction)
+		if ((type == BufferedImage.TYPE_BYTE_GRAY) && (sm instanceof ComponentSampleModel) && (db instanceof DataBufferByte) && (db.getNumBanks() == 1)) {
+			ComponentSampleModel csm = ((ComponentSampleModel) sm);
+			byte[] data = ((DataBufferByte) db).getData();
+			byte[] lut = new byte[256];
+			ColorModel cm = image.getColorModel();
+			byte[] pixel = new byte[1];
+			for (int v = 0; v < lut.length; v++) {
+				pixel[0] = ((byte) v);
+				lut[v] = blueBrightness[cm.getRGB(pixel) & 0xFF];
+			}
+			int pixelStride = csm.getPixelStride();
+			int scanlineStride = csm.getScanlineStride();
+			int offset = (db.getOffset() + csm.getBandOffsets()[0] - (smty * scanlineStride) - (smtx * pixelStride));
+			for (int r = 0; r < height; r++) {
+				int rowOffset = (offset + (r * scanlineStride));
+				for (int c = 0, bi = (r * width); c < width; c++, bi++)
+					brightness[bi] = lut[data[rowOffset + (c * pixelStride)] & 0xFF];
+			}
+		}
+		
+		//	bi-level (or 2 or 4 bit) image, unpack pixels from raster and map through color model
+		else if ((type == BufferedImage.TYPE_BYTE_BINARY) && (sm instanceof MultiPixelPackedSampleModel) && (db instanceof DataBufferByte) && (db.getNumBanks() == 1)) {
+			MultiPixelPackedSampleModel mppsm = ((MultiPixelPackedSampleModel) sm);
+			byte[] data = ((DataBufferByte) db).getData();
+			int pixelBitStride = mppsm.getPixelBitStride();
+			int pixelMask = ((1 << pixelBitStride) - 1);
+			byte[] lut = new byte[1 << pixelBitStride];
+			ColorModel cm = image.getColorModel();
+			for (int v = 0; v < lut.length; v++)
+				lut[v] = blueBrightness[cm.getRGB(v) & 0xFF];
+			int scanlineStride = mppsm.getScanlineStride();
+			int bitOffset = (mppsm.getDataBitOffset() - (smtx * pixelBitStride));
+			int offset = (db.getOffset() - (smty * scanlineStride));
+			for (int r = 0; r < height; r++) {
+				int rowOffset = (offset + (r * scanlineStride));
+				for (int c = 0, bi = (r * width); c < width; c++, bi++) {
+					int bit = (bitOffset + (c * pixelBitStride));
+					int shift = (8 - pixelBitStride - (bit & 7));
+					brightness[bi] = lut[(data[rowOffset + (bit >> 3)] >> shift) & pixelMask];
+				}
+			}
+		}
+		
+		//	RGB image packed into int, take blue component right away
+		else if ((type == BufferedImage.TYPE_INT_RGB) && (sm instanceof SinglePixelPackedSampleModel) && (db instanceof DataBufferInt) && (db.getNumBanks() == 1)) {
+			SinglePixelPackedSampleModel sppsm = ((SinglePixelPackedSampleModel) sm);
+			int[] data = ((DataBufferInt) db).getData();
+			int scanlineStride = sppsm.getScanlineStride();
+			int offset = (db.getOffset() - (smty * scanlineStride) - smtx);
+			for (int r = 0; r < height; r++) {
+				int rowOffset = (offset + (r * scanlineStride));
+				for (int c = 0, bi = (r * width); c < width; c++, bi++)
+					brightness[bi] = blueBrightness[data[rowOffset + c] & 0xFF];
+			}
+		}
+		
+		//	RGB image stored in bytes, read blue byte right away
+		else if ((type == BufferedImage.TYPE_3BYTE_BGR) && (sm instanceof ComponentSampleModel) && (db instanceof DataBufferByte) && (db.getNumBanks() == 1)) {
+			ComponentSampleModel csm = ((ComponentSampleModel) sm);
+			byte[] data = ((DataBufferByte) db).getData();
+			int pixelStride = csm.getPixelStride();
+			int scanlineStride = csm.getScanlineStride();
+			int offset = (db.getOffset() + csm.getBandOffsets()[2] - (smty * scanlineStride) - (smtx * pixelStride));
+			for (int r = 0; r < height; r++) {
+				int rowOffset = (offset + (r * scanlineStride));
+				for (int c = 0, bi = (r * width); c < width; c++, bi++)
+					brightness[bi] = blueBrightness[data[rowOffset + (c * pixelStride)] & 0xFF];
+			}
+		}
+		
+		//	any other image type, get RGB row by row
+		else {
+			int[] rgbRow = new int[width];
+			for (int r = 0; r < height; r++) {
+				image.getRGB(0, r, width, 1, rgbRow, 0, width);
+				for (int c = 0, bi = (r * width); c < width; c++, bi++)
+					brightness[bi] = blueBrightness[rgbRow[c] & 0xFF];
+			}
+		}
+		
+		return brightness;
+	}
+	
+	/* RGB values for gray pixels of each brightness, in the very same way the
+	 * former per-pixel Color.HSBtoRGB(0, 0, (brightness / 127)) did it */
+	private static final int[] brightnessRgb = new int[128];
+	static {
+		for (int b = 0; b < brightnessRgb.length; b++)
+			brightnessRgb[b] = Color.HSBtoRGB(0, 0, (((float) b) / 127));
+	}
+	
+	/* Write the brightness plane of an analysis image back to the wrapped
+	 * image as gray pixels, using the argument RGB value for white */
+	static void writeBrightness(AnalysisImage analysisImage, int whiteRgb) {
+		byte[] brightness = analysisImage.getBrightnessPlane();
+		int width = analysisImage.image.getWidth();
+		int height = analysisImage.image.getHeight();
+		int[] rgbRow = new int[width];
+		for (int r = 0; r < height; r++) {
+			for (int c = 0, bi = (r * width); c < width; c++, bi++)
+				rgbRow[c] = ((brightness[bi] == 127) ? whiteRgb : brightnessRgb[brightness[bi]]);
+			analysisImage.image.setRGB(0, r, width, 1, rgbRow, 0, width);
+		}
+		analysisImage.brightnessChanged();
+	}
+	
+	/**
+	 * A task working on a range of indexes, e.g. rows or columns of an image,
+	 * to be run by the Imaging worker threads. Implementations must not write
+	 * to any data outside the range of indexes handed to the run() method.
+	 * 
+	 * @author sautter
+	 */
+	static abstract class ParallelRangeTask {
+		/**
+		 * Process a range of indexes.
+		 * @param from the index to start at (inclusive)
+		 * @param to the index to stop at (exclusive)
+		 */
+		abstract void run(int from, int to);
+	}
+	
+	/**
+	 * Process the indexes 0 through count-1 with a task, split up into chunks
+	 * handed to the Imaging worker threads. The calling thread processes the
+	 * first chunk itself, and the method returns only after all chunks have
+	 * been processed. If parallelism is set to 1, or if the calling thread is
+	 * a worker thread itself, the task processes all indexes in the calling
+	 * thread.
+	 * @param count the number of indexes to process
+	 * @param task the task to run
+	 */
+	static void runParallel(int count, final ParallelRangeTask task) {
+		int threads = Math.min(getParallelism(), count);
+		if ((threads < 2) || (isWorkerThread.get() != null)) {
+			task.run(0, count);
+			return;
+		}
+		
+		//	hand out chunks to worker threads (pool might be replaced by setParallelism() while we are using it, but it is not shut down before we release it)
+		ExecutorService pool = acquireWorkerPool();
+		try {
+			int chunkSize = ((count + threads - 1) / threads);
+			ArrayList futures = new ArrayList(threads);
+			for (int from = chunkSize; from < count; from += chunkSize) {
+				final int cFrom = from;
+				final int cTo = Math.min(count, (from + chunkSize));
+				futures.add(pool.submit(new Runnable() {
+					public void run() {
+						task.run(cFrom, cTo);
+					}
+				}));
+			}
+			
+			//	process first chunk ourselves
+			RuntimeException error = null;
+			try {
+				task.run(0, Math.min(count, chunkSize));
+			}
+			catch (RuntimeException re) {
+				error = re;
+			}
+			
+			//	wait for workers, and propagate any errors
+			boolean interrupted = false;
+			for (int f = 0; f < futures.size(); f++) {
+				Future future = ((Future) futures.get(f));
+				while (true) try {
+					future.get();
+					break;
+				}
+				catch (InterruptedException ie) {
+					interrupted = true;
+				}
+				catch (ExecutionException ee) {
+					if (error != null)
+						break;
+					Throwable cause = ee.getCause();
+					if (cause instanceof RuntimeException)
+						error = ((RuntimeException) cause);
+					else if (cause instanceof Error)
+						throw ((Error) cause);
+					else error = new RuntimeException(cause);
+					break;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			if (error != null)
+				throw error;
+		}
+		finally {
+			releaseWorkerPool(pool);
+		}
+	}
+	
+	private static final WeightedCache analysisImageCache = new WeightedCache(Math.min((Runtime.getRuntime().maxMemory() / 8), (512L * 1024 * 1024)));
+	
+	/**
+	 * Set the maximum number of bytes the wrapped images held in the cache
+	 * used by wrapImage() may occupy, including the pixel data, the
+	 * brightness values, and any integral images computed from the latter
+	 * for faster area sums. The default is an eighth of the maximum heap size,
+	 * but no more than 512 MB. If the cache holds more than the argument
+	 * number of bytes, the least recently used images are evicted right away.
+	 * @param bytes the maximum size of the wrapped image cache
+	 */
+	public static void setAnalysisImageCacheSize(long bytes) {
+		analysisImageCache.setMaxWeight(bytes);
+	}
+	
+	/**
+	 * Retrieve the cache used by wrapImage(), e.g. to monitor its hit, miss,
+	 * and eviction counts.
+	 * @return the wrapped image cache
+	 */
+	public static WeightedCache getAnalysisImageCache() {
+		return analysisImageCache;
+	}
 	
 	/**
 	 * Wrap an image for analysis. If the argument cache key is null, caching is
@@ -78,15 +408,28 @@ public class Imaging {
 	 * @return the wrapped image
 	 */
 	public static AnalysisImage wrapImage(BufferedImage image, String cacheKey) {
-		synchronized (analysisImageCache) {
-			AnalysisImage analysisImage = ((cacheKey == null) ? null : ((AnalysisImage) analysisImageCache.get(cacheKey)));
-			if (analysisImage == null) {
-				analysisImage = new AnalysisImage(image);
-				if (cacheKey != null)
-					analysisImageCache.put(cacheKey, analysisImage);
-			}
+		if (cacheKey == null)
+			return new AnalysisImage(image);
+		AnalysisImage analysisImage = ((AnalysisImage) analysisImageCache.get(cacheKey));
+		if (analysisImage != null)
 			return analysisImage;
-		}
+		analysisImage = new AnalysisImage(image);
+		analysisImage.cacheKey = cacheKey;
+		AnalysisImage cachedAnalysisImage = ((AnalysisImage) analysisImageCache.putIfAbsent(cacheKey, analysisImage, getCacheWeight(image)));
+		return ((cachedAnalysisImage == null) ? analysisImage : cachedAnalysisImage);
+	}
+	
+	/**
+	 * Estimate the number of bytes a wrapped image occupies, i.e., the size of
+	 * the pixel data plus the size of the brightness plane computed on demand.
+	 * @param image the image to estimate the size for
+	 * @return the estimated size of the wrapped image, in bytes
+	 */
+	static long getCacheWeight(BufferedImage image) {
+		DataBuffer db = image.getRaster().getDataBuffer();
+		long pixelBytes = (((long) db.getSize()) * db.getNumBanks() * Math.max(1, (DataBuffer.getDataTypeSize(db.getDataType()) / 8)));
+		long brightnessBytes = (((long) image.getWidth()) * image.getHeight());
+		return (pixelBytes + brightnessBytes);
 	}
 	
 	/**
@@ -95,13 +438,7 @@ public class Imaging {
 	 * @param cacheKeyPrefix the prefix of the cache keys to invalidate
 	 */
 	public static void cleanUpCache(String cacheKeyPrefix) {
-		synchronized (analysisImageCache) {
-			for (Iterator ckit = analysisImageCache.keySet().iterator(); ckit.hasNext();) {
-				String cacheKey = ((String) ckit.next());
-				if (cacheKey.startsWith(cacheKeyPrefix))
-					ckit.remove();
-			}
-		}
+		analysisImageCache.removePrefix(cacheKeyPrefix);
 	}
 	
 	/**
@@ -111,11 +448,12 @@ public class Imaging {
 	 */
 	public static class AnalysisImage {
 		private BufferedImage image;
-		private byte[][] brightness;
+		private byte[] brightness;
+		private volatile String cacheKey = null; // key in the analysis image cache, to keep weight up to date
 		AnalysisImage(BufferedImage image) {
 			this.image = image;
 		}
-		AnalysisImage(BufferedImage image, byte[][] brightnesses) {
+		AnalysisImage(BufferedImage image, byte[] brightnesses) {
 			this.image = image;
 			this.brightness = brightnesses;
 		}
@@ -125,33 +463,144 @@ public class Imaging {
 		void setImage(BufferedImage image) {
 			this.image = image;
 			this.brightness = null;
+			this.brightnessChanged();
 			this.fftCache.clear();
+			this.cacheWeightChanged();
+		}
+		
+		/* Update the weight of this analysis image in the cache after the
+		 * wrapped image changed, or after computing or discarding the
+		 * integral image */
+		private void cacheWeightChanged() {
+			if (this.cacheKey == null)
+				return;
+			long weight = getCacheWeight(this.image);
+			int[] integral = this.integral;
+			if (integral != null)
+				weight += (((long) integral.length) * 4);
+			analysisImageCache.setWeight(this.cacheKey, this, weight);
+		}
+		
+		/**
+		 * Notify the analysis image that the brightness values in the array
+		 * returned by getBrightnessPlane() have been modified in place. This
+		 * discards anything computed from the brightness values, like the
+		 * brightness statistics, so it is recomputed on the next request. Any
+		 * code modifying brightness values has to call this method after it
+		 * is done.
+		 */
+		public void brightnessChanged() {
+			boolean hadIntegral = (this.integral != null);
+			this.integral = null;
+			this.statistics = null;
+			if (hadIntegral)
+				this.cacheWeightChanged();
 		}
 		
 		/**
 		 * Retrieve a two-dimensional array holding the brightness values of the
 		 * wrapped image, discretized to values between 0-127, inclusive. The
-		 * outer dimension is the columns, the inner dimension the rows. The
-		 * array must not be modified.
-		 * @return an array holding the brightness values of the wrapped image
+		 * outer dimension is the columns, the inner dimension the rows.<br>
+		 * <b>Note:</b> Unlike in earlier versions, the returned array is not
+		 * the live brightness data of this analysis image, but a fresh copy
+		 * of the brightness plane, created anew on every invocation. Writing
+		 * values to the returned array does not have any effect on this
+		 * analysis image or on the wrapped image, and every invocation costs
+		 * an allocation the size of the whole image.
+		 * @return a copy of the brightness values of the wrapped image
+		 * @deprecated use getBrightnessPlane(), which returns the live
+		 *            brightness values without copying or allocating
+		 *            anything; code modifying brightness values has to call
+		 *            brightnessChanged() after writing to that array
 		 */
 		public byte[][] getBrightness() {
-			if (this.brightness == null) {
-				this.brightness = new byte[this.image.getWidth()][this.image.getHeight()];
-				float[] hsb = null;
-				int rgb;
-				int b;
-				for (int c = 0; c < this.image.getWidth(); c++) {
-					for (int r = 0; r < this.image.getHeight(); r++) {
-						rgb = this.image.getRGB(c, r);
-						hsb = new Color(rgb).getColorComponents(hsb);
-//						hsb = Color.RGBtoHSB(((rgb >> 16) & 0xFF), ((rgb >> 8) & 0xFF), ((rgb >> 0) & 0xFF), hsb);
-						b = ((int) (hsb[2] * 128));
-						this.brightness[c][r] = ((b == 128) ? 127 : ((byte) b));
+			byte[] brightness = this.getBrightnessPlane();
+			int width = this.image.getWidth();
+			int height = this.image.getHeight();
+			byte[][] cBrightness = new byte[width][height];
+			for (int r = 0; r < height; r++) {
+				int ro = (r * width);
+				for (int c = 0; c < width; c++)
+					cBrightness[c][r] = brightness[ro + c];
+			}
+			return cBrightness;
+		}
+		
+		/**
+		 * Retrieve the brightness values of the wrapped image, discretized to
+		 * values between 0-127, inclusive, as a single flat array. The array
+		 * holds the pixel rows one after another, so the brightness of the
+		 * pixel in column <code>c</code> and row <code>r</code> is at index
+		 * <code>(r * width) + c</code>, with <code>width</code> being the
+		 * width of the wrapped image. The returned array is the live brightness
+		 * data of this analysis image, not a copy. Code modifying brightness
+		 * values in the array has to call brightnessChanged() after it is done.
+		 * @return an array holding the brightness values of the wrapped image
+		 */
+		public byte[] getBrightnessPlane() {
+			if (this.brightness == null)
+				this.brightness = computeBrightness(this.image);
+			return this.brightness;
+		}
+		
+		/* The integral image (summed area table) of the brightness plane,
+		 * one row and column larger than the image, holding at index
+		 * (r * (width + 1)) + c the sum of the brightness of all pixels above
+		 * row r and left of column c. The sums of large images exceed the
+		 * range of int, but as the sum of any area up to 16 million pixels
+		 * fits into an int, the overflows cancel out when computing the
+		 * latter from the four corners. */
+		private volatile int[] integral;
+		
+		/* Retrieve the integral image, computing it on first request after
+		 * any change */
+		int[] getIntegralPlane() {
+			int[] integral = this.integral;
+			if (integral == null) {
+				byte[] brightness = this.getBrightnessPlane();
+				int width = this.image.getWidth();
+				int height = this.image.getHeight();
+				int iWidth = (width + 1);
+				integral = new int[iWidth * (height + 1)];
+				for (int r = 0; r < height; r++) {
+					int rowSum = 0;
+					for (int c = 0, b = (r * width), i = ((r + 1) * iWidth) + 1; c < width; c++, b++, i++) {
+						rowSum += brightness[b];
+						integral[i] = (integral[i - iWidth] + rowSum);
 					}
 				}
+				this.integral = integral;
+				this.cacheWeightChanged();
 			}
-			return this.brightness;
+			return integral;
+		}
+		
+		private volatile BrightnessStatistics statistics;
+		
+		/**
+		 * Retrieve statistics on the brightness of the wrapped image, namely
+		 * its histogram, mean, variance, minimum and maximum, and contrast
+		 * measures. The statistics are computed in a single sweep over the
+		 * brightness values on the first request, and kept until the image
+		 * is modified.
+		 * @return the brightness statistics of the wrapped image
+		 */
+		public BrightnessStatistics getBrightnessStatistics() {
+			BrightnessStatistics statistics = this.statistics;
+			if (statistics == null) {
+				statistics = new BrightnessStatistics(this.getBrightnessPlane(), this.image.getWidth(), this.image.getHeight());
+				this.statistics = statistics;
+			}
+			return statistics;
+		}
+		
+		/* Compute the brightness sum of a rectangular area from the integral
+		 * image in constant time, right and bottom being exclusive; the area
+		 * must not exceed maxIntegralSumArea pixels */
+		int getBrightnessSum(int left, int right, int top, int bottom) {
+			int[] integral = this.getIntegralPlane();
+			int iWidth = (this.image.getWidth() + 1);
+			return (integral[(bottom * iWidth) + right] - integral[(top * iWidth) + right] - integral[(bottom * iWidth) + left] + integral[(top * iWidth) + left]);
 		}
 		
 		/**
@@ -196,6 +645,184 @@ public class Imaging {
 		private HashMap fftCache = new HashMap(2);
 	}
 	
+	/* the maximum number of pixels whose brightness sum is sure to fit into an int */
+	static final int maxIntegralSumArea = (Integer.MAX_VALUE / 127);
+	
+	/**
+	 * Statistics on the brightness values of an image, computed in a single
+	 * sweep. Besides the histogram of the brightness values, the statistics
+	 * include the histogram of the local contrast, i.e., the absolute
+	 * brightness difference of each pixel to the average of its four direct
+	 * neighbors, ignoring pixels on the image edges and differences of 0.
+	 * 
+	 * @author sautter
+	 */
+	public static class BrightnessStatistics {
+		
+		/** the number of pixels */
+		public final int pixelCount;
+		
+		/** the sum of the brightness of all pixels */
+		public final long brightnessSum;
+		
+		/** the lowest brightness value in the image */
+		public final byte minBrightness;
+		
+		/** the highest brightness value in the image */
+		public final byte maxBrightness;
+		
+		/** the mean brightness */
+		public final double mean;
+		
+		/** the variance of the brightness */
+		public final double variance;
+		
+		private final int[] histogram;
+		private final int[] contrastHistogram;
+		private final int contrastCount;
+		
+		BrightnessStatistics(final byte[] brightness, final int width, final int height) {
+			
+			//	compute partial histograms over bands of rows in parallel, then add them up (integer sums, so result does not depend on parallelism)
+			int bands = Math.max(1, Math.min(getParallelism(), (height / 64)));
+			final int bandHeight = ((height + bands - 1) / bands);
+			final int[][] bandHistograms = new int[bands][128];
+			final int[][] bandContrastHistograms = new int[bands][128];
+			final long[] bandSquareSums = new long[bands];
+			runParallel(bands, new ParallelRangeTask() {
+				void run(int from, int to) {
+					for (int band = from; band < to; band++) {
+						int[] histogram = bandHistograms[band];
+						int[] contrastHistogram = bandContrastHistograms[band];
+						long squareSum = 0;
+						int bandTop = (band * bandHeight);
+						int bandBottom = Math.min(height, (bandTop + bandHeight));
+						for (int r = bandTop; r < bandBottom; r++) {
+							boolean innerRow = ((r > 0) && (r < (height-1)));
+							for (int c = 0, b = (r * width); c < width; c++, b++) {
+								int bv = brightness[b];
+								histogram[bv]++;
+								squareSum += (bv * bv);
+								if (innerRow && (c > 0) && (c < (width-1))) {
+									int bd = Math.abs((4 * bv) - brightness[b-1] - brightness[b+1] - brightness[b-width] - brightness[b+width]);
+									bd /= 4;
+									if (bd != 0)
+										contrastHistogram[Math.min(bd, 127)]++;
+								}
+							}
+						}
+						bandSquareSums[band] = squareSum;
+					}
+				}
+			});
+			
+			//	aggregate bands
+			this.histogram = new int[128];
+			this.contrastHistogram = new int[128];
+			long squareSum = 0;
+			for (int band = 0; band < bands; band++) {
+				for (int b = 0; b < 128; b++) {
+					this.histogram[b] += bandHistograms[band][b];
+					this.contrastHistogram[b] += bandContrastHistograms[band][b];
+				}
+				squareSum += bandSquareSums[band];
+			}
+			
+			//	compute aggregate values
+			this.pixelCount = (width * height);
+			long brightnessSum = 0;
+			int contrastCount = 0;
+			byte minBrightness = 127;
+			byte maxBrightness = 0;
+			for (int b = 0; b < 128; b++) {
+				brightnessSum += (((long) b) * this.histogram[b]);
+				contrastCount += this.contrastHistogram[b];
+				if (this.histogram[b] != 0) {
+					minBrightness = ((byte) Math.min(minBrightness, b));
+					maxBrightness = ((byte) Math.max(maxBrightness, b));
+				}
+			}
+			this.brightnessSum = brightnessSum;
+			this.contrastCount = contrastCount;
+			this.minBrightness = minBrightness;
+			this.maxBrightness = maxBrightness;
+			this.mean = ((this.pixelCount == 0) ? 0 : (((double) brightnessSum) / this.pixelCount));
+			this.variance = ((this.pixelCount == 0) ? 0 : Math.max(0, ((((double) squareSum) / this.pixelCount) - (this.mean * this.mean))));
+		}
+		
+		/**
+		 * Retrieve the histogram of the brightness values, discretized into
+		 * a given number of buckets. The number of buckets is limited to the
+		 * range 8-128.
+		 * @param numBuckets the number of buckets
+		 * @return the histogram
+		 */
+		public int[] getHistogram(int numBuckets) {
+			int[] histogram = new int[Math.max(8, Math.min(128, numBuckets))];
+			int bucketWidth = (128 / histogram.length);
+			for (int b = 0; b < this.histogram.length; b++)
+				histogram[Math.min((b / bucketWidth), (histogram.length - 1))] += this.histogram[b];
+			return histogram;
+		}
+		
+		/**
+		 * Retrieve the number of pixels with a given brightness value.
+		 * @param brightness the brightness value
+		 * @return the number of pixels with the argument brightness
+		 */
+		public int getCount(int brightness) {
+			return (((brightness < 0) || (brightness >= this.histogram.length)) ? 0 : this.histogram[brightness]);
+		}
+		
+		/**
+		 * @return the average brightness, rounded down like integer division
+		 */
+		public byte getAverageBrightness() {
+			return ((byte) ((this.pixelCount == 0) ? 0 : (this.brightnessSum / this.pixelCount)));
+		}
+		
+		/**
+		 * @return the standard deviation of the brightness (RMS contrast)
+		 */
+		public double getStandardDeviation() {
+			return Math.sqrt(this.variance);
+		}
+		
+		/**
+		 * @return the Michelson contrast, i.e., the difference of maximum and
+		 *         minimum brightness divided by their sum
+		 */
+		public double getMichelsonContrast() {
+			return (((this.maxBrightness + this.minBrightness) == 0) ? 0 : (((double) (this.maxBrightness - this.minBrightness)) / (this.maxBrightness + this.minBrightness)));
+		}
+		
+		/**
+		 * Retrieve the histogram of the local contrast, i.e., the brightness
+		 * differences of pixels to their neighbors, in 128 buckets.
+		 * @return the local contrast histogram
+		 */
+		public int[] getContrastHistogram() {
+			return ((int[]) this.contrastHistogram.clone());
+		}
+		
+		/**
+		 * Retrieve the local contrast of the image, i.e., the brightness
+		 * difference to their neighbors that the 5% pixels with the highest
+		 * difference have at least. This is the very value measureContrast()
+		 * returns.
+		 * @return the local contrast
+		 */
+		public int getLocalContrast() {
+			int contrastsCounted = 0;
+			for (int d = (this.contrastHistogram.length - 1); d >= 0; d--) {
+				contrastsCounted += this.contrastHistogram[d];
+				if ((contrastsCounted * 20) >= this.contrastCount)
+					return d;
+			}
+			return 0;
+		}
+	}
+	
 	/**
 	 * View-based representation of a rectangular sub image of an AnalysisImage.
 	 * 
@@ -312,6 +939,20 @@ public class Imaging {
 		if (psm == null)
 			psm = ProgressMonitor.dummy;
 		
+		//	correct image, and cut white margins
+		ImagePartRectangle textBounds = correctImageContent(ai, dpi, psm);
+		ai = textBounds.toImage();
+		psm.setInfo("   - white margins removed, size is " + ai.getImage().getWidth() + " x " + ai.getImage().getHeight());
+		
+		//	we're done here
+		return ai;
+	}
+	
+	/* Apply all corrections of correctImage() to the argument image in place,
+	 * save for cutting off white margins, and return the content box to cut
+	 * them with, so callers can track where the margins were */
+	static ImagePartRectangle correctImageContent(AnalysisImage ai, int dpi, ProgressMonitor psm) {
+		
 		//	prepare image for enhancement
 		boolean changed;
 		
@@ -386,13 +1027,8 @@ public class Imaging {
 		if (changed)
 			psm.setInfo("   - page rotation corrected");
 		
-		//	cut white margins
-		ImagePartRectangle textBounds = getContentBox(ai);
-		ai = textBounds.toImage();
-		psm.setInfo("   - white margins removed, size is " + ai.getImage().getWidth() + " x " + ai.getImage().getHeight());
-		
-		//	we're done here
-		return ai;
+		//	find content box to cut white margins with
+		return getContentBox(ai);
 	}
 	
 	/**
@@ -405,18 +1041,7 @@ public class Imaging {
 	 * @return true if the image is grayscale, false otherwise
 	 */
 	public static boolean isGrayScale(AnalysisImage image) {
-		byte[][] brightness = image.getBrightness();
-		
-		int[] brightnessCounts = new int[16];
-		Arrays.fill(brightnessCounts, 0);
-		for (int c = 0; c < brightness.length; c++) {
-			for (int r = 0; r < brightness[c].length; r++) {
-				int bci = ((brightness[c][r] * brightnessCounts.length) / 128);
-				while (bci >= brightnessCounts.length)
-					bci--;
-				brightnessCounts[bci]++;
-			}
-		}
+		int[] brightnessCounts = image.getBrightnessStatistics().getHistogram(16);
 		
 		int nonZeroBrightnessCounts = 0;
 		for (int b = 0; b < brightnessCounts.length; b++) {
@@ -438,37 +1063,14 @@ public class Imaging {
 	 * @return true if the image is grayscale, false otherwise
 	 */
 	public static int measureContrast(AnalysisImage image) {
-		byte[][] brightness = image.getBrightness();
-		
-		int[] brightnessDiffCounts = new int[128];
-		int brightnessDiffCount = 0;
-		Arrays.fill(brightnessDiffCounts, 0);
-		for (int c = 1; c < (brightness.length-1); c++) {
-			for (int r = 1; r < (brightness[c].length-1); r++) {
-				int bd = Math.abs((4 * brightness[c][r]) - brightness[c-1][r] - brightness[c+1][r] - brightness[c][r-1] - brightness[c][r+1]);
-				bd /= 4;
-				if (bd == 0)
-					continue;
-				int bdi = ((bd * brightnessDiffCounts.length) / 128);
-				while (bdi >= brightnessDiffCounts.length)
-					bdi--;
-				brightnessDiffCounts[bdi]++;
-				brightnessDiffCount++;
-			}
-		}
+		BrightnessStatistics statistics = image.getBrightnessStatistics();
+		int[] brightnessDiffCounts = statistics.getContrastHistogram();
 		
 		System.out.println("Contrast buckets: ");
 		for (int d = (brightnessDiffCounts.length - 1); d >= 0; d--)
 			System.out.println("  " + d + ": " + brightnessDiffCounts[d]);
 		
-		int brightnessDiffsCounted = 0;
-		for (int d = (brightnessDiffCounts.length - 1); d >= 0; d--) {
-			brightnessDiffsCounted += brightnessDiffCounts[d];
-			if ((brightnessDiffsCounted * 20) >= brightnessDiffCount)
-				return d;
-		}
-		
-		return 0;
+		return statistics.getLocalContrast();
 	}
 	
 	private static final int white = Color.WHITE.getRGB();
@@ -485,16 +1087,22 @@ public class Imaging {
 		byte brightness = computeAverageBrightness(analysisImage);
 		if (brightness > threshold)
 			return false;
-		float[] hsb = null;
+		int width = analysisImage.image.getWidth();
+		int height = analysisImage.image.getHeight();
+		int[] rgbRow = new int[width];
 		int rgb;
-		for (int c = 0; c < analysisImage.image.getWidth(); c++)
-			for (int r = 0; r < analysisImage.image.getHeight(); r++) {
-				rgb = analysisImage.image.getRGB(c, r);
-				hsb = new Color(rgb).getColorComponents(hsb);
+		for (int r = 0; r < height; r++) {
+			analysisImage.image.getRGB(0, r, width, 1, rgbRow, 0, width);
+			for (int c = 0, b = (r * width); c < width; c++, b++) {
+				rgb = rgbRow[c];
+				//	same as using the components from new Color(rgb).getColorComponents() as HSB
 //				hsb = Color.RGBtoHSB(((rgb >> 16) & 0xFF), ((rgb >> 8) & 0xFF), ((rgb >> 0) & 0xFF), hsb);
-				analysisImage.brightness[c][r] = ((byte) (127 - analysisImage.brightness[c][r]));
-				analysisImage.image.setRGB(c, r, Color.HSBtoRGB(hsb [0], hsb[1], (1 - hsb[2])));
+				analysisImage.brightness[b] = ((byte) (127 - analysisImage.brightness[b]));
+				rgbRow[c] = Color.HSBtoRGB((((float) ((rgb >> 16) & 0xFF)) / 255f), (((float) ((rgb >> 8) & 0xFF)) / 255f), (1 - (((float) (rgb & 0xFF)) / 255f)));
 			}
+			analysisImage.image.setRGB(0, r, width, 1, rgbRow, 0, width);
+		}
+		analysisImage.brightnessChanged();
 		return true;
 	}
 	
@@ -559,93 +1167,228 @@ public class Imaging {
 	 * @return true
 	 */
 	public static boolean gaussBlur(AnalysisImage analysisImage, int hRadius, int vRadius, boolean sharpEdge) {
+		return gaussBlur(analysisImage, hRadius, vRadius, sharpEdge, BLUR_MODE_EXACT);
+	}
+	
+	/** blur mode computing the exact Gaussian blur */
+	public static final int BLUR_MODE_EXACT = 0;
+	
+	/** blur mode approximating a smooth Gaussian blur by three successive box
+	 * blurs in either direction, whose cost does not depend on the radius.
+	 * This mode only applies to smooth blurs with radii of 3 and above in both
+	 * directions; smaller radii, as well as sharply edged blurs, always use
+	 * the exact blur. The L1 distance between the combined box kernel and the
+	 * Gaussian kernel stays below 0.051 in either direction for all radii, so
+	 * the resulting brightness deviates from the one of the exact blur by at
+	 * most 8 (out of 128) brightness levels, including rounding; in practice,
+	 * deviations hardly ever exceed 3 brightness levels. */
+	public static final int BLUR_MODE_BOX_APPROXIMATION = 1;
+	
+	private static final int minBoxBlurRadius = 3;
+	
+	/**
+	 * Apply a Gaussian blur to an image. This is mainly meant to even out small
+	 * gaps or brightness differences in letters in gray scale images. If the
+	 * argument radius is less than 1, this method does not change the image and
+	 * returns false. If the <code>sharpEdge</code> argument is set to true,
+	 * the radius of the kernel used to compute the blur is exactly the argument
+	 * radius; if it is set to false, radius of the kernel is three times the
+	 * argument radius, to provide a smooth blurring. The blur mode can be
+	 * either of BLUR_MODE_EXACT and BLUR_MODE_BOX_APPROXIMATION, the latter
+	 * being considerably faster for large radii at the cost of slight
+	 * deviations.
+	 * @param analysisImage the wrapped image
+	 * @param hRadius the horizontal radius of the blur
+	 * @param vRadius the vertical radius of the blur
+	 * @param sharpEdge use a sharply edged blur instead of a smooth one?
+	 * @param blurMode the way of computing the blur
+	 * @return true
+	 */
+	public static boolean gaussBlur(AnalysisImage analysisImage, int hRadius, int vRadius, boolean sharpEdge, int blurMode) {
 		if ((hRadius < 1) && (vRadius < 1))
 			return false;
 		
 		//	get brightness array
-		byte[][] brightness = analysisImage.getBrightness();
+		byte[] brightness = analysisImage.getBrightnessPlane();
+		int width = analysisImage.image.getWidth();
+		int height = analysisImage.image.getHeight();
 		
 		//	blur array
-		if (hRadius == vRadius)
-			gaussBlur2D(brightness, hRadius, sharpEdge);
-		else gaussBlur(brightness, hRadius, vRadius, sharpEdge);
+		if ((blurMode == BLUR_MODE_BOX_APPROXIMATION) && !sharpEdge && (hRadius >= minBoxBlurRadius) && (vRadius >= minBoxBlurRadius))
+			boxBlur(brightness, width, height, hRadius, vRadius);
+		else if (hRadius == vRadius)
+			gaussBlur2D(brightness, width, height, hRadius, sharpEdge);
+		else gaussBlur(brightness, width, height, hRadius, vRadius, sharpEdge);
 		
 		//	update image
-		for (int c = 0; c < brightness.length; c++) {
-			for (int r = 0; r < brightness[c].length; r++)
-				analysisImage.image.setRGB(c, r, Color.HSBtoRGB(0, 0, (((float) brightness[c][r]) / 127)));
-		}
+		writeBrightness(analysisImage, brightnessRgb[127]);
 		
 		//	finally ...
 		return true;
 	}
 	
-	private static void gaussBlur2D(byte[][] brightness, int radius, boolean sharpEdge) {
+	/* Both passes of the blurs below compute each pixel independently of all
+	 * others from a complete input plane, so they split up the image into
+	 * bands of rows (or columns) processed in parallel, with each band reading
+	 * the halo pixels it requires from the shared input. Each pixel sees the
+	 * very same sequence of operations as in serial processing, so results do
+	 * not depend on parallelism. Vertical passes accumulate whole rows at a
+	 * time to walk memory in order, again adding up the kernel terms of each
+	 * individual pixel in the same order as when doing one pixel at a time. */
+	
+	private static void gaussBlur2D(final byte[] brightness, final int width, int height, int radius, boolean sharpEdge) {
+		if ((width == 0) || (height == 0))
+			return;
 		
-		//	compute one dimensional kernel
-		int kernelRadius = (radius * (sharpEdge ? 1 : 3));
-		double[] kernel = new double[kernelRadius + 1 + kernelRadius];
-		double kernelSum = 0;
-		for (int k = -kernelRadius; k <= kernelRadius; k++) {
-			kernel[k + kernelRadius] = (1 / Math.sqrt(2 * Math.PI * radius * radius)) * Math.pow(Math.E, -(((double) (k * k)) / (2 * radius * radius)));
-			kernelSum += kernel[k + kernelRadius];
-		}
-		for (int k = -kernelRadius; k <= kernelRadius; k++)
-			kernel[k + kernelRadius] /= kernelSum;
+		//	get one dimensional kernel
+		final int kernelRadius = (radius * (sharpEdge ? 1 : 3));
+		final double[] kernel = getGaussKernel(radius, kernelRadius);
 		
 		//	build intermediate brightness array
-		float[][] iBrightness = new float[brightness.length][brightness[0].length];
+		final float[] iBrightness = new float[brightness.length];
 		
 		//	apply kernel across rows
-		for (int c = 0; c < brightness.length; c++) {
-			for (int r = 0; r < brightness[c].length; r++) {
-				double brightnessSum = 0;
-				for (int k = -kernelRadius; k <= kernelRadius; k++) {
-					int l = (c + k);
-					if (l < 0)
-						l = 0;
-					else if (l > (brightness.length-1))
-						l = (brightness.length-1);
-					brightnessSum += (kernel[k + kernelRadius] * brightness[l][r]);
+		runParallel(height, new ParallelRangeTask() {
+			void run(int fromRow, int toRow) {
+				double[] brightnessSums = new double[width];
+				for (int r = fromRow; r < toRow; r++) {
+					convolveRow(brightness, (r * width), width, kernel, kernelRadius, brightnessSums);
+					for (int c = 0, b = (r * width); c < width; c++, b++)
+						iBrightness[b] = ((float) brightnessSums[c]);
 				}
-				iBrightness[c][r] = ((float) brightnessSum);
 			}
-		}
+		});
 		
 		//	apply kernel down columns
-		for (int c = 0; c < iBrightness.length; c++) {
-			for (int r = 0; r < iBrightness[c].length; r++) {
-				double iBrightnessSum = 0;
-				for (int k = -kernelRadius; k <= kernelRadius; k++) {
-					int l = (r + k);
-					if (l < 0)
-						l = 0;
-					else if (l > (iBrightness[c].length-1))
-						l = (iBrightness[c].length-1);
-					iBrightnessSum += (kernel[k + kernelRadius] * iBrightness[c][l]);
+		final int fHeight = height;
+		runParallel(height, new ParallelRangeTask() {
+			void run(int fromRow, int toRow) {
+				double[] iBrightnessSums = new double[width];
+				for (int r = fromRow; r < toRow; r++) {
+					convolveColumns(iBrightness, r, width, fHeight, kernel, kernelRadius, iBrightnessSums);
+					for (int c = 0, bi = (r * width); c < width; c++, bi++) {
+						int b = ((int) Math.round(iBrightnessSums[c]));
+						if (b < 0)
+							b = 0;
+						else if (b > 127)
+							b = 127;
+						brightness[bi] = ((byte) b);
+					}
 				}
-				int b = ((int) Math.round(iBrightnessSum));
-				if (b < 0)
-					b = 0;
-				else if (b > 127)
-					b = 127;
-				brightness[c][r] = ((byte) b);
 			}
-		}
+		});
 	}
 	
-	private static void gaussBlur(byte[][] brightness, int hRadius, int vRadius, boolean sharpEdge) {
+	private static void gaussBlur(byte[] brightness, int width, int height, int hRadius, int vRadius, boolean sharpEdge) {
 		if (hRadius >= 1)
-			gaussBlur1D(brightness, hRadius, sharpEdge, true);
+			gaussBlur1D(brightness, width, height, hRadius, sharpEdge, true);
 		if (vRadius >= 1)
-			gaussBlur1D(brightness, vRadius, sharpEdge, false);
+			gaussBlur1D(brightness, width, height, vRadius, sharpEdge, false);
 	}
 	
-	private static void gaussBlur1D(byte[][] brightness, int radius, boolean sharpEdge, boolean blurRows) {
+	private static void gaussBlur1D(final byte[] brightness, final int width, final int height, int radius, boolean sharpEdge, final boolean blurRows) {
+		if ((width == 0) || (height == 0))
+			return;
+		
+		//	get one dimensional kernel
+		final int kernelRadius = (radius * (sharpEdge ? 1 : 3));
+		final double[] kernel = getGaussKernel(radius, kernelRadius);
 		
-		//	compute one dimensional kernel
-		int kernelRadius = (radius * (sharpEdge ? 1 : 3));
-		double[] kernel = new double[kernelRadius + 1 + kernelRadius];
+		//	build intermediate brightness array
+		final float[] iBrightness = new float[brightness.length];
+		
+		//	apply kernel across rows or down columns
+		runParallel(height, new ParallelRangeTask() {
+			void run(int fromRow, int toRow) {
+				double[] brightnessSums = new double[width];
+				for (int r = fromRow; r < toRow; r++) {
+					if (blurRows)
+						convolveRow(brightness, (r * width), width, kernel, kernelRadius, brightnessSums);
+					else convolveColumns(brightness, r, width, height, kernel, kernelRadius, brightnessSums);
+					for (int c = 0, b = (r * width); c < width; c++, b++)
+						iBrightness[b] = ((float) brightnessSums[c]);
+				}
+			}
+		});
+		
+		//	write result back to image
+		for (int b = 0; b < iBrightness.length; b++) {
+			int nb = Math.round(iBrightness[b]);
+			if (nb < 0)
+				nb = 0;
+			else if (nb > 127)
+				nb = 127;
+			brightness[b] = ((byte) nb);
+		}
+	}
+	
+	/* convolve one row with a kernel, clamping column indexes at the edges */
+	private static void convolveRow(byte[] brightness, int rowOffset, int width, double[] kernel, int kernelRadius, double[] sums) {
+		for (int c = 0; c < width; c++) {
+			double sum = 0;
+			
+			//	inner part of row, no need for clamping
+			if ((kernelRadius <= c) && ((c + kernelRadius) < width))
+				for (int k = 0, b = (rowOffset + c - kernelRadius); k < kernel.length; k++, b++)
+					sum += (kernel[k] * brightness[b]);
+			
+			//	row edges, need to clamp
+			else for (int k = -kernelRadius; k <= kernelRadius; k++) {
+				int l = (c + k);
+				if (l < 0)
+					l = 0;
+				else if (l > (width-1))
+					l = (width-1);
+				sum += (kernel[k + kernelRadius] * brightness[rowOffset + l]);
+			}
+			sums[c] = sum;
+		}
+	}
+	
+	/* convolve all columns of one row with a kernel, clamping row indexes at the edges */
+	private static void convolveColumns(byte[] brightness, int row, int width, int height, double[] kernel, int kernelRadius, double[] sums) {
+		Arrays.fill(sums, 0, width, 0);
+		for (int k = -kernelRadius; k <= kernelRadius; k++) {
+			int l = (row + k);
+			if (l < 0)
+				l = 0;
+			else if (l > (height-1))
+				l = (height-1);
+			double kv = kernel[k + kernelRadius];
+			for (int c = 0, b = (l * width); c < width; c++, b++)
+				sums[c] += (kv * brightness[b]);
+		}
+	}
+	
+	/* convolve all columns of one row with a kernel, clamping row indexes at the edges */
+	private static void convolveColumns(float[] brightness, int row, int width, int height, double[] kernel, int kernelRadius, double[] sums) {
+		Arrays.fill(sums, 0, width, 0);
+		for (int k = -kernelRadius; k <= kernelRadius; k++) {
+			int l = (row + k);
+			if (l < 0)
+				l = 0;
+			else if (l > (height-1))
+				l = (height-1);
+			double kv = kernel[k + kernelRadius];
+			for (int c = 0, b = (l * width); c < width; c++, b++)
+				sums[c] += (kv * brightness[b]);
+		}
+	}
+	
+	private static final int gaussKernelCacheSize = 64;
+	private static Map gaussKernelCache = Collections.synchronizedMap(new LinkedHashMap(64, 0.9f, true) {
+		protected boolean removeEldestEntry(Entry eldest) {
+			return (this.size() > gaussKernelCacheSize);
+		}
+	});
+	
+	/* the returned array is shared and must not be modified */
+	private static double[] getGaussKernel(int radius, int kernelRadius) {
+		String kernelKey = (radius + "-" + kernelRadius);
+		double[] kernel = ((double[]) gaussKernelCache.get(kernelKey));
+		if (kernel != null)
+			return kernel;
+		kernel = new double[kernelRadius + 1 + kernelRadius];
 		double kernelSum = 0;
 		for (int k = -kernelRadius; k <= kernelRadius; k++) {
 			kernel[k + kernelRadius] = (1 / Math.sqrt(2 * Math.PI * radius * radius)) * Math.pow(Math.E, -(((double) (k * k)) / (2 * radius * radius)));
@@ -653,53 +1396,95 @@ public class Imaging {
 		}
 		for (int k = -kernelRadius; k <= kernelRadius; k++)
 			kernel[k + kernelRadius] /= kernelSum;
-		
-		//	build intermediate brightness array
-		float[][] iBrightness = new float[brightness.length][brightness[0].length];
-		
-		//	apply kernel across rows
-		if (blurRows)
-			for (int c = 0; c < brightness.length; c++) {
-				for (int r = 0; r < brightness[c].length; r++) {
-					double brightnessSum = 0;
-					for (int k = -kernelRadius; k <= kernelRadius; k++) {
-						int l = (c + k);
-						if (l < 0)
-							l = 0;
-						else if (l > (brightness.length-1))
-							l = (brightness.length-1);
-						brightnessSum += (kernel[k + kernelRadius] * brightness[l][r]);
+		gaussKernelCache.put(kernelKey, kernel);
+		return kernel;
+	}
+	
+	private static void boxBlur(final byte[] brightness, final int width, final int height, int hRadius, int vRadius) {
+		if ((width == 0) || (height == 0))
+			return;
+		
+		//	compute box radii, and pad lines with replicated edge values so the
+		//	combined boxes see the same edge extension as the Gaussian kernel
+		final int[] hBoxRadii = getBoxBlurRadii(hRadius, 3);
+		final int hPad = (hBoxRadii[0] + hBoxRadii[1] + hBoxRadii[2]);
+		final int[] vBoxRadii = getBoxBlurRadii(vRadius, 3);
+		final int vPad = (vBoxRadii[0] + vBoxRadii[1] + vBoxRadii[2]);
+		
+		//	blur rows
+		final float[] iBrightness = new float[brightness.length];
+		runParallel(height, new ParallelRangeTask() {
+			void run(int fromRow, int toRow) {
+				float[] line = new float[hPad + width + hPad];
+				float[] boxLine = new float[line.length];
+				for (int r = fromRow; r < toRow; r++) {
+					int ro = (r * width);
+					for (int l = 0; l < line.length; l++)
+						line[l] = brightness[ro + Math.min(Math.max((l - hPad), 0), (width-1))];
+					for (int p = 0; p < hBoxRadii.length; p++) {
+						boxBlurLine(line, boxLine, line.length, hBoxRadii[p]);
+						float[] t = line;
+						line = boxLine;
+						boxLine = t;
 					}
-					iBrightness[c][r] = ((float) brightnessSum);
+					System.arraycopy(line, hPad, iBrightness, ro, width);
 				}
 			}
+		});
 		
-		//	apply kernel down columns
-		else for (int c = 0; c < iBrightness.length; c++) {
-			for (int r = 0; r < iBrightness[c].length; r++) {
-				double brightnessSum = 0;
-				for (int k = -kernelRadius; k <= kernelRadius; k++) {
-					int l = (r + k);
-					if (l < 0)
-						l = 0;
-					else if (l > (iBrightness[c].length-1))
-						l = (iBrightness[c].length-1);
-					brightnessSum += (kernel[k + kernelRadius] * brightness[c][l]);
+		//	blur columns
+		runParallel(width, new ParallelRangeTask() {
+			void run(int fromCol, int toCol) {
+				float[] line = new float[vPad + height + vPad];
+				float[] boxLine = new float[line.length];
+				for (int c = fromCol; c < toCol; c++) {
+					for (int l = 0; l < line.length; l++)
+						line[l] = iBrightness[(Math.min(Math.max((l - vPad), 0), (height-1)) * width) + c];
+					for (int p = 0; p < vBoxRadii.length; p++) {
+						boxBlurLine(line, boxLine, line.length, vBoxRadii[p]);
+						float[] t = line;
+						line = boxLine;
+						boxLine = t;
+					}
+					for (int r = 0, bi = c; r < height; r++, bi += width) {
+						int b = Math.round(line[r + vPad]);
+						if (b < 0)
+							b = 0;
+						else if (b > 127)
+							b = 127;
+						brightness[bi] = ((byte) b);
+					}
 				}
-				iBrightness[c][r] = ((float) brightnessSum);
-			}
-		}
-		
-		//	write result back to image
-		for (int c = 0; c < iBrightness.length; c++) {
-			for (int r = 0; r < iBrightness[c].length; r++) {
-				int b = ((int) Math.round(iBrightness[c][r]));
-				if (b < 0)
-					b = 0;
-				else if (b > 127)
-					b = 127;
-				brightness[c][r] = ((byte) b);
 			}
+		});
+	}
+	
+	/* compute the radii of a sequence of box blurs approximating a Gaussian blur
+	 * with the argument standard deviation (see Kovesi, "Fast Almost-Gaussian
+	 * Filtering") */
+	private static int[] getBoxBlurRadii(int sigma, int boxes) {
+		double idealWidth = Math.sqrt(((12.0 * sigma * sigma) / boxes) + 1);
+		int lowerWidth = ((int) Math.floor(idealWidth));
+		if ((lowerWidth % 2) == 0)
+			lowerWidth--;
+		int upperWidth = (lowerWidth + 2);
+		int lowerCount = ((int) Math.round(((12.0 * sigma * sigma) - (boxes * lowerWidth * lowerWidth) - (4 * boxes * lowerWidth) - (3 * boxes)) / ((-4 * lowerWidth) - 4)));
+		int[] radii = new int[boxes];
+		for (int b = 0; b < boxes; b++)
+			radii[b] = (((b < lowerCount) ? lowerWidth : upperWidth) / 2);
+		return radii;
+	}
+	
+	/* blur a line of values with a box of the argument radius, clamping indexes at the edges */
+	private static void boxBlurLine(float[] line, float[] boxLine, int length, int radius) {
+		float boxWidth = ((radius * 2) + 1);
+		double sum = 0;
+		for (int l = -radius; l <= radius; l++)
+			sum += line[Math.min(Math.max(l, 0), (length-1))];
+		for (int l = 0; l < length; l++) {
+			boxLine[l] = ((float) (sum / boxWidth));
+			sum += line[Math.min((l + radius + 1), (length-1))];
+			sum -= line[Math.max((l - radius), 0)];
 		}
 	}
 	
@@ -715,15 +1500,14 @@ public class Imaging {
 	public static boolean eliminateBackground(AnalysisImage analysisImage, int dpi) {
 		
 		//	get brightness array
-		byte[][] brightness = analysisImage.getBrightness();
+		byte[] brightness = analysisImage.getBrightnessPlane();
+		int width = analysisImage.image.getWidth();
+		int height = analysisImage.image.getHeight();
 		
 		//	copy and blur brightness array
-		byte[][] backgroundBrightness = new byte[brightness.length][brightness[0].length];
-		for (int c = 0; c < brightness.length; c++) {
-			for (int r = 0; r < brightness[c].length; r++)
-				backgroundBrightness[c][r] = brightness[c][r];
-		}
-		gaussBlur2D(backgroundBrightness, (dpi / 20), false);
+		byte[] backgroundBrightness = new byte[brightness.length];
+		System.arraycopy(brightness, 0, backgroundBrightness, 0, brightness.length);
+		gaussBlur2D(backgroundBrightness, width, height, (dpi / 20), false);
 //		
 //		//	subtract background from foreground
 //		for (int c = 0; c < brightness.length; c++)
@@ -737,21 +1521,17 @@ public class Imaging {
 //			}
 		
 		//	scale brightness to use background as white
-		for (int c = 0; c < brightness.length; c++)
-			for (int r = 0; r < brightness[c].length; r++) {
-				if (backgroundBrightness[c][r] == 0)
-					continue;
-				int b = ((brightness[c][r] * 127) / backgroundBrightness[c][r]);
-				if (b > 127)
-					b = 127;
-				analysisImage.brightness[c][r] = ((byte) b);
-			}
+		for (int p = 0; p < brightness.length; p++) {
+			if (backgroundBrightness[p] == 0)
+				continue;
+			int b = ((brightness[p] * 127) / backgroundBrightness[p]);
+			if (b > 127)
+				b = 127;
+			analysisImage.brightness[p] = ((byte) b);
+		}
 		
 		//	update image
-		for (int c = 0; c < brightness.length; c++) {
-			for (int r = 0; r < brightness[c].length; r++)
-				analysisImage.image.setRGB(c, r, ((brightness[c][r] == 127) ? backgroundEliminated : Color.HSBtoRGB(0, 0, (((float) brightness[c][r]) / 127))));
-		}
+		writeBrightness(analysisImage, backgroundEliminated);
 		
 		if (true)
 			return true;
@@ -764,14 +1544,14 @@ public class Imaging {
 		
 		//	lay out tiles
 		int tileSize = dpi;
-		int hSteps = (brightness.length / tileSize);
-		while ((hSteps * tileSize) < brightness.length)
+		int hSteps = (width / tileSize);
+		while ((hSteps * tileSize) < width)
 			hSteps++;
-		int hStart = ((brightness.length - (hSteps * tileSize)) / 2);
-		int vSteps = (brightness[0].length / tileSize);
-		while ((vSteps * tileSize) < brightness[0].length)
+		int hStart = ((width - (hSteps * tileSize)) / 2);
+		int vSteps = (height / tileSize);
+		while ((vSteps * tileSize) < height)
 			vSteps++;
-		int vStart = ((brightness[0].length - (vSteps * tileSize)) / 2);
+		int vStart = ((height - (vSteps * tileSize)) / 2);
 		
 		//	compute min and max brightness for each tile
 		byte[][] tileMinBrightnesses = new byte[hSteps][vSteps];
@@ -780,10 +1560,10 @@ public class Imaging {
 			for (int v = 0; v < vSteps; v++) {
 				int tileMinBrightness = 127;
 				int tileMaxBrightness = 0;
-				for (int c = Math.max((hStart + (h * tileSize)), 0); c < Math.min((hStart + ((h + 1) * tileSize)), brightness.length); c++)
-					for (int r = Math.max((vStart + (v * tileSize)), 0); r < Math.min((vStart + ((v + 1) * tileSize)), brightness[c].length); r++) {
-						tileMinBrightness = Math.min(tileMinBrightness, brightness[c][r]);
-						tileMaxBrightness = Math.max(tileMaxBrightness, brightness[c][r]);
+				for (int r = Math.max((vStart + (v * tileSize)), 0); r < Math.min((vStart + ((v + 1) * tileSize)), height); r++)
+					for (int c = Math.max((hStart + (h * tileSize)), 0); c < Math.min((hStart + ((h + 1) * tileSize)), width); c++) {
+						tileMinBrightness = Math.min(tileMinBrightness, brightness[(r * width) + c]);
+						tileMaxBrightness = Math.max(tileMaxBrightness, brightness[(r * width) + c]);
 					}
 				tileMinBrightnesses[h][v] = ((byte) tileMinBrightness);
 				tileMaxBrightnesses[h][v] = ((byte) tileMaxBrightness);
@@ -830,28 +1610,25 @@ public class Imaging {
 					continue;
 				
 				//	correct image
-				for (int c = Math.max((hStart + (h * tileSize)), 0); c < Math.min((hStart + ((h + 1) * tileSize)), brightness.length); c++)
-					for (int r = Math.max((vStart + (v * tileSize)), 0); r < Math.min((vStart + ((v + 1) * tileSize)), brightness[c].length); r++) {
-//						int nb = (((brightness[c][r] - tileMinBrightness) * 127) / (tileMaxBrightness - tileMinBrightness + 1));
-						int nb = (((brightness[c][r] - tileMinBrightness) * tileMaxBrightness) / (tileMaxBrightness - tileMinBrightness + 1));
+				for (int r = Math.max((vStart + (v * tileSize)), 0); r < Math.min((vStart + ((v + 1) * tileSize)), height); r++)
+					for (int c = Math.max((hStart + (h * tileSize)), 0); c < Math.min((hStart + ((h + 1) * tileSize)), width); c++) {
+//						int nb = (((brightness[(r * width) + c] - tileMinBrightness) * 127) / (tileMaxBrightness - tileMinBrightness + 1));
+						int nb = (((brightness[(r * width) + c] - tileMinBrightness) * tileMaxBrightness) / (tileMaxBrightness - tileMinBrightness + 1));
 						if (nb < 0)
 							nb = 0;
 						else if (nb > 127)
 							nb = 127;
-						analysisImage.brightness[c][r] = ((byte) nb);
+						analysisImage.brightness[(r * width) + c] = ((byte) nb);
 					}
 			}
 		
 		//	apply small radius Gauss blur to smooth out unevenly dark letters
-		gaussBlur2D(brightness, 1, true);
+		gaussBlur2D(brightness, width, height, 1, true);
 		
 		//	TODO abandon tiles, simply subtract background
 		
 		//	update image
-		for (int c = 0; c < brightness.length; c++) {
-			for (int r = 0; r < brightness[c].length; r++)
-				analysisImage.image.setRGB(c, r, ((brightness[c][r] == 127) ? backgroundEliminated : Color.HSBtoRGB(0, 0, (((float) brightness[c][r]) / 127))));
-		}
+		writeBrightness(analysisImage, backgroundEliminated);
 		
 		//	finally ...
 		return true;
@@ -991,15 +1768,30 @@ public class Imaging {
 	 */
 	public static boolean whitenWhite(AnalysisImage analysisImage) {
 		byte avgBrightness = computeAverageBrightness(analysisImage);
-		for (int c = 0; c < analysisImage.image.getWidth(); c++)
-			for (int r = 0; r < analysisImage.image.getHeight(); r++) {
-				if (analysisImage.brightness[c][r] == 127)
-					continue;
-				if (analysisImage.brightness[c][r] >= avgBrightness) {
-					analysisImage.brightness[c][r] = 127;
-					analysisImage.image.setRGB(c, r, whiteBalanced);
+		byte[] brightness = analysisImage.brightness;
+		int width = analysisImage.image.getWidth();
+		int height = analysisImage.image.getHeight();
+		int[] whiteRow = new int[width];
+		Arrays.fill(whiteRow, whiteBalanced);
+		for (int r = 0; r < height; r++) {
+			int whiteStart = -1;
+			for (int c = 0, b = (r * width); c <= width; c++, b++) {
+				
+				//	whiten pixel, and remember where sequence of whitened pixels started
+				if ((c < width) && (brightness[b] != 127) && (brightness[b] >= avgBrightness)) {
+					brightness[b] = 127;
+					if (whiteStart == -1)
+						whiteStart = c;
+				}
+				
+				//	update image for whole sequence of whitened pixels in one go
+				else if (whiteStart != -1) {
+					analysisImage.image.setRGB(whiteStart, r, (c - whiteStart), 1, whiteRow, 0, width);
+					whiteStart = -1;
 				}
 			}
+		}
+		analysisImage.brightnessChanged();
 		return true;
 	}
 	
@@ -1009,13 +1801,7 @@ public class Imaging {
 	 * @return the avearge brightness
 	 */
 	public static byte computeAverageBrightness(AnalysisImage analysisImage) {
-		byte[][] brightness = analysisImage.getBrightness();
-		long brightnessSum = 0; 
-		for (int c = 0; c < brightness.length; c++) {
-			for (int r = 0; r < brightness[c].length; r++)
-				brightnessSum += brightness[c][r];
-		}
-		return ((byte) (brightnessSum / (brightness.length * brightness[0].length)));
+		return analysisImage.getBrightnessStatistics().getAverageBrightness();
 	}
 	
 	/**
@@ -1026,12 +1812,12 @@ public class Imaging {
 	public static byte computeAverageBrightness(ImagePartRectangle rect) {
 		if ((rect.rightCol <= rect.leftCol) || (rect.bottomRow <= rect.topRow))
 			return 0;
-		byte[][] brightness = rect.analysisImage.getBrightness();
-		long brightnessSum = 0; 
-		for (int c = rect.leftCol; c < rect.rightCol; c++) {
-			for (int r = rect.topRow; r < rect.bottomRow; r++)
-				brightnessSum += brightness[c][r];
-		}
+		
+		//	add up sums from integral image in bands small enough for sums not to overflow
+		int bandHeight = Math.max(1, (maxIntegralSumArea / (rect.rightCol - rect.leftCol)));
+		long brightnessSum = 0;
+		for (int r = rect.topRow; r < rect.bottomRow; r += bandHeight)
+			brightnessSum += rect.analysisImage.getBrightnessSum(rect.leftCol, rect.rightCol, r, Math.min(rect.bottomRow, (r + bandHeight)));
 		return ((byte) (brightnessSum / ((rect.rightCol - rect.leftCol) * (rect.bottomRow - rect.topRow))));
 	}
 	
@@ -1042,15 +1828,7 @@ public class Imaging {
 	 * @return the brightness distribution
 	 */
 	public static int[] getBrightnessDistribution(AnalysisImage ai, int numBuckets) {
-		int[] brightnessDist = new int[Math.max(8, Math.min(128, numBuckets))];
-		int brightnessBucketWidth = (128 / brightnessDist.length);
-		Arrays.fill(brightnessDist, 0);
-		byte[][] brightness = ai.getBrightness();
-		for (int c = 0; c < brightness.length; c++) {
-			for (int r = 0; r < brightness[c].length; r++)
-				brightnessDist[brightness[c][r] / brightnessBucketWidth]++;
-		}
-		return brightnessDist;
+		return ai.getBrightnessStatistics().getHistogram(numBuckets);
 	}
 	
 	/**
@@ -1121,27 +1899,253 @@ public class Imaging {
 	 * @return the region coloring
 	 */
 	public static int[][] getRegionColoring(AnalysisImage ai, byte brightnessThreshold, boolean includeDiagonal) {
-		byte[][] brightness = ai.getBrightness();
-		if (brightness.length == 0)
-			return new int[0][0];
-		int[][] regionCodes = new int[brightness.length][brightness[0].length];
+		return getRegionColoring(ai, brightnessThreshold, includeDiagonal, REGION_COLORING_UNION_FIND).regionCodes;
+	}
+	
+	/** region coloring engine filling one region after another, pixel by pixel */
+	public static final int REGION_COLORING_FLOOD_FILL = 0;
+	
+	/** region coloring engine labeling connected components in linear time,
+	 * using a union-find structure over bands of pixel rows processed in
+	 * parallel and merged afterwards */
+	public static final int REGION_COLORING_UNION_FIND = 1;
+	
+	/**
+	 * Compute the region coloring of an image, which makes continuous light or
+	 * dark regions of an image distinguishable, together with the size and
+	 * bounding box of each region. The region codes are the same as the ones
+	 * returned by the three-argument version of this method, no matter which
+	 * engine computes them.
+	 * @param ai the image to analyze
+	 * @param brightnessThreshold the white threshold
+	 * @param includeDiagonal consider diagonally adjacent pixels connected?
+	 * @param engine the engine to use for computing the region coloring
+	 * @return the region coloring
+	 */
+	public static RegionColoring getRegionColoring(AnalysisImage ai, byte brightnessThreshold, boolean includeDiagonal, int engine) {
+		int[][] regionCodes;
+		int regionCodeCount;
+		if (engine == REGION_COLORING_FLOOD_FILL) {
+			regionCodes = new int[ai.image.getWidth()][];
+			regionCodeCount = floodFillRegions(ai, brightnessThreshold, includeDiagonal, regionCodes);
+		}
+		else {
+			regionCodes = new int[ai.image.getWidth()][];
+			regionCodeCount = unionFindRegions(ai, brightnessThreshold, includeDiagonal, regionCodes);
+		}
+		return new RegionColoring(regionCodes, regionCodeCount, ai.image.getWidth(), ai.image.getHeight());
+	}
+	
+	/**
+	 * The region coloring of an image, i.e., the region code of each pixel,
+	 * plus the size and bounding box of each region. Region code 0 marks
+	 * pixels not belonging to any region. Some region codes might not have
+	 * any pixels, which shows in a size of 0.
+	 * 
+	 * @author sautter
+	 */
+	public static class RegionColoring {
+		
+		/** the region codes, the outer dimension being the columns, the inner one the rows */
+		public final int[][] regionCodes;
+		
+		/** the number of region codes, including 0 */
+		public final int regionCodeCount;
+		
+		/** the number of pixels in each region */
+		public final int[] regionSizes;
+		
+		/** the leftmost column of each region (the image width for empty regions) */
+		public final int[] regionMinCols;
+		
+		/** the rightmost column of each region (0 for empty regions) */
+		public final int[] regionMaxCols;
+		
+		/** the topmost row of each region (the image height for empty regions) */
+		public final int[] regionMinRows;
+		
+		/** the bottommost row of each region (0 for empty regions) */
+		public final int[] regionMaxRows;
+		
+		RegionColoring(int[][] regionCodes, int regionCodeCount, int width, int height) {
+			this.regionCodes = regionCodes;
+			this.regionCodeCount = regionCodeCount;
+			this.regionSizes = new int[regionCodeCount];
+			this.regionMinCols = new int[regionCodeCount];
+			Arrays.fill(this.regionMinCols, width);
+			this.regionMaxCols = new int[regionCodeCount];
+			this.regionMinRows = new int[regionCodeCount];
+			Arrays.fill(this.regionMinRows, height);
+			this.regionMaxRows = new int[regionCodeCount];
+			for (int c = 0; c < regionCodes.length; c++)
+				for (int r = 0; r < regionCodes[c].length; r++) {
+					int rc = regionCodes[c][r];
+					if (rc == 0)
+						continue;
+					this.regionSizes[rc]++;
+					if (c < this.regionMinCols[rc])
+						this.regionMinCols[rc] = c;
+					if (c > this.regionMaxCols[rc])
+						this.regionMaxCols[rc] = c;
+					if (r < this.regionMinRows[rc])
+						this.regionMinRows[rc] = r;
+					if (r > this.regionMaxRows[rc])
+						this.regionMaxRows[rc] = r;
+				}
+		}
+	}
+	
+	private static int floodFillRegions(AnalysisImage ai, byte brightnessThreshold, boolean includeDiagonal, int[][] regionCodes) {
+		byte[] brightness = ai.getBrightnessPlane();
+		int width = ai.image.getWidth();
+		int height = ai.image.getHeight();
 		for (int c = 0; c < regionCodes.length; c++)
-			Arrays.fill(regionCodes[c], 0);
+			regionCodes[c] = new int[height];
 		int currentRegionCode = 1;
-		for (int c = 0; c < brightness.length; c++)
-			for (int r = 0; r < brightness[c].length; r++) {
-				if (brightness[c][r] == 127)
+		for (int c = 0; c < width; c++)
+			for (int r = 0; r < height; r++) {
+				if (brightness[(r * width) + c] == 127)
 					continue;
 				if (regionCodes[c][r] != 0)
 					continue;
-				int rs = colorRegion(brightness, regionCodes, c, r, currentRegionCode, brightnessThreshold, includeDiagonal);
+				int rs = colorRegion(brightness, width, height, regionCodes, c, r, currentRegionCode, brightnessThreshold, includeDiagonal);
 				if (DEBUG_REGION_COLORING) System.out.println("Region " + currentRegionCode + " is sized " + rs);
 				currentRegionCode++;
 				//	TODO assemble region size distribution, use it to estimate font size, and use estimate for cleanup thresholds
 			}
-		return regionCodes;
+		return currentRegionCode;
+	}
+	
+	/* Label connected components in two passes: first, link each pixel to its
+	 * already visited neighbors in a union-find structure over pixel indexes,
+	 * always linking to the smaller root, so each root ends up being the first
+	 * pixel of its component (in row-major order), no matter in which order
+	 * links are made; bands of rows do this in parallel, and links between
+	 * bands are added afterwards. Second, hand out region codes in the same
+	 * column-major order the flood fill uses, including its habit of using up
+	 * a code on seed pixels too bright (or too dark) to start a region. */
+	private static int unionFindRegions(AnalysisImage ai, final byte brightnessThreshold, final boolean includeDiagonal, int[][] regionCodes) {
+		final byte[] brightness = ai.getBrightnessPlane();
+		final int width = ai.image.getWidth();
+		int height = ai.image.getHeight();
+		for (int c = 0; c < regionCodes.length; c++)
+			regionCodes[c] = new int[height];
+		if ((width == 0) || (height == 0))
+			return 1;
+		
+		//	link pixels in bands of rows (-1 marks pixels not belonging to any region)
+		final int[] parents = new int[width * height];
+		final int bandCount = Math.min(getParallelism(), height);
+		final int bandHeight = ((height + bandCount - 1) / bandCount);
+		final int fHeight = height;
+		runParallel(bandCount, new ParallelRangeTask() {
+			void run(int fromBand, int toBand) {
+				for (int band = fromBand; band < toBand; band++) {
+					int fromRow = (band * bandHeight);
+					int toRow = Math.min(fHeight, (fromRow + bandHeight));
+					for (int r = fromRow; r < toRow; r++)
+						for (int c = 0, p = (r * width); c < width; c++, p++) {
+							if (!isInRegion(brightness[p], brightnessThreshold)) {
+								parents[p] = -1;
+								continue;
+							}
+							parents[p] = p;
+							if ((c != 0) && (parents[p-1] != -1))
+								union(parents, p, (p-1));
+							if (r == fromRow)
+								continue;
+							if (parents[p-width] != -1)
+								union(parents, p, (p-width));
+							if (!includeDiagonal)
+								continue;
+							if ((c != 0) && (parents[p-width-1] != -1))
+								union(parents, p, (p-width-1));
+							if (((c+1) != width) && (parents[p-width+1] != -1))
+								union(parents, p, (p-width+1));
+						}
+				}
+			}
+		});
+		
+		//	link top row of each band to bottom row of band above
+		for (int band = 1; band < bandCount; band++) {
+			int r = (band * bandHeight);
+			if (r >= height)
+				break;
+			for (int c = 0, p = (r * width); c < width; c++, p++) {
+				if (parents[p] == -1)
+					continue;
+				if (parents[p-width] != -1)
+					union(parents, p, (p-width));
+				if (!includeDiagonal)
+					continue;
+				if ((c != 0) && (parents[p-width-1] != -1))
+					union(parents, p, (p-width-1));
+				if (((c+1) != width) && (parents[p-width+1] != -1))
+					union(parents, p, (p-width+1));
+			}
+		}
+		
+		//	point each pixel right to its root (parents always have smaller indexes, so they are done before their children)
+		for (int p = 0; p < parents.length; p++) {
+			if (parents[p] != -1)
+				parents[p] = parents[parents[p]];
+		}
+		
+		//	hand out region codes to roots, in order of seed pixels
+		int currentRegionCode = 1;
+		for (int c = 0; c < width; c++)
+			for (int r = 0, p = c; r < height; r++, p += width) {
+				if (brightness[p] == 127)
+					continue;
+				if (parents[p] == -1) {
+					currentRegionCode++;
+					continue;
+				}
+				int root = parents[p];
+				if (regionCodes[root % width][root / width] == 0)
+					regionCodes[root % width][root / width] = currentRegionCode++;
+			}
+		
+		//	propagate codes from roots to whole regions
+		for (int c = 0; c < width; c++)
+			for (int r = 0, p = c; r < height; r++, p += width) {
+				if (parents[p] == -1)
+					continue;
+				int root = parents[p];
+				if (root != p)
+					regionCodes[c][r] = regionCodes[root % width][root / width];
+			}
+		
+		return currentRegionCode;
+	}
+	
+	private static boolean isInRegion(byte brightness, byte brightnessThreshold) {
+		if ((0 < brightnessThreshold) && (brightnessThreshold <= brightness))
+			return false;
+		if ((brightnessThreshold < 0) && (brightness <= -brightnessThreshold))
+			return false;
+		return true;
+	}
+	
+	private static void union(int[] parents, int p1, int p2) {
+		int r1 = find(parents, p1);
+		int r2 = find(parents, p2);
+		if (r1 < r2)
+			parents[r2] = r1;
+		else if (r2 < r1)
+			parents[r1] = r2;
+	}
+	
+	private static int find(int[] parents, int p) {
+		while (parents[p] != p) {
+			parents[p] = parents[parents[p]]; // path halving
+			p = parents[p];
+		}
+		return p;
 	}
-	private static int colorRegion(byte[][] brightness, int[][] regionCodes, int c, int r, int regionCode, byte brightnessThreshold, boolean isBinaryImage) {
+	
+	private static int colorRegion(byte[] brightness, int width, int height, int[][] regionCodes, int c, int r, int regionCode, byte brightnessThreshold, boolean isBinaryImage) {
 		ArrayList points = new ArrayList() {
 			HashSet distinctContent = new HashSet();
 			public boolean add(Object obj) {
@@ -1168,11 +2172,11 @@ TODO use short+short coordinates in region coloring ...
 			Point point = ((Point) points.get(p));
 			if ((point.c == -1) || (point.r == -1))
 				continue;
-			if ((point.c == brightness.length) || (point.r == brightness[c].length))
+			if ((point.c == width) || (point.r == height))
 				continue;
-			if ((0 < brightnessThreshold) && (brightnessThreshold <= brightness[point.c][point.r]))
+			if ((0 < brightnessThreshold) && (brightnessThreshold <= brightness[(point.r * width) + point.c]))
 				continue;
-			if ((brightnessThreshold < 0) && (brightness[point.c][point.r] <= -brightnessThreshold))
+			if ((brightnessThreshold < 0) && (brightness[(point.r * width) + point.c] <= -brightnessThreshold))
 				continue;
 			if (regionCodes[point.c][point.r] != 0)
 				continue;
@@ -1269,17 +2273,15 @@ TODO use short+short coordinates in region coloring ...
 	private static boolean regionColorAndClean(AnalysisImage ai, int minSize, int minSoloSize, int dpi, boolean isBinary, boolean isSharp) {
 		boolean changed = false;
 		
-		byte[][] brightness = ai.getBrightness();
-		if (brightness.length == 0)
+		byte[] brightness = ai.getBrightnessPlane();
+		int width = ai.image.getWidth();
+		int height = ai.image.getHeight();
+		if (width == 0)
 			return changed;
 		
-		int[][] regionCodes = getRegionColoring(ai, ((byte) 127), isBinary);
-		int regionCodeCount = 0;
-		for (int c = 0; c < regionCodes.length; c++) {
-			for (int r = 0; r < regionCodes[c].length; r++)
-				regionCodeCount = Math.max(regionCodeCount, regionCodes[c][r]);
-		}
-		regionCodeCount++; // account for 0
+		RegionColoring regionColoring = getRegionColoring(ai, ((byte) 127), isBinary, REGION_COLORING_UNION_FIND);
+		int[][] regionCodes = regionColoring.regionCodes;
+		int regionCodeCount = regionColoring.regionCodeCount; // includes 0
 //		final int[][] regionCodes = new int[brightness.length][brightness[0].length];
 //		for (int c = 0; c < regionCodes.length; c++)
 //			Arrays.fill(regionCodes[c], 0);
@@ -1295,19 +2297,14 @@ TODO use short+short coordinates in region coloring ...
 //				currentRegionCode++;
 //			}
 		
-		//	measure regions (size, surface, min and max column and row, min brightness)
-		int[] regionSizes = new int[regionCodeCount];
-		Arrays.fill(regionSizes, 0);
+		//	measure regions (surface and min brightness, size and min and max column and row come with region coloring)
+		int[] regionSizes = regionColoring.regionSizes;
 		int[] regionSurfaces = new int[regionCodeCount];
 		Arrays.fill(regionSurfaces, 0);
-		int[] regionMinCols = new int[regionCodeCount];
-		Arrays.fill(regionMinCols, regionCodes.length);
-		int[] regionMaxCols = new int[regionCodeCount];
-		Arrays.fill(regionMaxCols, 0);
-		int[] regionMinRows = new int[regionCodeCount];
-		Arrays.fill(regionMinRows, regionCodes[0].length);
-		int[] regionMaxRows = new int[regionCodeCount];
-		Arrays.fill(regionMaxRows, 0);
+		int[] regionMinCols = regionColoring.regionMinCols;
+		int[] regionMaxCols = regionColoring.regionMaxCols;
+		int[] regionMinRows = regionColoring.regionMinRows;
+		int[] regionMaxRows = regionColoring.regionMaxRows;
 		byte[] regionMinBrightness = new byte[regionCodeCount];
 		Arrays.fill(regionMinBrightness, ((byte) 127));
 		HashMap regionSurfacePointSets = new HashMap();
@@ -1317,7 +2314,6 @@ TODO use short+short coordinates in region coloring ...
 			for (int r = 0; r < regionCodes[c].length; r++) {
 				if (regionCodes[c][r] == 0)
 					continue;
-				regionSizes[regionCodes[c][r]]++;
 				Integer regionCode = new Integer(regionCodes[c][r]);
 				regionCodesInRow.add(regionCode);
 				HashSet regionSurfacePoints = ((HashSet) regionSurfacePointSets.get(regionCode));
@@ -1333,11 +2329,7 @@ TODO use short+short coordinates in region coloring ...
 					regionSurfacePoints.add(c + "-" + (r-1));
 				if (((r+1) < regionCodes[c].length) && (regionCodes[c][r+1] == 0))
 					regionSurfacePoints.add(c + "-" + (r+1));
-				regionMinCols[regionCodes[c][r]] = Math.min(c, regionMinCols[regionCodes[c][r]]);
-				regionMaxCols[regionCodes[c][r]] = Math.max(c, regionMaxCols[regionCodes[c][r]]);
-				regionMinRows[regionCodes[c][r]] = Math.min(r, regionMinRows[regionCodes[c][r]]);
-				regionMaxRows[regionCodes[c][r]] = Math.max(r, regionMaxRows[regionCodes[c][r]]);
-				regionMinBrightness[regionCodes[c][r]] = ((byte) Math.min(regionMinBrightness[regionCodes[c][r]], brightness[c][r]));
+				regionMinBrightness[regionCodes[c][r]] = ((byte) Math.min(regionMinBrightness[regionCodes[c][r]], brightness[(r * width) + c]));
 			}
 			for (Iterator rcit = regionSurfacePointSets.keySet().iterator(); rcit.hasNext();) {
 				Integer regionCode = ((Integer) rcit.next());
@@ -1375,7 +2367,7 @@ TODO use short+short coordinates in region coloring ...
 						for (int cr = regionMinRows[regionCode]; cr <= regionMaxRows[regionCode]; cr++) {
 							if (regionCodes[cc][cr] != regionCode)
 								continue;
-							ai.brightness[cc][cr] = 127;
+							ai.brightness[(cr * width) + cc] = 127;
 							ai.image.setRGB(cc, cr, tooFaint);
 							regionCodes[cc][cr] = 0;
 							changed = true;
@@ -1411,7 +2403,7 @@ TODO use short+short coordinates in region coloring ...
 				}
 				
 				//	covering at least 70% of page width or height (e.g. A5 scanned A4), likely dark scanning margin (subject to check, though)
-				if (retain && ((regionMaxCols[regionCode] - regionMinCols[regionCode] + 1) > ((brightness.length * 7) / 10))) {
+				if (retain && ((regionMaxCols[regionCode] - regionMinCols[regionCode] + 1) > ((width * 7) / 10))) {
 					if (DEBUG_FEATHERDUST) System.out.println(" - page wide");
 					
 					//	test page edges
@@ -1420,16 +2412,16 @@ TODO use short+short coordinates in region coloring ...
 					for (int lc = regionMinCols[regionCode]; lc <= regionMaxCols[regionCode]; lc++) {
 						if (regionCodes[lc][0] == regionCode)
 							topEdge++;
-						if (regionCodes[lc][brightness[lc].length-1] == regionCode)
+						if (regionCodes[lc][height-1] == regionCode)
 							bottomEdge++;
 					}
 					
 					//	at page edge
-					if (((topEdge + bottomEdge) * 2) > brightness[c].length)
+					if (((topEdge + bottomEdge) * 2) > height)
 						retain = false;
 					
 					//	test if at least (dpi/15) wide in most parts, and at least 90% of page width
-					else if (((regionMaxCols[regionCode] - regionMinCols[regionCode] + 1) > ((brightness.length * 9) / 10))) {
+					else if (((regionMaxCols[regionCode] - regionMinCols[regionCode] + 1) > ((width * 9) / 10))) {
 						int squareArea = getSquareArea(regionCodes, regionMinCols[regionCode], regionMaxCols[regionCode], regionMinRows[regionCode], regionMaxRows[regionCode], regionCode, (dpi / 15), true);
 						if (DEBUG_FEATHERDUST) System.out.println(" - got " + squareArea + " square area");
 						if ((squareArea * 2) > regionSizes[regionCode]) {
@@ -1438,7 +2430,7 @@ TODO use short+short coordinates in region coloring ...
 						}
 					}
 				}
-				if (retain && ((regionMaxRows[regionCode] - regionMinRows[regionCode] + 1) > ((brightness[0].length * 7) / 10))) {
+				if (retain && ((regionMaxRows[regionCode] - regionMinRows[regionCode] + 1) > ((height * 7) / 10))) {
 					if (DEBUG_FEATHERDUST) System.out.println(" - page high");
 					
 					//	test page edges
@@ -1447,16 +2439,16 @@ TODO use short+short coordinates in region coloring ...
 					for (int lr = regionMinRows[regionCode]; lr <= regionMaxRows[regionCode]; lr++) {
 						if (regionCodes[0][lr] == regionCode)
 							leftEdge++;
-						if (regionCodes[brightness.length-1][lr] == regionCode)
+						if (regionCodes[width-1][lr] == regionCode)
 							rightEdge++;
 					}
 					
 					//	at page edge
-					if (((leftEdge + rightEdge) * 2) > brightness.length)
+					if (((leftEdge + rightEdge) * 2) > width)
 						retain = false;
 					
 					//	test if at least (dpi/15) wide in most parts, and at least 90% of page height
-					else if (((regionMaxRows[regionCode] - regionMinRows[regionCode] + 1) > ((brightness[0].length * 9) / 10))) {
+					else if (((regionMaxRows[regionCode] - regionMinRows[regionCode] + 1) > ((height * 9) / 10))) {
 						int squareArea = getSquareArea(regionCodes, regionMinCols[regionCode], regionMaxCols[regionCode], regionMinRows[regionCode], regionMaxRows[regionCode], regionCode, (dpi / 15), true);
 						if (DEBUG_FEATHERDUST) System.out.println(" - got " + squareArea + " square area");
 						if ((squareArea * 2) > regionSizes[regionCode]) {
@@ -1479,7 +2471,7 @@ TODO use short+short coordinates in region coloring ...
 						for (int cr = regionMinRows[regionCode]; cr <= regionMaxRows[regionCode]; cr++) {
 							if (regionCodes[cc][cr] != regionCode)
 								continue;
-							ai.brightness[cc][cr] = 127;
+							ai.brightness[(cr * width) + cc] = 127;
 							ai.image.setRGB(cc, cr, tooSmall);
 							regionCodes[cc][cr] = 0;
 							changed = true;
@@ -1568,8 +2560,8 @@ TODO use short+short coordinates in region coloring ...
 					int maxVerticalMargin = Math.min(((isBinary || isSharp) ? minSoloSize : (minSoloSize / 2)), regionSizes[regionCode]);
 					
 					//	search for standalone or attached regions around current one
-					for (int cc = Math.max(0, (regionMinCols[regionCode] - maxHorizontalMargin)); cc <= Math.min((brightness.length-1), (regionMaxCols[regionCode] + maxHorizontalMargin)); cc++) {
-						for (int cr = Math.max(0, (regionMinRows[regionCode] - maxVerticalMargin)); cr <= Math.min((brightness[cc].length-1), (regionMaxRows[regionCode] + maxVerticalMargin)); cr++)
+					for (int cc = Math.max(0, (regionMinCols[regionCode] - maxHorizontalMargin)); cc <= Math.min((width-1), (regionMaxCols[regionCode] + maxHorizontalMargin)); cc++) {
+						for (int cr = Math.max(0, (regionMinRows[regionCode] - maxVerticalMargin)); cr <= Math.min((height-1), (regionMaxRows[regionCode] + maxVerticalMargin)); cr++)
 							if (regionCodes[cc][cr] > 0) {
 								attach = true;
 								break;
@@ -1605,13 +2597,15 @@ TODO use short+short coordinates in region coloring ...
 					for (int cr = regionMinRows[regionCode]; cr <= regionMaxRows[regionCode]; cr++) {
 						if (regionCodes[cc][cr] != -regionCode)
 							continue;
-						ai.brightness[cc][cr] = 127;
+						ai.brightness[(cr * width) + cc] = 127;
 						ai.image.setRGB(cc, cr, tooSmallForStandalone);
 						regionCodes[cc][cr] = 0;
 						changed = true;
 					}
 			}
 		
+		if (changed)
+			ai.brightnessChanged();
 		return changed;
 	}
 	private static final boolean DEBUG_FEATHERDUST = true;
@@ -1897,14 +2891,9 @@ TODO use short+short coordinates in region coloring ...
 		if ((rect.bottomRow <= rect.topRow) || (rect.rightCol <= rect.leftCol))
 			return rect;
 		
-		byte[][] brightness = rect.analysisImage.getBrightness();
 		byte[] colBrightnesses = new byte[rect.rightCol - rect.leftCol];
-		for (int c = rect.leftCol; c < rect.rightCol; c++) {
-			int brightnessSum = 0;
-			for (int r = rect.topRow; r < rect.bottomRow; r++)
-				brightnessSum += brightness[c][r];
-			colBrightnesses[c - rect.leftCol] = ((byte) (brightnessSum / (rect.bottomRow - rect.topRow)));
-		}
+		for (int c = rect.leftCol; c < rect.rightCol; c++)
+			colBrightnesses[c - rect.leftCol] = ((byte) (rect.analysisImage.getBrightnessSum(c, (c+1), rect.topRow, rect.bottomRow) / (rect.bottomRow - rect.topRow)));
 		
 		byte colBrightnessPivot = 127;//getPivot(colBrightnesses, offset);
 		int minCol = -1;
@@ -1937,14 +2926,9 @@ TODO use short+short coordinates in region coloring ...
 		if ((rect.bottomRow <= rect.topRow) || (rect.rightCol <= rect.leftCol))
 			return rect;
 		
-		byte[][] brightness = rect.analysisImage.getBrightness();
 		byte[] rowBrightnesses = new byte[rect.bottomRow - rect.topRow];
-		for (int r = rect.topRow; r < rect.bottomRow; r++) {
-			int brightnessSum = 0; 
-			for (int c = rect.leftCol; c < rect.rightCol; c++)
-				brightnessSum += brightness[c][r];
-			rowBrightnesses[r - rect.topRow] = ((byte) (brightnessSum / (rect.rightCol - rect.leftCol)));
-		}
+		for (int r = rect.topRow; r < rect.bottomRow; r++)
+			rowBrightnesses[r - rect.topRow] = ((byte) (rect.analysisImage.getBrightnessSum(rect.leftCol, rect.rightCol, r, (r+1)) / (rect.rightCol - rect.leftCol)));
 		
 		byte rowBrightnessPivot = 127;//getPivot(rowBrightnesses, offset);
 		
@@ -2030,24 +3014,22 @@ TODO use short+short coordinates in region coloring ...
 			else offsets[o] = ((((offsets.length - o - 1) * -maxOffset) + (offsets.length / 2)) / offsets.length);
 		}
 		
-		byte[][] brightness = rect.analysisImage.getBrightness();
+		//	compute column brightness from integral image, and sheared column brightness from segments of rows with equal offset
+		int[] offsetSegments = getOffsetSegments(offsets);
 		byte[] colBrightnesses = new byte[rect.rightCol - rect.leftCol];
 		byte[] sColBrightnesses = new byte[rect.rightCol - rect.leftCol];
 		for (int c = rect.leftCol; c < rect.rightCol; c++) {
-			int brightnessSum = 0;
-			byte minBrightness = 127;
+			int brightnessSum = rect.analysisImage.getBrightnessSum(c, (c+1), rect.topRow, rect.bottomRow);
 			int sBrightnessSum = 0;
-			byte sMinBrightness = 127;
 			int sc;
-			byte sb;
-			for (int r = rect.topRow; r < rect.bottomRow; r++) {
-				brightnessSum += brightness[c][r];
-				minBrightness = ((byte) Math.min(minBrightness, brightness[c][r]));
-//				sc = c - offsets[r - rect.topRow]; // WRONG: we have to subtract the offset so positive angles correspond to shearing top of rectangle rightward
-				sc = c + offsets[r - rect.topRow]; // RIGHT: we have to add the offset so positive angles correspond to shearing top of rectangle rightward
-				sb = (((rect.leftCol <= sc) && (sc < rect.rightCol)) ? brightness[sc][r] : 127);
-				sBrightnessSum += sb;
-				sMinBrightness = ((byte) Math.min(sMinBrightness, sb));
+			for (int s = 0; s < offsetSegments.length; s += 2) {
+				int sStart = offsetSegments[s];
+				int sEnd = offsetSegments[s+1];
+//				sc = c - offsets[sStart]; // WRONG: we have to subtract the offset so positive angles correspond to shearing top of rectangle rightward
+				sc = c + offsets[sStart]; // RIGHT: we have to add the offset so positive angles correspond to shearing top of rectangle rightward
+				if ((rect.leftCol <= sc) && (sc < rect.rightCol))
+					sBrightnessSum += rect.analysisImage.getBrightnessSum(sc, (sc+1), (rect.topRow + sStart), (rect.topRow + sEnd));
+				else sBrightnessSum += (127 * (sEnd - sStart));
 			}
 			colBrightnesses[c - rect.leftCol] = ((byte) (brightnessSum / (rect.bottomRow - rect.topRow)));
 			sColBrightnesses[c - rect.leftCol] = ((byte) (sBrightnessSum / (rect.bottomRow - rect.topRow)));
@@ -2252,18 +3234,24 @@ TODO use short+short coordinates in region coloring ...
 		if (zigzagPartWidth < 1)
 			return ((ImagePartRectangle[]) rects.toArray(new ImagePartRectangle[rects.size()]));
 		
-		//	try skewed cuts up to two tenths of a degree upward and downward, as FFT might fail to discover small rotations
-		ImagePartRectangle[] zigzagCutIprs;
-		for (int r = 0; r < rects.size(); r++) {
-			ImagePartRectangle ipr = ((ImagePartRectangle) rects.get(r));
-			zigzagCutIprs = splitIntoRowsZigzag(ipr, minSplitMargin, zigzagPartWidth, maxZigzagSlope);
-			if (zigzagCutIprs.length > 1) {
-				rects.set(r, zigzagCutIprs[0]);
-				for (int s = 1; s < zigzagCutIprs.length; s++) {
-					r++;
-					rects.add(r, zigzagCutIprs[s]);
-				}
+		//	try zigzag cuts on the individual rows, which are independent of one another, so we can do them in parallel
+		final ImagePartRectangle[] rowIprs = ((ImagePartRectangle[]) rects.toArray(new ImagePartRectangle[rects.size()]));
+		final ImagePartRectangle[][] zigzagCutIprs = new ImagePartRectangle[rowIprs.length][];
+		final int zzMinSplitMargin = minSplitMargin;
+		final int zzPartWidth = zigzagPartWidth;
+		final int zzMaxSlope = maxZigzagSlope;
+		rect.analysisImage.getIntegralPlane(); // compute integral image before handing out rows to worker threads
+		runParallel(rowIprs.length, new ParallelRangeTask() {
+			void run(int from, int to) {
+				for (int r = from; r < to; r++)
+					zigzagCutIprs[r] = splitIntoRowsZigzag(rowIprs[r], zzMinSplitMargin, zzPartWidth, zzMaxSlope);
 			}
+		});
+		rects.clear();
+		for (int r = 0; r < zigzagCutIprs.length; r++) {
+			if (zigzagCutIprs[r].length > 1)
+				rects.addAll(Arrays.asList(zigzagCutIprs[r]));
+			else rects.add(rowIprs[r]);
 		}
 		
 		return ((ImagePartRectangle[]) rects.toArray(new ImagePartRectangle[rects.size()]));
@@ -2278,14 +3266,11 @@ TODO use short+short coordinates in region coloring ...
 		}
 		
 		//	get brightness grid
-		byte[][] brightness = rect.analysisImage.getBrightness();
+		byte[] brightness = rect.analysisImage.getBrightnessPlane();
+		int width = rect.analysisImage.image.getWidth();
 		
-		//	this array stores how far to the right a part extends, so finding a path becomes easier
-		int[][] parts = new int[brightness.length][];
-		for (int p = 0; p < parts.length; p++) {
-			parts[p] = new int[brightness[p].length];
-			Arrays.fill(parts[p], 0);
-		}
+		//	this array stores how far to the right a part extends, so finding a path becomes easier (we only ever access it inside the rectangle)
+		int[][] parts = new int[rect.rightCol - rect.leftCol][rect.bottomRow - rect.topRow];
 		
 		//	find partial passes
 		for (int c = 0; c < ((rect.rightCol - rect.leftCol) - minPartLength); c++) {
@@ -2301,7 +3286,7 @@ TODO use short+short coordinates in region coloring ...
 				//	try to find part from current starting point rightward
 				int partLength = 0;
 				while ((c + rect.leftCol + partLength) < rect.rightCol) {
-					if (brightness[c + rect.leftCol + partLength][r + rect.topRow] == 127)
+					if (brightness[((r + rect.topRow) * width) + c + rect.leftCol + partLength] == 127)
 						partLength++;
 					else break;
 				}
@@ -2482,6 +3467,30 @@ TODO use short+short coordinates in region coloring ...
 		}
 	}
 	
+	/* Compute the segments of equal values in an array of offsets, as pairs
+	 * of start (inclusive) and end (exclusive) indexes. As offsets only ever
+	 * grow (or shrink) steadily, there are at most as many segments as the
+	 * maximum offset plus one. */
+	private static int[] getOffsetSegments(int[] offsets) {
+		int segmentCount = 0;
+		for (int o = 0; o < offsets.length; o++) {
+			if ((o == 0) || (offsets[o] != offsets[o-1]))
+				segmentCount++;
+		}
+		int[] segments = new int[segmentCount * 2];
+		for (int o = 0, s = 0; o < offsets.length; o++) {
+			if ((o == 0) || (offsets[o] != offsets[o-1])) {
+				if (s != 0)
+					segments[s-1] = o;
+				segments[s] = o;
+				s += 2;
+			}
+		}
+		if (segments.length != 0)
+			segments[segments.length-1] = offsets.length;
+		return segments;
+	}
+	
 	private static ImagePartRectangle[] splitIntoRows(ImagePartRectangle rect, int minSplitMargin, int maxOffset) {
 		int[] offsets = new int[rect.rightCol - rect.leftCol];
 		for (int o = 0; o < offsets.length; o++) {
@@ -2490,16 +3499,19 @@ TODO use short+short coordinates in region coloring ...
 			else offsets[o] = (((o * maxOffset) - (offsets.length / 2)) / offsets.length);
 		}
 		
-		byte[][] brightness = rect.analysisImage.getBrightness();
+		//	compute row brightness from integral image, using segments of columns with equal offset
+		int[] offsetSegments = getOffsetSegments(offsets);
 		byte[] rowBrightnesses = new byte[rect.bottomRow - rect.topRow];
 		for (int r = rect.topRow; r < rect.bottomRow; r++) {
 			int brightnessSum = 0;
 			int or;
-			byte b;
-			for (int c = rect.leftCol; c < rect.rightCol; c++) {
-				or = r + offsets[c - rect.leftCol];
-				b = (((rect.topRow <= or) && (or < rect.bottomRow)) ? brightness[c][or] : 127);
-				brightnessSum += b;
+			for (int s = 0; s < offsetSegments.length; s += 2) {
+				int sStart = offsetSegments[s];
+				int sEnd = offsetSegments[s+1];
+				or = r + offsets[sStart];
+				if ((rect.topRow <= or) && (or < rect.bottomRow))
+					brightnessSum += rect.analysisImage.getBrightnessSum((rect.leftCol + sStart), (rect.leftCol + sEnd), or, (or+1));
+				else brightnessSum += (127 * (sEnd - sStart));
 			}
 			rowBrightnesses[r - rect.topRow] = ((byte) (brightnessSum / (rect.rightCol - rect.leftCol)));
 		}
@@ -2612,12 +3624,77 @@ TODO use short+short coordinates in region coloring ...
 		else return Math.sqrt(d);
 	}
 	
-	private static final int fftCacheSize = 128;
-	private static Map fftCache = Collections.synchronizedMap(new LinkedHashMap(128, 0.9f, true) {
-		protected boolean removeEldestEntry(Entry eldest) {
-			return (this.size() > fftCacheSize);
+	private static final WeightedCache fftCache = new WeightedCache(Math.min((Runtime.getRuntime().maxMemory() / 16), (128L * 1024 * 1024)));
+	
+	/**
+	 * Set the maximum number of bytes the FFTs held in the cache used by
+	 * getFft() may occupy. The default is a sixteenth of the maximum heap
+	 * size, but no more than 128 MB. If the cache holds more than the argument
+	 * number of bytes, the least recently used FFTs are evicted right away.
+	 * @param bytes the maximum size of the FFT cache
+	 */
+	public static void setFftCacheSize(long bytes) {
+		fftCache.setMaxWeight(bytes);
+	}
+	
+	/**
+	 * Retrieve the cache used by getFft(), e.g. to monitor its hit, miss, and
+	 * eviction counts.
+	 * @return the FFT cache
+	 */
+	public static WeightedCache getFftCache() {
+		return fftCache;
+	}
+	
+	/**
+	 * Compute a fingerprint of the content of an image. The fingerprint is a
+	 * 64 bit hash over the image type and dimensions and all of its pixels,
+	 * so two images with the same pixels have the same fingerprint regardless
+	 * of their identity, while images differing in any single pixel, e.g. a
+	 * page before and after a local correction, are very unlikely to. The
+	 * pixels are read from the raster as they are stored, i.e., without any
+	 * color conversion, so the cost of computing the fingerprint stays small
+	 * compared to that of the FFT proper.
+	 * @param image the image to compute the fingerprint for
+	 * @return the fingerprint of the argument image
+	 */
+	static long getFingerprint(BufferedImage image) {
+		int iw = image.getWidth();
+		int ih = image.getHeight();
+		long hash = 0xcbf29ce484222325L; // FNV-1a offset basis
+		hash = ((hash ^ iw) * 0x100000001b3L);
+		hash = ((hash ^ ih) * 0x100000001b3L);
+		hash = ((hash ^ image.getType()) * 0x100000001b3L);
+		hash = ((hash ^ image.getColorModel().hashCode()) * 0x100000001b3L);
+		WritableRaster raster = image.getRaster();
+		Object row = null;
+		for (int y = 0; y < ih; y++) {
+			row = raster.getDataElements(0, y, iw, 1, row);
+			if (row instanceof byte[]) {
+				byte[] bRow = ((byte[]) row);
+				for (int x = 0; x < bRow.length; x++)
+					hash = ((hash ^ bRow[x]) * 0x100000001b3L);
+			}
+			else if (row instanceof int[]) {
+				int[] iRow = ((int[]) row);
+				for (int x = 0; x < iRow.length; x++)
+					hash = ((hash ^ iRow[x]) * 0x100000001b3L);
+			}
+			else if (row instanceof short[]) {
+				short[] sRow = ((short[]) row);
+				for (int x = 0; x < sRow.length; x++)
+					hash = ((hash ^ sRow[x]) * 0x100000001b3L);
+			}
+			
+			//	float or double samples, hash colors instead
+			else {
+				int[] rgbRow = image.getRGB(0, y, iw, 1, null, 0, iw);
+				for (int x = 0; x < rgbRow.length; x++)
+					hash = ((hash ^ rgbRow[x]) * 0x100000001b3L);
+			}
 		}
-	});
+		return hash;
+	}
 	
 	/**
 	 * Compute the FFT of an analysisImage. Having the analysisImage repeated computes the FFT
@@ -2641,59 +3718,96 @@ TODO use short+short coordinates in region coloring ...
 	 * @return the FFT of the argument analysisImage, sized tdim x tdim
 	 */
 	public static Complex[][] getFft(BufferedImage image, int tdimx, int tdimy, boolean repeatImage) {
-		String cacheKey = (image.hashCode() + "-" + tdimx + "-" + tdimy + "-" + repeatImage);
+		String cacheKey = (Long.toHexString(getFingerprint(image)) + "-" + image.getWidth() + "x" + image.getHeight() + "-" + tdimx + "-" + tdimy + "-" + repeatImage);
 		Complex[][] fft = ((Complex[][]) fftCache.get(cacheKey));
 		if (fft != null)
 			return fft;
 		
-		int iw = image.getWidth();
-		int ih = image.getHeight();
+		final int iw = image.getWidth();
+		final int ih = image.getHeight();
 		int agg = 1;
 		agg = Math.max(agg, ((iw + tdimx - 1) / tdimx));
 		agg = Math.max(agg, ((ih + tdimy - 1) / tdimy));
 		
-		Complex[][] ytrans = new Complex[tdimy][]; // first dimension is vertical here
-		Complex[] row;
-		int ix;
-		int iy;
-		float[] hsb = new float[3];
-		float bs;
-		int rgb;
-		int wrgb = Color.WHITE.getRGB();
-		for (int y = 0; y < tdimy; y++) {
-			row = new Complex[tdimx];
-			for (int x = 0; x < tdimx; x++) {
-				ix = (x * agg);
-				iy = (y * agg);
-				bs = 0;
-				for (int ax = 0; ax < agg; ax++) {
-					for (int ay = 0; ay < agg; ay++) {
-						if (repeatImage)
-							rgb = image.getRGB(((ix + ax) % iw), ((iy + ay) % ih));
-						else rgb = ((y < ih) ? image.getRGB(((ix + ax) % iw), y) : wrgb);
-						hsb = new Color(rgb).getColorComponents(hsb);
-//						hsb = Color.RGBtoHSB(((rgb >> 16) & 0xFF), ((rgb >> 8) & 0xFF), ((rgb >> 0) & 0xFF), hsb);
-						bs += hsb[2];
+		//	transform rows, sampling image brightness into primitive planes (first dimension is vertical here)
+		final BufferedImage fImage = image;
+		final int fTdimx = tdimx;
+		final int fTdimy = tdimy;
+		final int fAgg = agg;
+		final boolean fRepeatImage = repeatImage;
+		final double[] ytransRe = new double[tdimx * tdimy];
+		final double[] ytransIm = new double[tdimx * tdimy];
+		runParallel(tdimy, new ParallelRangeTask() {
+			public void run(int fromY, int toY) {
+				FftScratch fs = getFftScratch(fTdimx, fAgg, iw);
+				double[] rowRe = fs.re;
+				double[] rowIm = fs.im;
+				int[][] aggRows = fs.aggRows;
+				int ix;
+				int iy;
+				float bs;
+				int rgb;
+				for (int y = fromY; y < toY; y++) {
+					iy = (y * fAgg);
+					
+					//	read required image rows in one go (pixel values are the same as from individual getRGB() calls)
+					if (fRepeatImage)
+						for (int ay = 0; ay < fAgg; ay++) {
+							fImage.getRGB(0, ((iy + ay) % ih), iw, 1, fs.aggRowBuffers[ay], 0, iw);
+							aggRows[ay] = fs.aggRowBuffers[ay];
+						}
+					else if (y < ih) {
+						fImage.getRGB(0, y, iw, 1, fs.aggRowBuffers[0], 0, iw);
+						Arrays.fill(aggRows, 0, fAgg, fs.aggRowBuffers[0]);
+					}
+					else Arrays.fill(aggRows, 0, fAgg, fs.getWhiteRow(iw));
+					
+					//	aggregate brightness in same order as before to keep numeric results stable
+					for (int x = 0; x < fTdimx; x++) {
+						ix = (x * fAgg);
+						bs = 0;
+						for (int ax = 0; ax < fAgg; ax++) {
+							for (int ay = 0; ay < fAgg; ay++) {
+								rgb = aggRows[ay][(ix + ax) % iw];
+								bs += (((float) (rgb & 0xFF)) / 255f); // blue component, same as Color.getColorComponents()[2] for sRGB
+							}
+						}
+						rowRe[x] = (bs / (fAgg * fAgg));
+						rowIm[x] = 0;
 					}
+					
+					computeFft(rowRe, rowIm, fTdimx);
+					System.arraycopy(rowRe, 0, ytransRe, (y * fTdimx), fTdimx);
+					System.arraycopy(rowIm, 0, ytransIm, (y * fTdimx), fTdimx);
 				}
-				row[x] = new Complex((bs / (agg * agg)), 0);
 			}
-			ytrans[y] = computeFft(row);
-		}
+		});
 		
-		Complex[] col;
-		fft = new Complex[tdimx][];
-		for (int x = 0; x < tdimx; x++) {
-			col = new Complex[tdimy];
-			for (int y = 0; y < tdimy; y++)
-				col[y] = ytrans[y][x];
-			fft[x] = computeFft(col);
-			if (x == 0)
-				fft[0][0] = new Complex(0, 0); // exclude DC
-		}
+		//	transform columns
+		final Complex[][] fFft = new Complex[tdimx][];
+		runParallel(tdimx, new ParallelRangeTask() {
+			public void run(int fromX, int toX) {
+				FftScratch fs = getFftScratch(fTdimy, 0, 0);
+				double[] colRe = fs.re;
+				double[] colIm = fs.im;
+				for (int x = fromX; x < toX; x++) {
+					for (int y = 0; y < fTdimy; y++) {
+						colRe[y] = ytransRe[(y * fTdimx) + x];
+						colIm[y] = ytransIm[(y * fTdimx) + x];
+					}
+					computeFft(colRe, colIm, fTdimy);
+					fFft[x] = new Complex[fTdimy];
+					for (int y = 0; y < fTdimy; y++)
+						fFft[x][y] = new Complex(colRe[y], colIm[y]);
+				}
+			}
+		});
+		fft = fFft;
+		fft[0][0] = new Complex(0, 0); // exclude DC
 		
-		fftCache.put(cacheKey, fft);
-		return fft;
+		//	weigh in 40 bytes per Complex (object plus array slot) plus array overhead
+		Complex[][] cachedFft = ((Complex[][]) fftCache.putIfAbsent(cacheKey, fft, (((long) tdimx) * ((tdimy * 40) + 16))));
+		return ((cachedFft == null) ? fft : cachedFft);
 	}
 	
 	/**
@@ -2852,18 +3966,8 @@ TODO use short+short coordinates in region coloring ...
 	}
 	
 	private static BufferedImage rotateImage(BufferedImage image, double angle) {
-		BufferedImage rImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
-		Graphics2D rImageGraphics = rImage.createGraphics();
-		Color originalColor = rImageGraphics.getColor();
-		rImageGraphics.setColor(Color.WHITE);
-		rImageGraphics.fillRect(0, 0, rImage.getWidth(), rImage.getHeight());
-		rImageGraphics.setColor(originalColor);
-		AffineTransform originalTransform = rImageGraphics.getTransform();
-		rImageGraphics.rotate((angle / 2), (image.getWidth()/2), (image.getHeight()/2));
-//		rImageGraphics.rotate((angle / 1), (image.getWidth()/2), (image.getHeight()/2));
-		rImageGraphics.drawRenderedImage(image, null);
-		rImageGraphics.setTransform(originalTransform);
-		return rImage;
+		return ImageRotation.rotate(image, (angle / 2), ImageRotation.INTERPOLATION_NEAREST_NEIGHBOR);
+//		return ImageRotation.rotate(image, (angle / 1), ImageRotation.INTERPOLATION_NEAREST_NEIGHBOR);
 	}
 	
 	/**
@@ -2889,12 +3993,10 @@ TODO use short+short coordinates in region coloring ...
 		}
 		
 		int height = (bottom - top);
-		byte[][] brightness = ai.getBrightness();
+		int width = ai.image.getWidth();
 		byte[] rowBrightnesses = new byte[height];
-		for (int r = top; (r < bottom) && (r < brightness[0].length); r++) {
-			int brightnessSum = 0;
-			for (int c = left; (c < right) && (c < brightness.length); c++)
-				brightnessSum += brightness[c][r];
+		for (int r = top; (r < bottom) && (r < ai.image.getHeight()); r++) {
+			int brightnessSum = ((left < Math.min(right, width)) ? ai.getBrightnessSum(left, Math.min(right, width), r, (r+1)) : 0);
 			rowBrightnesses[r - top] = ((byte) (brightnessSum / (right - left)));
 		}
 		
@@ -2919,39 +4021,161 @@ TODO use short+short coordinates in region coloring ...
 	 * @return the Fourier transform of the argument vector
 	 */
 	public static Complex[] computeFft(Complex[] x) {
-		int N = x.length;
-
-		// base case
-		if (N == 1)
-			return new Complex[] {x[0]};
-
-		// radix 2 Cooley-Tukey FFT
-		if (N % 2 != 0)
-			throw new RuntimeException("N is not a power of 2");
-
-		// fft of even terms
-		Complex[] even = new Complex[N/2];
-		for (int k = 0; k < N/2; k++)
-			even[k] = x[2*k];
-		Complex[] q = computeFft(even);
-
-		// fft of odd terms
-		Complex[] odd  = even;  // reuse the array
-		for (int k = 0; k < N/2; k++)
-			odd[k] = x[2*k + 1];
-		Complex[] r = computeFft(odd);
-
-		// combine
-		Complex[] y = new Complex[N];
-		for (int k = 0; k < N/2; k++) {
-			double kth = -2 * k * Math.PI / N;
-			Complex wk = new Complex(Math.cos(kth), Math.sin(kth));
-			y[k]	   = q[k].plus(wk.times(r[k]));
-			y[k + N/2] = q[k].minus(wk.times(r[k]));
+		double[] re = new double[x.length];
+		double[] im = new double[x.length];
+		for (int i = 0; i < x.length; i++) {
+			re[i] = x[i].re;
+			im[i] = x[i].im;
 		}
+		computeFft(re, im);
+		Complex[] y = new Complex[x.length];
+		for (int i = 0; i < y.length; i++)
+			y[i] = new Complex(re[i], im[i]);
 		return y;
 	}
 	
+	/**
+	 * Compute the FFT of complex vector given as separate arrays holding the
+	 * real and imaginary parts, assuming its length is a power of 2. The
+	 * transform is computed in place, i.e., the argument arrays hold the
+	 * result after this method returns. This method uses an iterative radix 2
+	 * Cooley-Tukey FFT, with twiddle factors precomputed once per vector
+	 * length and reused across invocations.
+	 * @param re the real parts of the vector to transform
+	 * @param im the imaginary parts of the vector to transform
+	 */
+	public static void computeFft(double[] re, double[] im) {
+		if (im.length != re.length)
+			throw new IllegalArgumentException("Real and imaginary parts must have the same length");
+		computeFft(re, im, re.length);
+	}
+	
+	/* transform the first n elements of the argument arrays, which may be
+	 * longer than the transform, e.g. if they are pooled scratch buffers */
+	private static void computeFft(double[] re, double[] im, int n) {
+		if ((n == 0) || ((n & (n - 1)) != 0))
+			throw new RuntimeException("N is not a power of 2");
+		
+		// base case
+		if (n == 1)
+			return;
+		
+		// bring input into bit reversed order
+		FftTwiddles ft = getFftTwiddles(n);
+		int[] bitReverse = ft.bitReverse;
+		double t;
+		for (int i = 0; i < n; i++) {
+			int j = bitReverse[i];
+			if (j <= i)
+				continue;
+			t = re[i];
+			re[i] = re[j];
+			re[j] = t;
+			t = im[i];
+			im[i] = im[j];
+			im[j] = t;
+		}
+		
+		// radix 2 butterflies, bottom up
+		double[] cos = ft.cos;
+		double[] sin = ft.sin;
+		double wr;
+		double wi;
+		double tr;
+		double ti;
+		for (int len = 2; len <= n; len <<= 1) {
+			int half = (len >> 1);
+			int step = (n / len);
+			for (int s = 0; s < n; s += len)
+				for (int k = 0; k < half; k++) {
+					wr = cos[k * step];
+					wi = sin[k * step];
+					int e = (s + k);
+					int o = (e + half);
+					tr = ((wr * re[o]) - (wi * im[o]));
+					ti = ((wr * im[o]) + (wi * re[o]));
+					re[o] = (re[e] - tr);
+					im[o] = (im[e] - ti);
+					re[e] = (re[e] + tr);
+					im[e] = (im[e] + ti);
+				}
+		}
+	}
+	
+	/* per-thread scratch buffers for FFT computation, so worker threads do
+	 * not allocate fresh buffers for every transform */
+	private static class FftScratch {
+		double[] re = new double[0];
+		double[] im = new double[0];
+		int[][] aggRowBuffers = new int[0][];
+		int[][] aggRows = new int[0][];
+		private int[] whiteRow = new int[0];
+		int[] getWhiteRow(int width) {
+			if (this.whiteRow.length < width) {
+				this.whiteRow = new int[width];
+				Arrays.fill(this.whiteRow, white);
+			}
+			return this.whiteRow;
+		}
+	}
+	private static ThreadLocal fftScratch = new ThreadLocal() {
+		protected Object initialValue() {
+			return new FftScratch();
+		}
+	};
+	private static FftScratch getFftScratch(int size, int agg, int width) {
+		FftScratch fs = ((FftScratch) fftScratch.get());
+		if (fs.re.length < size) {
+			fs.re = new double[size];
+			fs.im = new double[size];
+		}
+		if ((fs.aggRowBuffers.length < agg) || ((agg != 0) && (fs.aggRowBuffers[0].length < width))) {
+			fs.aggRowBuffers = new int[agg][width];
+			fs.aggRows = new int[agg][];
+		}
+		return fs;
+	}
+	
+	private static Map fftTwiddleCache = Collections.synchronizedMap(new HashMap());
+	private static FftTwiddles getFftTwiddles(int n) {
+		Integer fftSize = new Integer(n);
+		FftTwiddles ft = ((FftTwiddles) fftTwiddleCache.get(fftSize));
+		if (ft == null) {
+			ft = new FftTwiddles(n);
+			fftTwiddleCache.put(fftSize, ft);
+		}
+		return ft;
+	}
+	
+	/* precomputed twiddle factors and bit reversal permutation for one FFT
+	 * size; instances are immutable after construction, so they can safely be
+	 * shared between threads */
+	private static class FftTwiddles {
+		final double[] cos;
+		final double[] sin;
+		final int[] bitReverse;
+		FftTwiddles(int n) {
+			this.cos = new double[n / 2];
+			this.sin = new double[n / 2];
+			for (int k = 0; k < (n / 2); k++) {
+				double kth = -2 * k * Math.PI / n;
+				this.cos[k] = Math.cos(kth);
+				this.sin[k] = Math.sin(kth);
+			}
+			this.bitReverse = new int[n];
+			int bits = 0;
+			while ((1 << bits) < n)
+				bits++;
+			for (int i = 0; i < n; i++) {
+				int r = 0;
+				for (int b = 0; b < bits; b++)
+					if ((i & (1 << b)) != 0)
+						r |= (1 << (bits - 1 - b));
+				this.bitReverse[i] = r;
+			}
+		}
+	}
+	
 	/**
 	 * Object representing a complex number, including basic functionality
 	 * revolving around complex numbers.
@@ -3068,25 +4292,31 @@ TODO use short+short coordinates in region coloring ...
 		//	TODO figure out if threshold makes sense
 		
 		//	get brightness array
-		byte[][] brightness = analysisImage.getBrightness();
-		if ((brightness.length == 0) || (brightness[0].length == 0))
+		byte[] brightness = analysisImage.getBrightnessPlane();
+		int width = analysisImage.image.getWidth();
+		int height = analysisImage.image.getHeight();
+		if ((width == 0) || (height == 0))
 			return false;
 		
+		//	no pixels to enhance at all, so every tile would be left as it is
+		if (analysisImage.getBrightnessStatistics().minBrightness >= ignoreThreshold)
+			return true;
+		
 		//	compute number and offset of tiles
 		int ts = (dpi / 10); // TODO play with denominator
-		int htc = ((brightness.length + ts - 1) / ts);
-		int hto = (((htc * ts) - brightness.length) / 2);
-		int vtc = ((brightness[0].length + ts - 1) / ts);
-		int vto = (((vtc * ts) - brightness[0].length) / 2);
+		int htc = ((width + ts - 1) / ts);
+		int hto = (((htc * ts) - width) / 2);
+		int vtc = ((height + ts - 1) / ts);
+		int vto = (((vtc * ts) - height) / 2);
 		
 		//	compute tiles
 		ImageTile[][] tiles = new ImageTile[htc][vtc];
 		for (int ht = 0; ht < tiles.length; ht++) {
 			int tl = Math.max(((ht * ts) - hto), 0);
-			int tr = Math.min((((ht+1) * ts) - hto), brightness.length);
+			int tr = Math.min((((ht+1) * ts) - hto), width);
 			for (int vt = 0; vt < tiles[ht].length; vt++) {
 				int tt = Math.max(((vt * ts) - vto), 0);
-				int tb = Math.min((((vt+1) * ts) - vto), brightness[0].length);
+				int tb = Math.min((((vt+1) * ts) - vto), height);
 				tiles[ht][vt] = new ImageTile(tl, tr, tt, tb);
 			}
 		}
@@ -3095,17 +4325,18 @@ TODO use short+short coordinates in region coloring ...
 		for (int ht = 0; ht < tiles.length; ht++)
 			for (int vt = 0; vt < tiles[ht].length; vt++) {
 				ImageTile tile = tiles[ht][vt];
-				for (int c = tile.left; c < tile.right; c++)
-					for (int r = tile.top; r < tile.bottom; r++) {
-						if (ignoreThreshold <= brightness[c][r])
+				for (int r = tile.top; r < tile.bottom; r++)
+					for (int c = tile.left, b = ((r * width) + tile.left); c < tile.right; c++, b++) {
+						if (ignoreThreshold <= brightness[b])
 							continue;
-						tile.minBrightness = ((byte) Math.min(tile.minBrightness, brightness[c][r]));
-						tile.maxBrightness = ((byte) Math.max(tile.maxBrightness, brightness[c][r]));
+						tile.minBrightness = ((byte) Math.min(tile.minBrightness, brightness[b]));
+						tile.maxBrightness = ((byte) Math.max(tile.maxBrightness, brightness[b]));
 					}
 			}
 		
 		//	enhance contrast
 		int radius = 2; // TODO play with radius
+		int[] rgbRow = new int[ts];
 		for (int ht = 0; ht < tiles.length; ht++)
 			for (int vt = 0; vt < tiles[ht].length; vt++) {
 				ImageTile tile = tiles[ht][vt];
@@ -3136,17 +4367,20 @@ TODO use short+short coordinates in region coloring ...
 				}
 				
 				//	adjust image
-				for (int c = tile.left; c < tile.right; c++)
-					for (int r = tile.top; r < tile.bottom; r++) {
-						int b = (((brightness[c][r] - minBrightness) * 127) / (maxBrightness - minBrightness));
+				for (int r = tile.top; r < tile.bottom; r++) {
+					for (int c = tile.left, bi = ((r * width) + tile.left); c < tile.right; c++, bi++) {
+						int b = (((brightness[bi] - minBrightness) * 127) / (maxBrightness - minBrightness));
 						if (127 < b)
 							b = 127;
 						else if (b < 0)
 							b = 0;
-						brightness[c][r] = ((byte) b);
-						analysisImage.image.setRGB(c, r, Color.HSBtoRGB(0, 0, (((float) brightness[c][r]) / 127)));
+						brightness[bi] = ((byte) b);
+						rgbRow[c - tile.left] = brightnessRgb[b];
 					}
+					analysisImage.image.setRGB(tile.left, r, (tile.right - tile.left), 1, rgbRow, 0, (tile.right - tile.left));
+				}
 			}
+		analysisImage.brightnessChanged();
 		
 		//	finally ...
 		return true;
@@ -3546,17 +4780,18 @@ TODO use short+short coordinates in region coloring ...
 		}
 		byte[] minRegionBrightness = new byte[maxRegionCode];
 		Arrays.fill(minRegionBrightness, ((byte) 127));
-		byte[][] brightness = ai.getBrightness();
+		byte[] brightness = ai.getBrightnessPlane();
+		int width = ai.image.getWidth();
 		for (int c = 0; c < regionCodes.length; c++)
 			for (int r = 0; r < regionCodes[c].length; r++) {
 				if (regionCodes[c][r] != 0)
-					minRegionBrightness[regionCodes[c][r]-1] = ((byte) Math.min(minRegionBrightness[regionCodes[c][r]-1], brightness[c][r]));
+					minRegionBrightness[regionCodes[c][r]-1] = ((byte) Math.min(minRegionBrightness[regionCodes[c][r]-1], brightness[(r * width) + c]));
 			}
 		for (int c = 0; c < regionCodes.length; c++) {
 			for (int r = 0; r < regionCodes[c].length; r++)
 				if (regionCodes[c][r] != 0) {
-					brightness[c][r] = minRegionBrightness[regionCodes[c][r]-1];
-					ai.image.setRGB(c, r, Color.HSBtoRGB(0, 0, (((float) brightness[c][r]) / 127)));
+					brightness[(r * width) + c] = minRegionBrightness[regionCodes[c][r]-1];
+					ai.image.setRGB(c, r, brightnessRgb[brightness[(r * width) + c]]);
 				}
 			}
 		
@@ -3566,13 +4801,14 @@ TODO use short+short coordinates in region coloring ...
 		BufferedImage dbirc = getRegionImage(ai, 127);
 		
 		//	AND-combine result image with original image
-		brightness = ai.getBrightness();
-		for (int c = 0; c < brightness.length; c++) {
-			for (int r = 0; r < brightness[c].length; r++)
-//				ai.image.setRGB(c, r, ((brightness[c][r] == 127) ? white : obi.getRGB(c, r)));
-				ai.image.setRGB(c, r, ((brightness[c][r] == 127) ? white : bebi.getRGB(c, r)));
+		brightness = ai.getBrightnessPlane();
+		for (int c = 0; c < width; c++) {
+			for (int r = 0; r < ai.image.getHeight(); r++)
+//				ai.image.setRGB(c, r, ((brightness[(r * width) + c] == 127) ? white : obi.getRGB(c, r)));
+				ai.image.setRGB(c, r, ((brightness[(r * width) + c] == 127) ? white : bebi.getRGB(c, r)));
 		}
 		ai.brightness = null;
+		ai.brightnessChanged();
 		gaussBlur(ai, 1, true);
 		BufferedImage acbi = cloneImage(bi);
 		BufferedImage acbirc = getRegionImage(ai, 127);
@@ -29,17 +29,25 @@ package de.uka.ipd.idaho.gamta.util.imaging;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.FilterInputStream;
-import java.io.FilterOutputStream;
+import java.awt.image.ColorModel;
+import java.awt.image.RasterFormatException;
+import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Iterator;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import de.uka.ipd.idaho.gamta.util.imaging.PageImageSource.CachingDecorator;
 
 /**
  * Wrapper class for page images and meta data.
@@ -239,7 +247,8 @@ public class PageImage implements ImagingConstants {
 	/**
 	 * Extract a part from the page image. If the isBbOriginal attribute is set
 	 * to true, the argument bounding box is first scaled to this images current
-	 * resolution.
+	 * resolution. The bounding box is clipped to the image proper; if nothing
+	 * is left of it, this method throws a RasterFormatException.
 	 * @param bb the bounding box describing the part
 	 * @param isBbOriginal does the bounding box refer to the original image?
 	 * @return the part image encircled by the argument bounding box
@@ -251,8 +260,30 @@ public class PageImage implements ImagingConstants {
 			bb = new BoundingBox(((this.currentDpi * bb.left) / this.originalDpi), ((this.currentDpi * bb.right) / this.originalDpi), ((this.currentDpi * bb.top) / this.originalDpi), ((this.currentDpi * bb.bottom) / this.originalDpi));
 		
 		//	compute coordinates
-		int x = (bb.left - this.leftEdge);
-		int y = (bb.top - this.topEdge);
+		Rectangle part = getPartRegion(bb, this.leftEdge, this.topEdge, this.image.getWidth(), this.image.getHeight());
+		
+		//	extract the part
+		return new PageImage(this.image.getSubimage(part.x, part.y, part.width, part.height),
+				this.originalWidth,
+				this.originalHeight,
+				this.originalDpi,
+				this.currentDpi,
+				(this.leftEdge + part.x),
+				(this.leftEdge + this.image.getWidth() + this.rightEdge - (part.x + part.width)),
+				(this.topEdge + part.y),
+				(this.topEdge + this.image.getHeight() + this.bottomEdge - (part.y + part.height)),
+				this.source
+			);
+	}
+	
+	/* Compute the part of an image a bounding box refers to, clipped to the
+	 * image proper (used for both decoded images and image streams, so they
+	 * behave exactly the same) */
+	private static Rectangle getPartRegion(BoundingBox bb, int leftEdge, int topEdge, int imageWidth, int imageHeight) {
+		
+		//	compute coordinates
+		int x = (bb.left - leftEdge);
+		int y = (bb.top - topEdge);
 		int width = (bb.right - bb.left + 1);
 		int height = (bb.bottom - bb.top + 1);
 		
@@ -265,22 +296,138 @@ public class PageImage implements ImagingConstants {
 			height += y;
 			y = 0;
 		}
-		if ((x + width) > this.image.getWidth())
-			width = (this.image.getWidth() - x);
-		if ((y + height) > this.image.getHeight())
-			height = (this.image.getHeight() - y);
+		if ((x + width) > imageWidth)
+			width = (imageWidth - x);
+		if ((y + height) > imageHeight)
+			height = (imageHeight - y);
 		
-		//	extract the part
-		return new PageImage(this.image.getSubimage(x, y, width, height),
-				this.originalWidth,
-				this.originalHeight,
-				this.originalDpi,
-				this.currentDpi,
-				(this.leftEdge + x),
-				(this.leftEdge + this.image.getWidth() + this.rightEdge - (x + width)),
-				(this.topEdge + y),
-				(this.topEdge + this.image.getHeight() + this.bottomEdge - (y + height)),
-				this.source
+		//	anything left?
+		if ((width < 1) || (height < 1))
+			throw new RasterFormatException("Bounding box " + bb + " is empty or outside page image.");
+		return new Rectangle(x, y, width, height);
+	}
+	
+	/**
+	 * Extract a part from a page image provided as an input stream, decoding
+	 * only the part proper rather than the whole page image. If the
+	 * isBbOriginal attribute is set to true, the argument bounding box is
+	 * first scaled to the current resolution of the page image. The result is
+	 * the same as reading the whole page image from the argument stream and
+	 * then calling getSubImage() on it, but at a fraction of the cost in both
+	 * time and memory for small parts of large page images. Like the latter,
+	 * this method throws a RasterFormatException if nothing is left of the
+	 * bounding box after clipping it to the page image. This method does not
+	 * close the argument stream.
+	 * @param piis the input stream to read the page image from
+	 * @param bb the bounding box describing the part
+	 * @param isBbOriginal does the bounding box refer to the original image?
+	 * @return the part image encircled by the argument bounding box
+	 * @throws IOException
+	 */
+	public static PageImage getSubImage(PageImageInputStream piis, BoundingBox bb, boolean isBbOriginal) throws IOException {
+		return getSubImage(piis, bb, isBbOriginal, piis.currentDpi);
+	}
+	
+	/**
+	 * Extract a part from a page image provided as an input stream, decoding
+	 * only the part proper rather than the whole page image, and reducing it
+	 * to a lower resolution while decoding. If the isBbOriginal attribute is
+	 * set to true, the argument bounding box is first scaled to the current
+	 * resolution of the page image. The reduction works by subsampling, i.e.,
+	 * by decoding only every n-th pixel in either direction, n being the
+	 * (integer) quotient of the current resolution of the page image and the
+	 * argument one. Thus, the resolution of the returned page image may be
+	 * above the argument one, but it is never below it. This is the same for
+	 * all image formats, no matter if the underlying decoder supports decoding
+	 * parts of images. This method does not close the argument stream.
+	 * @param piis the input stream to read the page image from
+	 * @param bb the bounding box describing the part
+	 * @param isBbOriginal does the bounding box refer to the original image?
+	 * @param dpi the minimum resolution of the returned page image
+	 * @return the part image encircled by the argument bounding box
+	 * @throws IOException
+	 */
+	public static PageImage getSubImage(PageImageInputStream piis, BoundingBox bb, boolean isBbOriginal, int dpi) throws IOException {
+		
+		//	check arguments
+		if (dpi < 1)
+			throw new IllegalArgumentException("DPI must be greater than zero.");
+		int subsampling = Math.max(1, (piis.currentDpi / dpi));
+		
+		//	scale bounding box if necessary
+		if (isBbOriginal && (piis.currentDpi != piis.originalDpi))
+			bb = new BoundingBox(((piis.currentDpi * bb.left) / piis.originalDpi), ((piis.currentDpi * bb.right) / piis.originalDpi), ((piis.currentDpi * bb.top) / piis.originalDpi), ((piis.currentDpi * bb.bottom) / piis.originalDpi));
+		
+		//	image data encoded with a specific codec, decode whole image and subsample part
+		PushbackInputStream pin = new PushbackInputStream(piis, 4);
+		PageImageCodec codec = PageImageCodec.readCodecHeader(pin);
+		if (codec != null) {
+			BufferedImage image = codec.decode(pin);
+			Rectangle part = getPartRegion(bb, piis.leftEdge, piis.topEdge, image.getWidth(), image.getHeight());
+			return wrapPart(subsample(image, part, subsampling), part, image.getWidth(), image.getHeight(), subsampling, piis);
+		}
+		
+		//	get image reader
+		ImageInputStream iis = ImageIO.createImageInputStream(pin);
+		try {
+			Iterator irit = ImageIO.getImageReaders(iis);
+			if (!irit.hasNext())
+				throw new IOException("Cannot decode page image");
+			ImageReader ir = ((ImageReader) irit.next());
+			try {
+				ir.setInput(iis, true, true);
+				int imageWidth = ir.getWidth(0);
+				int imageHeight = ir.getHeight(0);
+				
+				//	compute coordinates (the same way as getSubImage() does)
+				Rectangle part = getPartRegion(bb, piis.leftEdge, piis.topEdge, imageWidth, imageHeight);
+				
+				//	decode the part
+				ImageReadParam irp = ir.getDefaultReadParam();
+				irp.setSourceRegion(part);
+				if (subsampling > 1)
+					irp.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				return wrapPart(ir.read(0, irp), part, imageWidth, imageHeight, subsampling, piis);
+			}
+			finally {
+				ir.dispose();
+			}
+		}
+		finally {
+			iis.close();
+		}
+	}
+	
+	/* Subsample part of an image, using every n-th pixel in either direction,
+	 * the same way as an image reader does */
+	private static BufferedImage subsample(BufferedImage image, Rectangle part, int subsampling) {
+		BufferedImage partImage = image.getSubimage(part.x, part.y, part.width, part.height);
+		if (subsampling < 2)
+			return partImage;
+		ColorModel cm = partImage.getColorModel();
+		WritableRaster raster = cm.createCompatibleWritableRaster(((part.width + subsampling - 1) / subsampling), ((part.height + subsampling - 1) / subsampling));
+		WritableRaster partRaster = partImage.getRaster();
+		Object pixel = null;
+		for (int y = 0; y < raster.getHeight(); y++)
+			for (int x = 0; x < raster.getWidth(); x++) {
+				pixel = partRaster.getDataElements((x * subsampling), (y * subsampling), pixel);
+				raster.setDataElements(x, y, pixel);
+			}
+		return new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+	}
+	
+	/* Wrap a decoded part of a page image, scaling edges to reduced resolution */
+	private static PageImage wrapPart(BufferedImage image, Rectangle part, int imageWidth, int imageHeight, int subsampling, PageImageInputStream piis) {
+		return new PageImage(image,
+				piis.originalWidth,
+				piis.originalHeight,
+				piis.originalDpi,
+				((int) Math.round(((double) piis.currentDpi) / subsampling)),
+				((piis.leftEdge + part.x) / subsampling),
+				((piis.leftEdge + imageWidth + piis.rightEdge - (part.x + part.width)) / subsampling),
+				((piis.topEdge + part.y) / subsampling),
+				((piis.topEdge + imageHeight + piis.bottomEdge - (part.y + part.height)) / subsampling),
+				piis.source
 			);
 	}
 	
@@ -336,8 +483,17 @@ public class PageImage implements ImagingConstants {
 			if (parts[p] == null)
 				partImages[p] = null;
 			else {
-				PageImage pi = pis.getPageImage(docId, (firstPageId + p));
-				partImages[p] = pi.getSubImage(parts[p], areBbsOriginal);
+				PageImageInputStream piis = pis.getPageImageAsStream(docId, (firstPageId + p));
+				if (piis == null) {
+					PageImage pi = pis.getPageImage(docId, (firstPageId + p));
+					partImages[p] = pi.getSubImage(parts[p], areBbsOriginal);
+				}
+				else try {
+					partImages[p] = getSubImage(piis, parts[p], areBbsOriginal); // decode only the part we need
+				}
+				finally {
+					piis.close();
+				}
 				width = Math.max(width, partImages[p].image.getWidth());
 				height += (((p == 0) ? 0 : space) + partImages[p].image.getHeight());
 			}
@@ -368,13 +524,28 @@ public class PageImage implements ImagingConstants {
 	
 	/**
 	 * Write this page image to some output stream. This method writes the
-	 * meta data to the argument output stream, and then uses writeImage()
-	 * to write the actual image. Thus, any data written by this method
-	 * should be read by a PageImageInputStream.
+	 * meta data to the argument output stream, and then writes the actual
+	 * image, as PNG by default, or with the most suitable codec if compact
+	 * encoding is switched on. Thus, any data written by this method should
+	 * be read by a PageImageInputStream.
 	 * @param out the output stream to write to
 	 * @throws IOException
 	 */
 	public void write(OutputStream out) throws IOException {
+		this.write(out, getEncodingCodecName(this.image));
+	}
+	
+	/**
+	 * Write this page image to some output stream, using a specific codec
+	 * for the actual image. This method writes the meta data to the argument
+	 * output stream, and then uses writeImage() to write the actual image.
+	 * Thus, any data written by this method should be read by a
+	 * PageImageInputStream.
+	 * @param out the output stream to write to
+	 * @param codecName the name of the codec to encode the image with
+	 * @throws IOException
+	 */
+	public void write(OutputStream out, String codecName) throws IOException {
 		
 		//	send meta data
 		writeInt(out, this.originalWidth, 2);
@@ -387,7 +558,7 @@ public class PageImage implements ImagingConstants {
 		writeInt(out, this.bottomEdge, 2);
 		
 		//	send image
-		this.writeImage(out);
+		this.writeImage(out, codecName);
 	}
 	private static final void writeInt(OutputStream out, int theInt, int numBytes) throws IOException {
 		if (numBytes == 4)
@@ -402,52 +573,98 @@ public class PageImage implements ImagingConstants {
 	/**
 	 * Write the wrapped image to some output stream. This method uses
 	 * ImageIO.write(), but as opposed to this latter method, does not close
-	 * the argument stream before returning.
+	 * the argument stream before returning. The image is always written as
+	 * plain PNG, regardless of compact encoding.
 	 * @param out the output stream to write to
 	 * @throws IOException
 	 */
 	public void writeImage(OutputStream out) throws IOException {
-		ImageIO.write(this.image, IMAGE_FORMAT, new FilterOutputStream(out) {
-			public void close() throws IOException {
-				/*
-				 * ImageIO closes the stream, but we cannot rely on
-				 * this not to change in the future (it's bad
-				 * style). So we ignore the close operation.
-				 */
-			}
-		});
+		this.writeImage(out, IMAGE_FORMAT);
+	}
+	
+	/**
+	 * Write the wrapped image to some output stream, using a specific codec.
+	 * If the codec is the PNG codec, or if it cannot encode the wrapped image,
+	 * this method uses ImageIO.write(). This method does not close the
+	 * argument stream before returning.
+	 * @param out the output stream to write to
+	 * @param codecName the name of the codec to encode the image with
+	 * @throws IOException
+	 */
+	public void writeImage(OutputStream out, String codecName) throws IOException {
+		PageImageCodec.writeImage(this.image, codecName, out);
 	}
 	
 	/**
-	 * Read an image from an input stream. This method uses ImageIO.read()
-	 * to read the actual image, but as opposed to this latter method, this
-	 * method does not close the argument stream before returning.
+	 * Read an image from an input stream. This method reads images written by
+	 * any registered codec, and uses ImageIO.read() for plain PNG images, but
+	 * as opposed to this latter method, this method does not close the
+	 * argument stream before returning.
 	 * @param in the input stream to read from
 	 * @return a page image restored form the data provided by the argument
 	 *         input stream
 	 * @throws IOException
 	 */
 	public static BufferedImage readImage(InputStream in) throws IOException {
-		return ImageIO.read(new FilterInputStream(in) {
-			public void close() throws IOException {
-				/*
-				 * ImageIO closes the stream, but we cannot rely on
-				 * this not to change in the future (it's bad
-				 * style). So we ignore the close operation.
-				 */
-			}
-		});
+		return PageImageCodec.readImage(in);
 	}
 	
-	private static ArrayList pageImageSources = new ArrayList(2);
-	private static ArrayList pageImageStores = new ArrayList(2);
+	private static boolean compactEncoding = false;
+	
+	/**
+	 * Switch compact encoding on or off. If compact encoding is on, the
+	 * write() method and the writeImage() method of PageImageOutputStream,
+	 * which serialize page images for storage, use the bi-level codec for
+	 * black and white page images and the gray codec for gray scale page
+	 * images, falling back to PNG only for color page images. Otherwise, they
+	 * write all page images as PNG, which older versions of this class can
+	 * read. The writeImage() methods of this class always write plain PNG
+	 * unless a codec is specified explicitly. Compact encoding is off by
+	 * default.
+	 * @param ce use compact encoding?
+	 */
+	public static void setCompactEncoding(boolean ce) {
+		compactEncoding = ce;
+	}
+	
+	/**
+	 * Check whether or not compact encoding is switched on.
+	 * @return true if compact encoding is switched on
+	 */
+	public static boolean isCompactEncoding() {
+		return compactEncoding;
+	}
+	
+	static String getEncodingCodecName(BufferedImage image) {
+		return (compactEncoding ? PageImageCodec.selectCodecName(image) : IMAGE_FORMAT);
+	}
+	
+	/* Registered sources and stores are held in arrays that are replaced as a
+	 * whole on any change (copy on write), so lookups never need to lock */
+	private static final Object registryLock = new Object();
+	private static volatile PageImageSource[] pageImageSources = new PageImageSource[0];
+	private static volatile PageImageStore[] pageImageStores = new PageImageStore[0];
+	
+	/* The source that last provided or stored a page image of a given
+	 * document, to try first for further pages of the same document */
+	private static final WeightedCache docIdsToSources = new WeightedCache(1024);
+	
+	/* Names of page images no source had on the last lookup, mapped to the
+	 * time until which to trust the miss, as sources might acquire images
+	 * through other channels than storePageImage(); the misses only apply to
+	 * plain sources, while page image stores, as well as caching decorators
+	 * wrapping them, are always asked, as client code can store page images
+	 * in them directly at any time, bypassing storePageImage() and thus any
+	 * invalidation */
+	private static final WeightedCache missingPageImageNames = new WeightedCache(4096);
+	private static final long missingPageImageTimeout = (1000 * 10);
 	
 	/**
 	 * Retrieve the page image sources currently installed
 	 * @return the page image sources currently installed
 	 */
 	public static PageImageSource[] getPageImageSources() {
-		return ((PageImageSource[]) pageImageSources.toArray(new PageImageSource[pageImageSources.size()]));
+		return pageImageSources.clone();
 	}
 	
 	/**
@@ -455,13 +672,17 @@ public class PageImage implements ImagingConstants {
 	 * @param pageImageSource the page image source to add
 	 */
 	public static void addPageImageSource(PageImageSource pageImageSource) {
-		if ((pageImageSource != null) && !pageImageSources.contains(pageImageSource)) {
-			pageImageSources.add(pageImageSource);
-//			System.out.println("Page image source added: " + pageImageSource.getClass().getName());
-//			StackTraceElement[] stes = Thread.currentThread().getStackTrace();
-//			for (int e = 0; e < stes.length; e++)
-//				System.out.println(stes[e].toString());
+		if (pageImageSource == null)
+			return;
+		synchronized (registryLock) {
+			if (indexOf(pageImageSources, pageImageSource) != -1)
+				return;
+			PageImageSource[] pageImageSources = new PageImageSource[PageImage.pageImageSources.length + 1];
+			System.arraycopy(PageImage.pageImageSources, 0, pageImageSources, 0, PageImage.pageImageSources.length);
+			pageImageSources[PageImage.pageImageSources.length] = pageImageSource;
+			PageImage.pageImageSources = pageImageSources;
 		}
+		missingPageImageNames.clear(); // new source might have what others lack
 	}
 	
 	/**
@@ -469,8 +690,73 @@ public class PageImage implements ImagingConstants {
 	 * @param pageImageSource the page image source to remove
 	 */
 	public static void removePageImageSource(PageImageSource pageImageSource) {
-		if (pageImageSource != null)
-			pageImageSources.remove(pageImageSource);
+		if (pageImageSource == null)
+			return;
+		synchronized (registryLock) {
+			int index = indexOf(pageImageSources, pageImageSource);
+			if (index == -1)
+				return;
+			PageImageSource[] pageImageSources = new PageImageSource[PageImage.pageImageSources.length - 1];
+			System.arraycopy(PageImage.pageImageSources, 0, pageImageSources, 0, index);
+			System.arraycopy(PageImage.pageImageSources, (index + 1), pageImageSources, index, (pageImageSources.length - index));
+			PageImage.pageImageSources = pageImageSources;
+		}
+		docIdsToSources.clear(); // make sure to not use removed source any further
+	}
+	
+	private static int indexOf(Object[] objects, Object obj) {
+		for (int o = 0; o < objects.length; o++) {
+			if (objects[o] == obj)
+				return o;
+		}
+		return -1;
+	}
+	
+	/* Extract the document ID from a page image name, i.e., cut the page ID */
+	private static String getDocId(String name) {
+		int split = name.lastIndexOf('.');
+		return ((split == -1) ? name : name.substring(0, split));
+	}
+	
+	/* Check if no source had a page image on a recent lookup */
+	private static boolean isPageImageMissing(String name) {
+		Long missingUntil = ((Long) missingPageImageNames.get(name));
+		if (missingUntil == null)
+			return false;
+		if (missingUntil.longValue() > System.currentTimeMillis())
+			return true;
+		missingPageImageNames.remove(name);
+		return false;
+	}
+	
+	/* Check if a page image source is a page image store, or a caching
+	 * decorator wrapping one, whose page images can change at any time */
+	private static boolean isStoreBacked(PageImageSource pis) {
+		while (pis instanceof CachingDecorator)
+			pis = ((CachingDecorator) pis).getSource();
+		return (pis instanceof PageImageStore);
+	}
+	
+	/* Retrieve the source to try first for a page image, if any */
+	private static PageImageSource getPreferredSource(String name, PageImageSource[] pageImageSources) {
+		PageImageSource pis = ((PageImageSource) docIdsToSources.get(getDocId(name)));
+		return (((pis == null) || (indexOf(pageImageSources, pis) == -1)) ? null : pis);
+	}
+	
+	/* Remember the source that provided or stored a page image */
+	private static void pageImageFound(String name, PageImageSource pis) {
+		missingPageImageNames.remove(name);
+		String docId = getDocId(name);
+		if (docIdsToSources.get(docId) != pis) {
+			docIdsToSources.remove(docId);
+			docIdsToSources.putIfAbsent(docId, pis, 1);
+		}
+	}
+	
+	/* Remember that no source has a page image */
+	private static void pageImageMissing(String name) {
+		missingPageImageNames.remove(name);
+		missingPageImageNames.putIfAbsent(name, new Long(System.currentTimeMillis() + missingPageImageTimeout), 1);
 	}
 	
 	/**
@@ -496,21 +782,50 @@ public class PageImage implements ImagingConstants {
 	/**
 	 * Retrieve an image by its unified single-string image name. This method
 	 * searches all registered page image sources. If none has the sought image,
-	 * this method returns null.
+	 * this method returns null.<br>
+	 * <b>Note:</b> This method first asks the source that last provided or
+	 * stored a page image of the same document, and only then the other
+	 * sources in the order they were registered in. If multiple sources have
+	 * a page image with the sought name, the one returned is thus not
+	 * necessarily the one from the source registered first. Further, for ten
+	 * seconds after no source had a page image, this method only asks page
+	 * image stores and caching decorators wrapping them for it, not plain
+	 * page image sources.
 	 * @param name unified single-string image name
 	 * @return the page image
 	 */
 	public static PageImage getPageImage(String name) {
-		PageImage pi = null;
-		for (int p = 0; p < pageImageSources.size(); p++) {
-			PageImageSource pis = ((PageImageSource) pageImageSources.get(p));
+		boolean missing = isPageImageMissing(name);
+		
+		//	try source that served same document before (only stores if no source had the page image recently)
+		PageImageSource[] pageImageSources = PageImage.pageImageSources;
+		PageImageSource preferredPis = getPreferredSource(name, pageImageSources);
+		if ((preferredPis != null) && (!missing || isStoreBacked(preferredPis))) try {
+			PageImage pi = preferredPis.getPageImage(name);
+			if (pi != null) {
+				if (missing)
+					pageImageFound(name, preferredPis);
+				return pi;
+			}
+		} catch (IOException ioe) {}
+		
+		//	try all other sources
+		for (int p = 0; p < pageImageSources.length; p++) {
+			if (pageImageSources[p] == preferredPis)
+				continue;
+			if (missing && !isStoreBacked(pageImageSources[p]))
+				continue;
+			PageImage pi = null;
 			try {
-				pi = pis.getPageImage(name);
+				pi = pageImageSources[p].getPageImage(name);
 			} catch (IOException ioe) {}
-			if (pi != null)
-				break;
+			if (pi != null) {
+				pageImageFound(name, pageImageSources[p]);
+				return pi;
+			}
 		}
-		return pi;
+		pageImageMissing(name);
+		return null;
 	}
 	
 	/**
@@ -530,21 +845,43 @@ public class PageImage implements ImagingConstants {
 	/**
 	 * Retrieve an input stream of an image by its unified single-string image
 	 * name. This method searches all registered page image sources. If none
-	 * has the sought image, this method returns null.
+	 * has the sought image, this method returns null. The order in which this
+	 * method asks the registered sources is the same as for getPageImage().
 	 * @param name unified single-string image name
 	 * @return the page image, as an input stream
 	 */
 	public static PageImageInputStream getPageImageAsStream(String name) {
-		PageImageInputStream piis = null;
-		for (int p = 0; p < pageImageSources.size(); p++) {
-			PageImageSource pis = ((PageImageSource) pageImageSources.get(p));
+		boolean missing = isPageImageMissing(name);
+		
+		//	try source that served same document before (only stores if no source had the page image recently)
+		PageImageSource[] pageImageSources = PageImage.pageImageSources;
+		PageImageSource preferredPis = getPreferredSource(name, pageImageSources);
+		if ((preferredPis != null) && (!missing || isStoreBacked(preferredPis))) try {
+			PageImageInputStream piis = preferredPis.getPageImageAsStream(name);
+			if (piis != null) {
+				if (missing)
+					pageImageFound(name, preferredPis);
+				return piis;
+			}
+		} catch (IOException ioe) {}
+		
+		//	try all other sources
+		for (int p = 0; p < pageImageSources.length; p++) {
+			if (pageImageSources[p] == preferredPis)
+				continue;
+			if (missing && !isStoreBacked(pageImageSources[p]))
+				continue;
+			PageImageInputStream piis = null;
 			try {
-				piis = pis.getPageImageAsStream(name);
+				piis = pageImageSources[p].getPageImageAsStream(name);
 			} catch (IOException ioe) {}
-			if (piis != null)
-				break;
+			if (piis != null) {
+				pageImageFound(name, pageImageSources[p]);
+				return piis;
+			}
 		}
-		return piis;
+		pageImageMissing(name);
+		return null;
 	}
 	
 	/**
@@ -566,7 +903,7 @@ public class PageImage implements ImagingConstants {
 	 * @return the page image stores currently installed
 	 */
 	public static PageImageStore[] getPageImageStores() {
-		return ((PageImageStore[]) pageImageStores.toArray(new PageImageSource[pageImageStores.size()]));
+		return pageImageStores.clone();
 	}
 	
 	/**
@@ -575,9 +912,16 @@ public class PageImage implements ImagingConstants {
 	 * @param pageImageStore the page image store to add
 	 */
 	public static void addPageImageStore(PageImageStore pageImageStore) {
-		if ((pageImageStore != null) && !pageImageStores.contains(pageImageStore)) {
-			pageImageStores.add(pageImageStore);
-			Collections.sort(pageImageStores, pageImageStoreOrder);
+		if (pageImageStore == null)
+			return;
+		synchronized (registryLock) {
+			if (indexOf(pageImageStores, pageImageStore) == -1) {
+				PageImageStore[] pageImageStores = new PageImageStore[PageImage.pageImageStores.length + 1];
+				System.arraycopy(PageImage.pageImageStores, 0, pageImageStores, 0, PageImage.pageImageStores.length);
+				pageImageStores[PageImage.pageImageStores.length] = pageImageStore;
+				Arrays.sort(pageImageStores, pageImageStoreOrder);
+				PageImage.pageImageStores = pageImageStores;
+			}
 		}
 		addPageImageSource(pageImageStore);
 	}
@@ -593,8 +937,17 @@ public class PageImage implements ImagingConstants {
 	 * @param pageImageStore the page image store to remove
 	 */
 	public static void removePageImageStore(PageImageStore pageImageStore) {
-		if (pageImageStore != null)
-			pageImageStores.remove(pageImageStore);
+		if (pageImageStore == null)
+			return;
+		synchronized (registryLock) {
+			int index = indexOf(pageImageStores, pageImageStore);
+			if (index != -1) {
+				PageImageStore[] pageImageStores = new PageImageStore[PageImage.pageImageStores.length - 1];
+				System.arraycopy(PageImage.pageImageStores, 0, pageImageStores, 0, index);
+				System.arraycopy(PageImage.pageImageStores, (index + 1), pageImageStores, index, (pageImageStores.length - index));
+				PageImage.pageImageStores = pageImageStores;
+			}
+		}
 		removePageImageSource(pageImageStore);
 	}
 	
@@ -623,15 +976,34 @@ public class PageImage implements ImagingConstants {
 	 * @throws IOException
 	 */
 	public static boolean storePageImage(String name, PageImage pageImage) throws IOException {
-		if ((pageImage.source instanceof PageImageStore) && ((PageImageStore) pageImage.source).storePageImage(name, pageImage))
+		if ((pageImage.source instanceof PageImageStore) && ((PageImageStore) pageImage.source).storePageImage(name, pageImage)) {
+			pageImageStored(name, ((PageImageStore) pageImage.source));
 			return true;
-		for (int s = 0; s < pageImageStores.size(); s++) {
-			if (((PageImageStore) pageImageStores.get(s)).storePageImage(name, pageImage))
+		}
+		PageImageStore[] pageImageStores = PageImage.pageImageStores;
+		for (int s = 0; s < pageImageStores.length; s++) {
+			if (pageImageStores[s].storePageImage(name, pageImage)) {
+				pageImageStored(name, pageImageStores[s]);
 				return true;
+			}
 		}
 		return false;
 	}
 	
+	/* Update lookup caches after a page image was stored */
+	private static void pageImageStored(String name, PageImageStore pis) {
+		missingPageImageNames.remove(name);
+		if (indexOf(pageImageSources, pis) != -1)
+			pageImageFound(name, pis);
+		
+		//	make sure caching sources do not hand out outdated page image, including ones wrapped in other decorators
+		PageImageSource[] pageImageSources = PageImage.pageImageSources;
+		for (int s = 0; s < pageImageSources.length; s++) {
+			for (PageImageSource cpis = pageImageSources[s]; cpis instanceof CachingDecorator; cpis = ((CachingDecorator) cpis).getSource())
+				((CachingDecorator) cpis).invalidate(name);
+		}
+	}
+	
 	/**
 	 * Store a page image, implying original size and zero-width margins. This
 	 * method should be implemented as a shorthand for
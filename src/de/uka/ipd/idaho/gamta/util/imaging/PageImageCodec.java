@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitaet Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITAET KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util.imaging;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Codec for encoding and decoding the image data of page images. By default,
+ * page images are stored in PNG format, without any further header. Data
+ * encoded by any other codec starts with a codec header instead, consisting
+ * of the four bytes 'GPIC' (which no common image format starts with), one
+ * byte for the version of the header, and the name of the codec, preceded by
+ * its length in one byte. Thus, reading image data always works, no matter
+ * which codec it was encoded with, as long as that codec is registered
+ * here.<br>
+ * Apart from PNG, there are two built-in codecs: 'bilevel-rle' encodes
+ * binary black and white images as runs of pixels of either color, and
+ * 'gray-delta' encodes gray scale images as differences to the pixel row
+ * above. Both compress the result with the fastest deflate setting, which
+ * makes them both faster to encode and decode than PNG, and usually also
+ * more compact.
+ * 
+ * @author sautter
+ */
+public abstract class PageImageCodec {
+	
+	/** the name of the default codec, 'png', whose data has no codec header */
+	public static final String PNG_CODEC_NAME = "png";
+	
+	/** the name of the run length codec for black and white images, 'bilevel-rle' */
+	public static final String BILEVEL_CODEC_NAME = "bilevel-rle";
+	
+	/** the name of the row difference codec for gray scale images, 'gray-delta' */
+	public static final String GRAY_CODEC_NAME = "gray-delta";
+	
+	private static final byte[] CODEC_HEADER_MAGIC = {((byte) 'G'), ((byte) 'P'), ((byte) 'I'), ((byte) 'C')};
+	private static final int CODEC_HEADER_VERSION = 1;
+	
+	/**
+	 * Retrieve the name of the codec, which identifies it in the data it
+	 * encodes.
+	 * @return the name of the codec
+	 */
+	public abstract String getName();
+	
+	/**
+	 * Check whether or not the codec can encode a given image without any
+	 * loss of information.
+	 * @param image the image to check
+	 * @return true if the argument image can be encoded by this codec
+	 */
+	public abstract boolean canEncode(BufferedImage image);
+	
+	/**
+	 * Encode an image. The codec header is written by the calling code.
+	 * @param image the image to encode
+	 * @param out the stream to write the encoded image to
+	 * @throws IOException
+	 */
+	public abstract void encode(BufferedImage image, OutputStream out) throws IOException;
+	
+	/**
+	 * Decode an image. The codec header has already been consumed from the
+	 * argument stream when this method is called.
+	 * @param in the stream to read the encoded image from
+	 * @return the decoded image
+	 * @throws IOException
+	 */
+	public abstract BufferedImage decode(InputStream in) throws IOException;
+	
+	private static final HashMap codecs = new HashMap();
+	static {
+		registerCodec(new BilevelCodec());
+		registerCodec(new GrayCodec());
+	}
+	
+	/**
+	 * Register a codec, replacing any codec registered before under the same
+	 * name.
+	 * @param codec the codec to register
+	 */
+	public static void registerCodec(PageImageCodec codec) {
+		if (PNG_CODEC_NAME.equals(codec.getName()))
+			throw new IllegalArgumentException("Cannot replace PNG codec.");
+		if (codec.getName().length() > 255)
+			throw new IllegalArgumentException("Codec name too long.");
+		synchronized (codecs) {
+			codecs.put(codec.getName(), codec);
+		}
+	}
+	
+	/**
+	 * Retrieve a codec by its name. For the name of the default PNG codec,
+	 * this method returns null, as PNG is handled by ImageIO.
+	 * @param name the name of the codec
+	 * @return the codec with the argument name
+	 */
+	public static PageImageCodec getCodec(String name) {
+		synchronized (codecs) {
+			return ((PageImageCodec) codecs.get(name));
+		}
+	}
+	
+	/**
+	 * Select the most suitable built-in codec for an image, i.e., the
+	 * bi-level codec for binary black and white images, the gray codec for gray scale
+	 * images, and the PNG codec for all other images.
+	 * @param image the image to select a codec for
+	 * @return the name of the most suitable codec
+	 */
+	public static String selectCodecName(BufferedImage image) {
+		if (getCodec(BILEVEL_CODEC_NAME).canEncode(image))
+			return BILEVEL_CODEC_NAME;
+		else if (getCodec(GRAY_CODEC_NAME).canEncode(image))
+			return GRAY_CODEC_NAME;
+		else return PNG_CODEC_NAME;
+	}
+	
+	/**
+	 * Write an image with a given codec. If the codec is the PNG codec, this
+	 * method writes plain PNG data, without codec header. If the argument
+	 * codec cannot encode the argument image, this method falls back to PNG.
+	 * This method does not close the argument stream.
+	 * @param image the image to write
+	 * @param codecName the name of the codec to use
+	 * @param out the stream to write to
+	 * @throws IOException
+	 */
+	public static void writeImage(BufferedImage image, String codecName, OutputStream out) throws IOException {
+		PageImageCodec codec = ((codecName == null) ? null : getCodec(codecName));
+		if ((codec == null) || !codec.canEncode(image)) {
+			ImageIO.write(image, PNG_CODEC_NAME, new FilterOutputStream(out) {
+				public void close() throws IOException {
+					/*
+					 * ImageIO closes the stream, but we cannot rely on
+					 * this not to change in the future (it's bad
+					 * style). So we ignore the close operation.
+					 */
+				}
+			});
+			return;
+		}
+		out.write(CODEC_HEADER_MAGIC);
+		out.write(CODEC_HEADER_VERSION);
+		byte[] name = codec.getName().getBytes("US-ASCII");
+		out.write(name.length);
+		out.write(name);
+		codec.encode(image, out);
+	}
+	
+	/**
+	 * Read an image written by writeImage(), with any codec, or by older
+	 * versions of PageImage, i.e., as plain PNG. This method does not close
+	 * the argument stream.
+	 * @param in the stream to read from
+	 * @return the image
+	 * @throws IOException
+	 */
+	public static BufferedImage readImage(InputStream in) throws IOException {
+		PushbackInputStream pin = new PushbackInputStream(in, CODEC_HEADER_MAGIC.length);
+		PageImageCodec codec = readCodecHeader(pin);
+		if (codec != null)
+			return codec.decode(pin);
+		return ImageIO.read(new FilterInputStream(pin) {
+			public void close() throws IOException {
+				/*
+				 * ImageIO closes the stream, but we cannot rely on
+				 * this not to change in the future (it's bad
+				 * style). So we ignore the close operation.
+				 */
+			}
+		});
+	}
+	
+	/* Read the codec header from a stream, and return the codec it names; if
+	 * there is no codec header (i.e., plain PNG or any other ImageIO format),
+	 * unread whatever was read to check and return null */
+	static PageImageCodec readCodecHeader(PushbackInputStream in) throws IOException {
+		byte[] magic = new byte[CODEC_HEADER_MAGIC.length];
+		int read = 0;
+		while (read < magic.length) {
+			int r = in.read(magic, read, (magic.length - read));
+			if (r == -1)
+				break;
+			read += r;
+		}
+		for (int b = 0; b < magic.length; b++)
+			if ((b >= read) || (magic[b] != CODEC_HEADER_MAGIC[b])) {
+				in.unread(magic, 0, read);
+				return null;
+			}
+		int version = in.read();
+		if (version != CODEC_HEADER_VERSION)
+			throw new IOException("Unsupported page image codec header version " + version);
+		byte[] name = new byte[readByte(in)];
+		for (int b = 0; b < name.length; b++)
+			name[b] = ((byte) readByte(in));
+		String codecName = new String(name, "US-ASCII");
+		PageImageCodec codec = getCodec(codecName);
+		if (codec == null)
+			throw new IOException("Unknown page image codec '" + codecName + "'");
+		return codec;
+	}
+	
+	private static int readByte(InputStream in) throws IOException {
+		int b = in.read();
+		if (b == -1)
+			throw new EOFException();
+		return b;
+	}
+	
+	private static void writeVarInt(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+	
+	private static int readVarInt(InputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = readByte(in);
+			value |= ((b & 0x7F) << shift);
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed page image data");
+	}
+	
+	/* Deflate encoded data with fastest setting, without closing the
+	 * underlying stream */
+	private static abstract class DeflatingEncoder {
+		void encode(OutputStream out) throws IOException {
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try {
+				DeflaterOutputStream dout = new DeflaterOutputStream(out, deflater, 8192);
+				BufferedOutputStream bout = new BufferedOutputStream(dout, 8192);
+				this.write(bout);
+				bout.flush();
+				dout.finish();
+			}
+			finally {
+				deflater.end();
+			}
+		}
+		abstract void write(OutputStream out) throws IOException;
+	}
+	
+	/* Inflate data written by a DeflatingEncoder */
+	private static abstract class InflatingDecoder {
+		BufferedImage decode(InputStream in) throws IOException {
+			Inflater inflater = new Inflater();
+			try {
+				return this.read(new BufferedInputStream(new InflaterInputStream(in, inflater, 8192), 8192));
+			}
+			finally {
+				inflater.end();
+			}
+		}
+		abstract BufferedImage read(InputStream in) throws IOException;
+	}
+	
+	/* Codec encoding black and white images as runs of pixels, alternating
+	 * between white and black, starting with white in each row. Images decode
+	 * to TYPE_BYTE_BINARY with the default black and white palette, so the
+	 * codec only accepts images of that very type, which thus come back with
+	 * the very same raster data. */
+	private static class BilevelCodec extends PageImageCodec {
+		private static final int WHITE = 0xFFFFFF;
+		public String getName() {
+			return BILEVEL_CODEC_NAME;
+		}
+		public boolean canEncode(BufferedImage image) {
+			
+			//	only binary images with black and white palette, as any other image type would not survive the round trip
+			if (image.getType() != BufferedImage.TYPE_BYTE_BINARY)
+				return false;
+			IndexColorModel icm = ((IndexColorModel) image.getColorModel());
+			return ((icm.getMapSize() == 2) && ((icm.getRGB(0) & WHITE) == 0) && ((icm.getRGB(1) & WHITE) == WHITE));
+		}
+		public void encode(final BufferedImage image, OutputStream out) throws IOException {
+			new DeflatingEncoder() {
+				void write(OutputStream out) throws IOException {
+					int width = image.getWidth();
+					int height = image.getHeight();
+					writeVarInt(out, width);
+					writeVarInt(out, height);
+					int[] rgbRow = new int[width];
+					for (int y = 0; y < height; y++) {
+						image.getRGB(0, y, width, 1, rgbRow, 0, width);
+						boolean white = true;
+						int runStart = 0;
+						for (int x = 0; x < width; x++) {
+							if (((rgbRow[x] & WHITE) == WHITE) == white)
+								continue;
+							writeVarInt(out, (x - runStart));
+							runStart = x;
+							white = !white;
+						}
+						writeVarInt(out, (width - runStart));
+					}
+				}
+			}.encode(out);
+		}
+		public BufferedImage decode(InputStream in) throws IOException {
+			return new InflatingDecoder() {
+				BufferedImage read(InputStream in) throws IOException {
+					int width = readVarInt(in);
+					int height = readVarInt(in);
+					BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+					
+					//	write packed pixels directly to the data buffer (a fresh image has no offsets)
+					byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+					int stride = ((MultiPixelPackedSampleModel) image.getSampleModel()).getScanlineStride();
+					byte[] row = new byte[stride];
+					for (int y = 0; y < height; y++) {
+						Arrays.fill(row, ((byte) 0xFF)); // white is palette index 1
+						boolean white = true;
+						for (int x = 0; x < width;) {
+							int run = readVarInt(in);
+							if ((run < 0) || (run > (width - x)))
+								throw new IOException("Malformed page image data");
+							if (!white)
+								for (int b = x; b < (x + run); b++)
+									row[b >> 3] &= ~(0x80 >> (b & 7));
+							x += run;
+							white = !white;
+						}
+						System.arraycopy(row, 0, data, (y * stride), stride);
+					}
+					return image;
+				}
+			}.decode(in);
+		}
+	}
+	
+	/* Codec encoding gray scale images as differences of each pixel row to
+	 * the one above. Images decode to TYPE_BYTE_GRAY with the very same
+	 * raster data as the encoded image. */
+	private static class GrayCodec extends PageImageCodec {
+		public String getName() {
+			return GRAY_CODEC_NAME;
+		}
+		public boolean canEncode(BufferedImage image) {
+			return (image.getType() == BufferedImage.TYPE_BYTE_GRAY);
+		}
+		public void encode(final BufferedImage image, OutputStream out) throws IOException {
+			new DeflatingEncoder() {
+				void write(OutputStream out) throws IOException {
+					int width = image.getWidth();
+					int height = image.getHeight();
+					writeVarInt(out, width);
+					writeVarInt(out, height);
+					WritableRaster raster = image.getRaster();
+					byte[] row = new byte[width];
+					byte[] lastRow = new byte[width];
+					byte[] deltaRow = new byte[width];
+					for (int y = 0; y < height; y++) {
+						raster.getDataElements(0, y, width, 1, row);
+						for (int x = 0; x < width; x++)
+							deltaRow[x] = ((byte) (row[x] - lastRow[x]));
+						out.write(deltaRow);
+						byte[] swap = lastRow;
+						lastRow = row;
+						row = swap;
+					}
+				}
+			}.encode(out);
+		}
+		public BufferedImage decode(InputStream in) throws IOException {
+			return new InflatingDecoder() {
+				BufferedImage read(InputStream in) throws IOException {
+					int width = readVarInt(in);
+					int height = readVarInt(in);
+					BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+					WritableRaster raster = image.getRaster();
+					DataInputStream din = new DataInputStream(in);
+					byte[] row = new byte[width];
+					byte[] deltaRow = new byte[width];
+					for (int y = 0; y < height; y++) {
+						din.readFully(deltaRow);
+						for (int x = 0; x < width; x++)
+							row[x] += deltaRow[x];
+						raster.setDataElements(0, y, width, 1, row);
+					}
+					return image;
+				}
+			}.decode(in);
+		}
+	}
+}
@@ -0,0 +1,511 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitaet Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITAET KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util.imaging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.uka.ipd.idaho.gamta.util.imaging.PageImageStore.AbstractPageImageStore;
+
+/**
+ * Page image store keeping all page images of a document in a single
+ * container file, rather than in one file per page. Container files are
+ * append-only: storing a page image appends it to the end of the data
+ * section, followed by a rewritten index mapping page IDs to offsets and
+ * lengths, and a fixed-size trailer pointing to that index. Replacing a
+ * page image appends the new version and points the index to it, leaving
+ * the old version as dead space in the file.<br>
+ * Reading page images works on a read-only memory mapping of the data
+ * section, so page image input streams read directly from the mapped file
+ * without copying the page image data into intermediate arrays, and finding
+ * a page is a single lookup in the in-memory index.<br>
+ * Each page image record in the data section has a small header of its own,
+ * so the index can be rebuilt by scanning the data section if the trailer
+ * is missing or damaged, e.g. after a crash in the middle of a write.<br>
+ * This store handles all page image names that end with a dot and a numeric
+ * page ID, as produced by PageImage.getPageImageName(). Container files are
+ * named after the document ID, with a '.pageImages' suffix.<br>
+ * To keep the number of open file handles and mappings bounded in long
+ * running applications that touch many documents, the store keeps only a
+ * limited number of container files open at any time, closing the least
+ * recently used one when opening another one would exceed the limit. Page
+ * image input streams obtained before a container file is closed remain
+ * readable, as the mapping of the data section outlives the file handle.
+ * Container files are opened for reading only until a page image is stored
+ * in them, so the store also works on read-only files and folders.
+ * 
+ * @author sautter
+ */
+public class PageImageContainerStore extends AbstractPageImageStore {
+	
+	/** the suffix of container file names, namely '.pageImages' */
+	public static final String CONTAINER_FILE_SUFFIX = ".pageImages";
+	
+	private static final int FILE_MAGIC = 0x50494D43; // 'PIMC'
+	private static final int FILE_VERSION = 1;
+	private static final int FILE_HEADER_SIZE = 8;
+	
+	private static final int RECORD_MAGIC = 0x50524543; // 'PREC'
+	private static final int RECORD_HEADER_SIZE = 12;
+	
+	private static final int INDEX_ENTRY_SIZE = 16;
+	private static final int TRAILER_MAGIC = 0x50494458; // 'PIDX'
+	private static final int TRAILER_SIZE = 16;
+	
+	/** the default maximum number of container files kept open at the same time, namely 64 */
+	public static final int DEFAULT_MAX_OPEN_CONTAINERS = 64;
+	
+	private final File folder;
+	private final int priority;
+	private int maxOpenContainers = DEFAULT_MAX_OPEN_CONTAINERS;
+	private final LinkedHashMap containers = new LinkedHashMap(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			if (this.size() <= maxOpenContainers)
+				return false;
+			closeContainer((Container) eldest.getValue());
+			return true;
+		}
+	};
+	
+	/**
+	 * Constructor creating a page image store with priority 0
+	 * @param folder the folder to store container files in
+	 */
+	public PageImageContainerStore(File folder) {
+		this(folder, 0);
+	}
+	
+	/**
+	 * Constructor
+	 * @param folder the folder to store container files in
+	 * @param priority the priority of the page image store
+	 */
+	public PageImageContainerStore(File folder, int priority) {
+		this.folder = folder;
+		this.priority = priority;
+	}
+	
+	/**
+	 * @return the maximum number of container files kept open at the same time
+	 */
+	public int getMaxOpenContainers() {
+		return this.maxOpenContainers;
+	}
+	
+	/**
+	 * Set the maximum number of container files to keep open at the same
+	 * time. If more container files are open than the argument number, the
+	 * least recently used ones are closed right away.
+	 * @param maxOpenContainers the maximum number of open container files
+	 */
+	public void setMaxOpenContainers(int maxOpenContainers) {
+		if (maxOpenContainers < 1)
+			throw new IllegalArgumentException("The maximum number of open container files has to be 1 or greater.");
+		synchronized (this.containers) {
+			this.maxOpenContainers = maxOpenContainers;
+			for (Iterator cit = this.containers.values().iterator(); cit.hasNext() && (this.containers.size() > this.maxOpenContainers);) {
+				closeContainer((Container) cit.next());
+				cit.remove();
+			}
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.imaging.PageImageStore#getPriority()
+	 */
+	public int getPriority() {
+		return this.priority;
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.imaging.PageImageSource#isPageImageAvailable(java.lang.String)
+	 */
+	public boolean isPageImageAvailable(String name) {
+		int split = getDocIdEnd(name);
+		if (split == -1)
+			return false;
+		try {
+			Container container = this.getContainer(name.substring(0, split), false, null);
+			return ((container != null) && (container.getIndexEntry(Integer.parseInt(name.substring(split + 1))) != null));
+		}
+		catch (IOException ioe) {
+			return false;
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.imaging.PageImageSource#getPageImageAsStream(java.lang.String)
+	 */
+	public PageImageInputStream getPageImageAsStream(String name) throws IOException {
+		int split = getDocIdEnd(name);
+		if (split == -1)
+			return null;
+		Container container = this.getContainer(name.substring(0, split), false, null);
+		if (container == null)
+			return null;
+		ByteBuffer pageImageData;
+		try {
+			pageImageData = container.getPageImageData(Integer.parseInt(name.substring(split + 1)));
+		}
+		
+		//	container closed since we got hold of it, by eviction or by an interrupt, re-open it
+		catch (ClosedChannelException cce) {
+			container = this.getContainer(name.substring(0, split), false, container);
+			if (cce instanceof ClosedByInterruptException)
+				throw cce; // still interrupted, re-opened container would only get closed again
+			if (container == null)
+				return null;
+			pageImageData = container.getPageImageData(Integer.parseInt(name.substring(split + 1)));
+		}
+		if (pageImageData == null)
+			return null;
+		return new PageImageInputStream(new ByteBufferInputStream(pageImageData), this);
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.imaging.PageImageStore#storePageImage(java.lang.String, de.uka.ipd.idaho.gamta.util.imaging.PageImage)
+	 */
+	public boolean storePageImage(String name, PageImage pageImage) throws IOException {
+		int split = getDocIdEnd(name);
+		if (split == -1)
+			return false;
+		ByteArrayOutputStream pageImageData = new ByteArrayOutputStream();
+		pageImage.write(pageImageData);
+		Container container = this.getContainer(name.substring(0, split), true, null);
+		try {
+			container.appendPageImage(Integer.parseInt(name.substring(split + 1)), pageImageData);
+		}
+		
+		//	container closed since we got hold of it, by eviction or by an interrupt, re-open it (re-opening cuts off any partial record an interrupt left behind)
+		catch (ClosedChannelException cce) {
+			container = this.getContainer(name.substring(0, split), true, container);
+			if (cce instanceof ClosedByInterruptException)
+				throw cce; // still interrupted, re-opened container would only get closed again
+			container.appendPageImage(Integer.parseInt(name.substring(split + 1)), pageImageData);
+		}
+		return true;
+	}
+	
+	/**
+	 * Close all open container files. The store remains usable afterwards,
+	 * re-opening container files as required.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		synchronized (this.containers) {
+			IOException ioe = null;
+			for (Iterator cit = this.containers.values().iterator(); cit.hasNext();) try {
+				((Container) cit.next()).close();
+			}
+			catch (IOException cioe) {
+				ioe = cioe;
+			}
+			this.containers.clear();
+			if (ioe != null)
+				throw ioe;
+		}
+	}
+	
+	/* Find the dot separating document ID from page ID in a page image name,
+	 * returning -1 if the name does not end with a numeric page ID */
+	private static int getDocIdEnd(String name) {
+		int split = name.lastIndexOf('.');
+		if ((split < 1) || ((split + 1) == name.length()) || ((name.length() - split) > 10))
+			return -1;
+		for (int c = (split + 1); c < name.length(); c++) {
+			if (!Character.isDigit(name.charAt(c)))
+				return -1;
+		}
+		return split;
+	}
+	
+	/* Close a container evicted from the open containers, ignoring any
+	 * errors, as there is nobody to report them to */
+	private static void closeContainer(Container container) {
+		try {
+			container.close();
+		}
+		catch (IOException ioe) {
+			System.out.println("Error closing page image container file: " + ioe.getMessage());
+		}
+	}
+	
+	/* Get the container for a document, opening the container file for
+	 * writing only if we are about to write to it. If a closed container is
+	 * given, we drop that one from the open containers first, unless another
+	 * thread already replaced it. */
+	private Container getContainer(String docId, boolean write, Container closed) throws IOException {
+		synchronized (this.containers) {
+			Container container = ((Container) this.containers.get(docId));
+			if ((container != null) && ((container == closed) || (write && !container.writable))) {
+				this.containers.remove(docId);
+				closeContainer(container);
+				container = null;
+			}
+			if (container != null)
+				return container;
+			File containerFile = new File(this.folder, (docId + CONTAINER_FILE_SUFFIX));
+			if (!containerFile.exists()) {
+				if (!write)
+					return null;
+				this.folder.mkdirs();
+			}
+			container = new Container(containerFile, write);
+			this.containers.put(docId, container);
+			return container;
+		}
+	}
+	
+	/* A single container file. Reads go against an immutable snapshot of
+	 * the index and a mapping of the data section, so they need not lock;
+	 * appends are synchronized and replace both snapshots. */
+	private static class Container {
+		final boolean writable;
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private volatile HashMap index; // Integer page ID --> long[] {offset, length}
+		private long dataEnd;
+		private volatile MappedByteBuffer mappedData = null;
+		
+		Container(File containerFile, boolean writable) throws IOException {
+			this.writable = writable;
+			this.file = new RandomAccessFile(containerFile, (writable ? "rw" : "r"));
+			this.channel = this.file.getChannel();
+			try {
+				this.readIndex();
+			}
+			catch (IOException ioe) {
+				this.channel.close();
+				throw ioe;
+			}
+		}
+		
+		private void readIndex() throws IOException {
+			long size = this.channel.size();
+			
+			//	new file, write header (an empty file we only read from simply has no page images)
+			if (size == 0) {
+				this.index = new HashMap();
+				this.dataEnd = FILE_HEADER_SIZE;
+				if (!this.writable)
+					return;
+				ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+				header.putInt(FILE_MAGIC);
+				header.putInt(FILE_VERSION);
+				header.flip();
+				writeFully(this.channel, header, 0);
+				return;
+			}
+			
+			//	check header
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+			readFully(this.channel, header, 0);
+			header.flip();
+			if ((header.getInt() != FILE_MAGIC) || (header.getInt() != FILE_VERSION))
+				throw new IOException("Invalid page image container file");
+			
+			//	read index via trailer
+			if (size >= (FILE_HEADER_SIZE + TRAILER_SIZE)) {
+				ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+				readFully(this.channel, trailer, (size - TRAILER_SIZE));
+				trailer.flip();
+				long indexOffset = trailer.getLong();
+				int entryCount = trailer.getInt();
+				int magic = trailer.getInt();
+				if ((magic == TRAILER_MAGIC) && (indexOffset >= FILE_HEADER_SIZE) && (entryCount >= 0) && ((indexOffset + (((long) entryCount) * INDEX_ENTRY_SIZE) + TRAILER_SIZE) == size)) {
+					ByteBuffer indexData = ByteBuffer.allocate(entryCount * INDEX_ENTRY_SIZE);
+					readFully(this.channel, indexData, indexOffset);
+					indexData.flip();
+					HashMap index = new HashMap();
+					for (int e = 0; e < entryCount; e++) {
+						int pageId = indexData.getInt();
+						long offset = indexData.getLong();
+						int length = indexData.getInt();
+						index.put(new Integer(pageId), new long[] {offset, length});
+					}
+					this.index = index;
+					this.dataEnd = indexOffset;
+					return;
+				}
+			}
+			
+			//	trailer missing or broken, rebuild index from record headers
+			HashMap index = new HashMap();
+			long offset = FILE_HEADER_SIZE;
+			ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+			while ((offset + RECORD_HEADER_SIZE) <= size) {
+				recordHeader.clear();
+				readFully(this.channel, recordHeader, offset);
+				recordHeader.flip();
+				if (recordHeader.getInt() != RECORD_MAGIC)
+					break;
+				int pageId = recordHeader.getInt();
+				int length = recordHeader.getInt();
+				if ((length < 0) || ((offset + RECORD_HEADER_SIZE + length) > size))
+					break;
+				index.put(new Integer(pageId), new long[] {(offset + RECORD_HEADER_SIZE), length});
+				offset += (RECORD_HEADER_SIZE + length);
+			}
+			this.index = index;
+			this.dataEnd = offset;
+			
+			//	cut off whatever follows the last intact record, and write fresh index (unless we only read, leaving repair to the next write)
+			if (!this.writable)
+				return;
+			this.channel.truncate(this.dataEnd);
+			this.writeIndex(index, this.dataEnd);
+		}
+		
+		private void writeIndex(HashMap index, long indexOffset) throws IOException {
+			ByteBuffer indexData = ByteBuffer.allocate((index.size() * INDEX_ENTRY_SIZE) + TRAILER_SIZE);
+			for (Iterator pidit = index.keySet().iterator(); pidit.hasNext();) {
+				Integer pageId = ((Integer) pidit.next());
+				long[] entry = ((long[]) index.get(pageId));
+				indexData.putInt(pageId.intValue());
+				indexData.putLong(entry[0]);
+				indexData.putInt((int) entry[1]);
+			}
+			indexData.putLong(indexOffset);
+			indexData.putInt(index.size());
+			indexData.putInt(TRAILER_MAGIC);
+			indexData.flip();
+			writeFully(this.channel, indexData, indexOffset);
+		}
+		
+		long[] getIndexEntry(int pageId) {
+			return ((long[]) this.index.get(new Integer(pageId)));
+		}
+		
+		ByteBuffer getPageImageData(int pageId) throws IOException {
+			long[] entry = this.getIndexEntry(pageId);
+			if (entry == null)
+				return null;
+			long end = (entry[0] + entry[1]);
+			
+			//	data section too large to map as a whole, map individual record
+			if (end > Integer.MAX_VALUE)
+				return this.channel.map(FileChannel.MapMode.READ_ONLY, entry[0], entry[1]);
+			
+			//	get mapping of data section, re-mapping if data was appended since last mapping
+			MappedByteBuffer mappedData = this.mappedData;
+			if ((mappedData == null) || (mappedData.capacity() < end)) synchronized (this) {
+				mappedData = this.mappedData;
+				if ((mappedData == null) || (mappedData.capacity() < end)) {
+					mappedData = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(this.dataEnd, Integer.MAX_VALUE));
+					this.mappedData = mappedData;
+				}
+			}
+			
+			//	create view of page image data
+			ByteBuffer pageImageData = mappedData.duplicate();
+			pageImageData.limit((int) end);
+			pageImageData.position((int) entry[0]);
+			return pageImageData.slice();
+		}
+		
+		synchronized void appendPageImage(int pageId, ByteArrayOutputStream pageImageData) throws IOException {
+			
+			//	write record over old index
+			ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+			recordHeader.putInt(RECORD_MAGIC);
+			recordHeader.putInt(pageId);
+			recordHeader.putInt(pageImageData.size());
+			recordHeader.flip();
+			long recordOffset = this.dataEnd;
+			writeFully(this.channel, recordHeader, recordOffset);
+			writeFully(this.channel, ByteBuffer.wrap(pageImageData.toByteArray()), (recordOffset + RECORD_HEADER_SIZE));
+			
+			//	append updated index (copy on write, so reading threads see either old or new index)
+			HashMap index = new HashMap(this.index);
+			index.put(new Integer(pageId), new long[] {(recordOffset + RECORD_HEADER_SIZE), pageImageData.size()});
+			long dataEnd = (recordOffset + RECORD_HEADER_SIZE + pageImageData.size());
+			this.writeIndex(index, dataEnd);
+			this.dataEnd = dataEnd;
+			this.index = index;
+		}
+		
+		synchronized void close() throws IOException {
+			this.mappedData = null;
+			this.channel.close();
+			this.file.close();
+		}
+	}
+	
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, (position + buffer.position()));
+			if (read < 0)
+				throw new IOException("Unexpected end of page image container file");
+		}
+	}
+	
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer, (position + buffer.position()));
+	}
+	
+	/* Input stream reading from a byte buffer, e.g. a mapped file region */
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer data;
+		ByteBufferInputStream(ByteBuffer data) {
+			this.data = data;
+		}
+		public int read() throws IOException {
+			return (this.data.hasRemaining() ? (this.data.get() & 0xFF) : -1);
+		}
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!this.data.hasRemaining())
+				return -1;
+			len = Math.min(len, this.data.remaining());
+			this.data.get(b, off, len);
+			return len;
+		}
+		public long skip(long n) throws IOException {
+			int skip = ((int) Math.max(0, Math.min(n, this.data.remaining())));
+			this.data.position(this.data.position() + skip);
+			return skip;
+		}
+		public int available() throws IOException {
+			return this.data.remaining();
+		}
+	}
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitaet Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITAET KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util.imaging;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import de.uka.ipd.idaho.gamta.util.ProgressMonitor;
+import de.uka.ipd.idaho.gamta.util.imaging.Imaging.AnalysisImage;
+import de.uka.ipd.idaho.gamta.util.imaging.Imaging.ImagePartRectangle;
+
+/**
+ * Batch processor running Imaging.correctImage() on the pages of a document
+ * concurrently. Each page goes through decoding, wrapping, correction, and
+ * (optionally) encoding on a pool of worker threads, while results are handed
+ * to a listener strictly in page order, one at a time. To keep memory usage
+ * bounded, at most a fixed number of pages are in flight at any time,
+ * counting from when a page is taken from the input until its result has
+ * been delivered; fetching further pages from the input blocks until then.<br>
+ * The pages to correct can be provided as PageImage objects, as
+ * PageImageInputStreams, or as byte arrays holding page image data in the
+ * format written by PageImage.write(). The latter two are decoded on the
+ * worker threads. Page images provided as PageImage objects are corrected in
+ * place, i.e., the correction modifies their images; client code that needs
+ * the original images afterwards has to provide copies.<br>
+ * The corrected page images retain the original size and resolution of the
+ * input page images, and the white margins cut off in the correction are
+ * added to their edges, so coordinates referring to the original images
+ * continue to scale correctly.
+ * 
+ * @author sautter
+ */
+public class PageImageCorrector {
+	
+	/**
+	 * Listener receiving the results of page image correction. Calls to the
+	 * methods of this interface come in page order and never overlap, but
+	 * they are not necessarily issued by the same thread.
+	 * 
+	 * @author sautter
+	 */
+	public static interface CorrectionListener {
+		
+		/**
+		 * Receive a corrected page image.
+		 * @param pageIndex the index of the page in the input
+		 * @param pageImage the corrected page image
+		 * @param pageImageData the corrected page image in the format
+		 *            written by PageImage.write(), or null if encoding is
+		 *            switched off
+		 */
+		public abstract void pageCorrected(int pageIndex, PageImage pageImage, byte[] pageImageData);
+		
+		/**
+		 * Receive notification that a page image could not be decoded,
+		 * corrected, or encoded.
+		 * @param pageIndex the index of the page in the input
+		 * @param error the exception that occurred
+		 */
+		public abstract void pageFailed(int pageIndex, Exception error);
+	}
+	
+	private final int threads;
+	private final int maxPagesInFlight;
+	private final boolean encodeResults;
+	
+	/**
+	 * Constructor using as many threads as the Imaging parallelism, and
+	 * allowing twice as many pages in flight.
+	 * @param encodeResults encode the corrected page images?
+	 */
+	public PageImageCorrector(boolean encodeResults) {
+		this(Imaging.getParallelism(), (Imaging.getParallelism() * 2), encodeResults);
+	}
+	
+	/**
+	 * Constructor
+	 * @param threads the number of pages to correct concurrently
+	 * @param maxPagesInFlight the maximum number of pages taken from the
+	 *            input, but not yet delivered to the listener
+	 * @param encodeResults encode the corrected page images?
+	 */
+	public PageImageCorrector(int threads, int maxPagesInFlight, boolean encodeResults) {
+		if (threads < 1)
+			throw new IllegalArgumentException("The number of threads has to be 1 or greater.");
+		if (maxPagesInFlight < threads)
+			throw new IllegalArgumentException("The maximum number of pages in flight must be at least the number of threads.");
+		this.threads = threads;
+		this.maxPagesInFlight = maxPagesInFlight;
+		this.encodeResults = encodeResults;
+	}
+	
+	/**
+	 * Correct a list of page images. This method returns only after the
+	 * results for all pages have been handed to the argument listener.
+	 * @param pages the pages to correct
+	 * @param listener the listener to deliver the results to
+	 * @param psm a monitor object observing progress
+	 * @throws InterruptedException
+	 */
+	public void correctPages(List pages, CorrectionListener listener, ProgressMonitor psm) throws InterruptedException {
+		this.correctPages(pages.iterator(), pages.size(), listener, psm);
+	}
+	
+	/**
+	 * Correct a sequence of page images. This method returns only after the
+	 * results for all pages have been handed to the argument listener. The
+	 * argument iterator is only ever accessed by the calling thread, and only
+	 * while fewer than the maximum number of pages are in flight, so it can
+	 * load page images lazily.
+	 * @param pages an iterator over the pages to correct
+	 * @param listener the listener to deliver the results to
+	 * @param psm a monitor object observing progress
+	 * @throws InterruptedException
+	 */
+	public void correctPages(Iterator pages, CorrectionListener listener, ProgressMonitor psm) throws InterruptedException {
+		this.correctPages(pages, -1, listener, psm);
+	}
+	
+	private void correctPages(Iterator pages, int pageCount, CorrectionListener listener, ProgressMonitor psm) throws InterruptedException {
+		if (psm == null)
+			psm = ProgressMonitor.dummy;
+		
+		//	create worker threads, marked so the correction of each page runs single threaded
+		ExecutorService workers = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+			private int threadNumber = 0;
+			public Thread newThread(final Runnable r) {
+				Thread t = new Thread(new Runnable() {
+					public void run() {
+						Imaging.markWorkerThread();
+						r.run();
+					}
+				}, ("PageImageCorrector-" + this.threadNumber++));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		
+		//	hand out pages, blocking while too many are in flight
+		ResultDelivery delivery = new ResultDelivery(listener, new Semaphore(this.maxPagesInFlight), pageCount, psm);
+		int pageIndex = 0;
+		try {
+			while (pages.hasNext()) {
+				delivery.inFlight.acquire();
+				Object page = pages.next();
+				workers.execute(new PageCorrection(pageIndex++, page, this.encodeResults, delivery));
+			}
+			
+			//	wait for last results to be delivered
+			delivery.inFlight.acquire(this.maxPagesInFlight);
+		}
+		finally {
+			workers.shutdownNow();
+		}
+		
+		//	re-throw any exception or error thrown by the listener
+		if (delivery.listenerError instanceof RuntimeException)
+			throw ((RuntimeException) delivery.listenerError);
+		else if (delivery.listenerError instanceof Error)
+			throw ((Error) delivery.listenerError);
+	}
+	
+	private static class PageCorrection implements Runnable {
+		private final int pageIndex;
+		private Object page;
+		private final boolean encodeResult;
+		private final ResultDelivery delivery;
+		PageCorrection(int pageIndex, Object page, boolean encodeResult, ResultDelivery delivery) {
+			this.pageIndex = pageIndex;
+			this.page = page;
+			this.encodeResult = encodeResult;
+			this.delivery = delivery;
+		}
+		public void run() {
+			Object result;
+			try {
+				
+				//	decode page image
+				PageImage pageImage;
+				if (this.page instanceof PageImage)
+					pageImage = ((PageImage) this.page);
+				else if (this.page instanceof PageImageInputStream) {
+					PageImageInputStream piis = ((PageImageInputStream) this.page);
+					try {
+						pageImage = new PageImage(piis);
+					}
+					finally {
+						piis.close();
+					}
+				}
+				else if (this.page instanceof byte[])
+					pageImage = new PageImage(new PageImageInputStream(new ByteArrayInputStream((byte[]) this.page), null));
+				else throw new IllegalArgumentException("Cannot correct page of type " + ((this.page == null) ? "null" : this.page.getClass().getName()));
+				this.page = null; // release input right away
+				
+				//	wrap and correct page image (rotation keeps the image size)
+				AnalysisImage ai = Imaging.wrapImage(pageImage.image, null);
+				int width = pageImage.image.getWidth();
+				int height = pageImage.image.getHeight();
+				ImagePartRectangle contentBox = Imaging.correctImageContent(ai, pageImage.currentDpi, ProgressMonitor.silent);
+				BufferedImage correctedImage = contentBox.toImage().getImage();
+				
+				//	retain original size and resolution, and add cut off white margins to edges
+				PageImage correctedPageImage = new PageImage(correctedImage,
+						pageImage.originalWidth,
+						pageImage.originalHeight,
+						pageImage.originalDpi,
+						pageImage.currentDpi,
+						(pageImage.leftEdge + contentBox.getLeftCol()),
+						(pageImage.rightEdge + (width - contentBox.getRightCol())),
+						(pageImage.topEdge + contentBox.getTopRow()),
+						(pageImage.bottomEdge + (height - contentBox.getBottomRow())),
+						pageImage.source);
+				
+				//	encode corrected page image
+				byte[] correctedPageImageData = null;
+				if (this.encodeResult) {
+					ByteArrayOutputStream baos = new ByteArrayOutputStream();
+					correctedPageImage.write(baos);
+					correctedPageImageData = baos.toByteArray();
+				}
+				
+				result = new CorrectionResult(correctedPageImage, correctedPageImageData);
+			}
+			catch (Exception e) {
+				result = e;
+			}
+			catch (OutOfMemoryError oome) {
+				result = new IOException("Out of memory correcting page " + this.pageIndex);
+			}
+			
+			//	wrap any other error, as failing to deliver a result would leave correctPages() waiting forever
+			catch (Throwable t) {
+				result = new RuntimeException(("Error correcting page " + this.pageIndex + ": " + t.getMessage()), t);
+			}
+			this.delivery.deliver(this.pageIndex, result);
+		}
+	}
+	
+	private static class CorrectionResult {
+		final PageImage pageImage;
+		final byte[] pageImageData;
+		CorrectionResult(PageImage pageImage, byte[] pageImageData) {
+			this.pageImage = pageImage;
+			this.pageImageData = pageImageData;
+		}
+	}
+	
+	private static class ResultDelivery {
+		private final CorrectionListener listener;
+		final Semaphore inFlight;
+		private final int pageCount;
+		private final ProgressMonitor psm;
+		private final HashMap pendingResults = new HashMap();
+		private int nextPageIndex = 0;
+		private boolean delivering = false;
+		Throwable listenerError = null;
+		ResultDelivery(CorrectionListener listener, Semaphore inFlight, int pageCount, ProgressMonitor psm) {
+			this.listener = listener;
+			this.inFlight = inFlight;
+			this.pageCount = pageCount;
+			this.psm = psm;
+		}
+		void deliver(int pageIndex, Object result) {
+			synchronized (this) {
+				this.pendingResults.put(new Integer(pageIndex), result);
+				if (this.delivering)
+					return; // whoever is delivering will also deliver our result if it's next in line
+				this.delivering = true;
+			}
+			
+			//	deliver results in page order, outside the lock so other pages can complete meanwhile
+			while (true) {
+				int deliverPageIndex;
+				synchronized (this) {
+					deliverPageIndex = this.nextPageIndex;
+					result = this.pendingResults.remove(new Integer(deliverPageIndex));
+					if (result == null) {
+						this.delivering = false;
+						return;
+					}
+					this.nextPageIndex++;
+				}
+				try {
+					if (result instanceof CorrectionResult)
+						this.listener.pageCorrected(deliverPageIndex, ((CorrectionResult) result).pageImage, ((CorrectionResult) result).pageImageData);
+					else this.listener.pageFailed(deliverPageIndex, ((Exception) result));
+					this.psm.setInfo("Page " + deliverPageIndex + " corrected");
+					if (this.pageCount > 0)
+						this.psm.setProgress(((deliverPageIndex + 1) * 100) / this.pageCount);
+				}
+				catch (Throwable t) {
+					if (this.listenerError == null)
+						this.listenerError = t;
+				}
+				finally {
+					this.inFlight.release();
+				}
+			}
+		}
+	}
+}
@@ -27,6 +27,7 @@
  */
 package de.uka.ipd.idaho.gamta.util.imaging;
 
+import java.awt.image.BufferedImage;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -35,7 +36,8 @@ import java.io.OutputStream;
  * Wrapper for an output stream for writing data to be read by
  * PageImage.read(). This class writes the meta data to the wrapped stream,
  * and then awaits the actual image data written to it as to a regular
- * output stream.
+ * output stream, or via the writeImage() method, which also writes the
+ * codec header if the image is not encoded as plain PNG.
  * 
  * @author sautter
  */
@@ -78,6 +80,30 @@ public class PageImageOutputStream extends FilterOutputStream {
 		writeInt(out, piis.bottomEdge, 2);
 	}
 	
+	/**
+	 * Write the actual image after the meta data, as PNG by default, or with
+	 * the most suitable codec if compact encoding is switched on in
+	 * PageImage. This method does not close the stream.
+	 * @param image the image to write
+	 * @throws IOException
+	 */
+	public void writeImage(BufferedImage image) throws IOException {
+		this.writeImage(image, PageImage.getEncodingCodecName(image));
+	}
+	
+	/**
+	 * Write the actual image after the meta data, using a specific codec. If
+	 * the codec is the PNG codec, or if it cannot encode the argument image,
+	 * this method writes the image as plain PNG. This method does not close
+	 * the stream.
+	 * @param image the image to write
+	 * @param codecName the name of the codec to encode the image with
+	 * @throws IOException
+	 */
+	public void writeImage(BufferedImage image, String codecName) throws IOException {
+		PageImageCodec.writeImage(image, codecName, this.out);
+	}
+	
 	private static final void writeInt(OutputStream out, int theInt, int numBytes) throws IOException {
 		if (numBytes == 4)
 			out.write((theInt >>> 24) & 255);
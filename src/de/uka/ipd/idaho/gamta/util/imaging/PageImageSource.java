@@ -91,6 +91,30 @@ public interface PageImageSource extends ImagingConstants {
 	 */
 	public abstract PageImageInputStream getPageImageAsStream(String docId, int pageId) throws IOException;
 	
+	/**
+	 * A page image source decorating another page image source with a cache
+	 * of page images obtained from the latter. PageImage invalidates page
+	 * images in all registered caching decorators whenever it stores them via
+	 * its static storePageImage() methods, so they do not serve outdated page
+	 * images afterwards.
+	 * 
+	 * @author sautter
+	 */
+	public static interface CachingDecorator extends PageImageSource {
+		
+		/**
+		 * @return the wrapped page image source
+		 */
+		public abstract PageImageSource getSource();
+		
+		/**
+		 * Discard a page image from the cache, e.g. after it was changed in
+		 * the wrapped page image source.
+		 * @param name the name of the page image to discard
+		 */
+		public abstract void invalidate(String name);
+	}
+	
 	/**
 	 * Implementation of a page image source that leaves only two abstract
 	 * method to implement, namely the one-argument versions of
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitaet Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITAET KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util.imaging;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.uka.ipd.idaho.gamta.util.imaging.PageImageSource.AbstractPageImageSource;
+import de.uka.ipd.idaho.gamta.util.imaging.PageImageSource.CachingDecorator;
+
+/**
+ * Page image source decorating another page image source, loading page
+ * images ahead of time when client code requests the pages of a document in
+ * ascending order. In particular, whenever client code requests the page
+ * image right after the last one it requested from the same document, the
+ * next few page images are loaded and decoded in the background and held in
+ * a cache bounded by the number of bytes of the decoded images. This way,
+ * client code working through the pages of a document one by one can
+ * analyze one page while the next one is being loaded.<br>
+ * Any prefetched page image is handed out only once, to the first request
+ * for it, and removed from the cache right away, as client code is free to
+ * modify the page images it obtains. Requests for page images as streams
+ * are passed through to the wrapped page image source.<br>
+ * Page images stored via the static storePageImage() methods of PageImage
+ * are discarded from the cache automatically if the page image source is
+ * registered with PageImage. Client code that changes page images in the
+ * wrapped source by other means has to invalidate them via the invalidate()
+ * methods.
+ * 
+ * @author sautter
+ */
+public class PrefetchingPageImageSource extends AbstractPageImageSource implements CachingDecorator {
+	
+	private final PageImageSource source;
+	private final int prefetchPages;
+	private final ExecutorService prefetcher;
+	private volatile boolean closed = false;
+	
+	private final WeightedCache prefetched;
+	private final ConcurrentHashMap pending = new ConcurrentHashMap(); // page image name --> FutureTask
+	private final ConcurrentHashMap lastPageIds = new ConcurrentHashMap(); // doc ID --> Integer
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong prefetches = new AtomicLong();
+	
+	/**
+	 * Constructor using a single prefetch thread
+	 * @param source the page image source to wrap
+	 * @param prefetchPages the number of pages to load ahead
+	 * @param cacheBytes the maximum number of bytes of prefetched page images
+	 *            to hold in memory
+	 */
+	public PrefetchingPageImageSource(PageImageSource source, int prefetchPages, long cacheBytes) {
+		this(source, prefetchPages, cacheBytes, 1);
+	}
+	
+	/**
+	 * Constructor
+	 * @param source the page image source to wrap
+	 * @param prefetchPages the number of pages to load ahead
+	 * @param cacheBytes the maximum number of bytes of prefetched page images
+	 *            to hold in memory
+	 * @param threads the number of threads to use for prefetching
+	 */
+	public PrefetchingPageImageSource(PageImageSource source, int prefetchPages, long cacheBytes, int threads) {
+		this.source = source;
+		this.prefetchPages = prefetchPages;
+		this.prefetched = new WeightedCache(cacheBytes);
+		this.prefetcher = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			private int threadNumber = 0;
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, ("PageImagePrefetcher-" + this.threadNumber++));
+				t.setDaemon(true);
+				t.setPriority(Thread.NORM_PRIORITY - 1);
+				return t;
+			}
+		});
+	}
+	
+	/**
+	 * @return the wrapped page image source
+	 */
+	public PageImageSource getSource() {
+		return this.source;
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.imaging.PageImageSource#isPageImageAvailable(java.lang.String)
+	 */
+	public boolean isPageImageAvailable(String name) {
+		return (this.pending.containsKey(name) || this.source.isPageImageAvailable(name));
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.imaging.PageImageSource#getPageImageAsStream(java.lang.String)
+	 */
+	public PageImageInputStream getPageImageAsStream(String name) throws IOException {
+		this.pageRequested(name);
+		return this.source.getPageImageAsStream(name);
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.imaging.PageImageSource.AbstractPageImageSource#getPageImage(java.lang.String)
+	 */
+	public PageImage getPageImage(String name) throws IOException {
+		PageImage pi = this.getPrefetchedPageImage(name);
+		if (pi == null) {
+			this.misses.incrementAndGet();
+			pi = this.source.getPageImage(name);
+		}
+		else this.hits.incrementAndGet();
+		this.pageRequested(name);
+		return pi;
+	}
+	
+	private PageImage getPrefetchedPageImage(String name) {
+		
+		//	wait for prefetch if in progress
+		FutureTask prefetch = ((FutureTask) this.pending.get(name));
+		if (prefetch != null) try {
+			prefetch.get();
+		}
+		catch (ExecutionException ee) {
+			return null; // let caller load page image proper, and see the exception
+		}
+		catch (CancellationException ce) {
+			return null; // shut down in the meantime
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		
+		//	removing page image from cache makes sure we hand it out only once
+		return ((PageImage) this.prefetched.remove(name));
+	}
+	
+	private void pageRequested(String name) {
+		if (this.closed)
+			return;
+		int split = name.lastIndexOf('.');
+		if (split == -1)
+			return;
+		String docId = name.substring(0, split);
+		int pageId;
+		try {
+			pageId = Integer.parseInt(name.substring(split + 1));
+		}
+		catch (NumberFormatException nfe) {
+			return;
+		}
+		
+		//	check if pages requested in order
+		Integer lastPageId = ((Integer) this.lastPageIds.put(docId, new Integer(pageId)));
+		if ((lastPageId == null) || (lastPageId.intValue() != (pageId - 1)))
+			return;
+		
+		//	prefetch next pages (if not done before)
+		for (int p = 1; p <= this.prefetchPages; p++) {
+			final String prefetchName = PageImage.getPageImageName(docId, (pageId + p));
+			if (this.prefetched.get(prefetchName) != null)
+				continue;
+			final FutureTask[] self = {null};
+			FutureTask prefetch = new FutureTask(new Callable() {
+				public Object call() throws Exception {
+					try {
+						if (closed || !source.isPageImageAvailable(prefetchName))
+							return null;
+						PageImage pi = source.getPageImage(prefetchName);
+						if (pi == null)
+							return null;
+						
+						//	cache page image only if not invalidated while loading
+						synchronized (pending) {
+							if (pending.get(prefetchName) != self[0])
+								return null;
+							prefetched.putIfAbsent(prefetchName, pi, Imaging.getCacheWeight(pi.image));
+						}
+						prefetches.incrementAndGet();
+						return null;
+					}
+					finally {
+						pending.remove(prefetchName, self[0]);
+					}
+				}
+			});
+			self[0] = prefetch;
+			if (this.pending.putIfAbsent(prefetchName, prefetch) != null)
+				continue;
+			
+			//	we might have been closed in the meantime
+			if (this.closed) {
+				this.pending.remove(prefetchName, prefetch);
+				prefetch.cancel(false);
+				return;
+			}
+			try {
+				this.prefetcher.execute(prefetch);
+			}
+			catch (RejectedExecutionException ree) {
+				this.pending.remove(prefetchName, prefetch);
+				prefetch.cancel(false);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Discard a page image from the prefetch cache, e.g. after it was changed
+	 * in the wrapped page image source. If the page image is being prefetched
+	 * at the moment, the result is discarded as well.
+	 * @param name the name of the page image to discard
+	 */
+	public void invalidate(String name) {
+		synchronized (this.pending) {
+			FutureTask prefetch = ((FutureTask) this.pending.remove(name));
+			if (prefetch != null)
+				prefetch.cancel(false);
+			this.prefetched.remove(name);
+		}
+	}
+	
+	/**
+	 * Discard a page image from the prefetch cache, e.g. after it was changed
+	 * in the wrapped page image source.
+	 * @param docId the ID of the document the page image belongs to
+	 * @param pageId the ID of the page
+	 */
+	public void invalidate(String docId, int pageId) {
+		this.invalidate(PageImage.getPageImageName(docId, pageId));
+	}
+	
+	/**
+	 * @return the number of page image requests served by prefetched images
+	 */
+	public long getHitCount() {
+		return this.hits.get();
+	}
+	
+	/**
+	 * @return the number of page image requests passed through to the wrapped
+	 *            page image source
+	 */
+	public long getMissCount() {
+		return this.misses.get();
+	}
+	
+	/**
+	 * @return the number of page images prefetched
+	 */
+	public long getPrefetchCount() {
+		return this.prefetches.get();
+	}
+	
+	/**
+	 * Shut down the prefetching threads and discard any prefetched page
+	 * images. Page images being loaded at the moment are not interrupted,
+	 * but discarded once loaded. The page image source remains usable
+	 * afterwards, but no longer prefetches page images.
+	 */
+	public void close() {
+		this.closed = true;
+		this.prefetcher.shutdown(); // no interrupts, as these close NIO channels shared with the wrapped source
+		
+		//	cancel prefetches, so nobody waits for ones that will never run, and loads still running discard their results
+		synchronized (this.pending) {
+			for (Iterator pit = this.pending.values().iterator(); pit.hasNext();)
+				((FutureTask) pit.next()).cancel(false);
+			this.pending.clear();
+			this.prefetched.clear();
+		}
+	}
+}
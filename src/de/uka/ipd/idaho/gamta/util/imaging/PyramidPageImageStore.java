@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitaet Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITAET KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util.imaging;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import de.uka.ipd.idaho.gamta.util.imaging.PageImageStore.AbstractPageImageStore;
+
+/**
+ * Page image store decorating another page image store, storing each page
+ * image in several resolutions: the full resolution, half and a quarter of
+ * it, and a fixed thumbnail resolution. Client code can then request page
+ * images at a specific resolution, and get them from the closest stored
+ * level at or above that resolution, saving both the cost of loading the
+ * page image at full resolution and the cost of scaling it down.<br>
+ * The reduced resolution levels are stored in the wrapped page image store
+ * under the names of the full resolution page images, with '@' plus the
+ * resolution of the level appended to the document ID. The resolution of
+ * the full resolution level is stored alongside under the document ID with
+ * '@full' appended, as the header of a single-pixel page image, so it is
+ * available without reading the full resolution page image proper. Levels
+ * missing for page images stored before (or past) this class are generated
+ * and stored on the first request that needs them. However, page images
+ * replaced past this class may still be served from levels generated from
+ * their previous version, so replacing page images should go through this
+ * class. Requests that do not specify a resolution are answered with the
+ * full resolution page image, exactly as by the wrapped page image store.
+ * 
+ * @author sautter
+ */
+public class PyramidPageImageStore extends AbstractPageImageStore {
+	
+	/** the resolution of the thumbnail level, 24 DPI */
+	public static final int THUMBNAIL_DPI = 24;
+	
+	/* level name suffix for the resolution of the full resolution level */
+	private static final String FULL_LEVEL_SUFFIX = "full";
+	
+	private final PageImageStore store;
+	private final WeightedCache fullDpis = new WeightedCache(4096); // page image name --> Integer DPI of full resolution level
+	
+	/**
+	 * Constructor
+	 * @param store the page image store to wrap
+	 */
+	public PyramidPageImageStore(PageImageStore store) {
+		this.store = store;
+	}
+	
+	/**
+	 * @return the wrapped page image store
+	 */
+	public PageImageStore getStore() {
+		return this.store;
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.imaging.PageImageStore#getPriority()
+	 */
+	public int getPriority() {
+		return this.store.getPriority();
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.imaging.PageImageSource#isPageImageAvailable(java.lang.String)
+	 */
+	public boolean isPageImageAvailable(String name) {
+		return this.store.isPageImageAvailable(name);
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.imaging.PageImageSource#getPageImageAsStream(java.lang.String)
+	 */
+	public PageImageInputStream getPageImageAsStream(String name) throws IOException {
+		return this.store.getPageImageAsStream(name);
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.imaging.PageImageSource.AbstractPageImageSource#getPageImage(java.lang.String)
+	 */
+	public PageImage getPageImage(String name) throws IOException {
+		return this.store.getPageImage(name);
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.imaging.PageImageStore#storePageImage(java.lang.String, de.uka.ipd.idaho.gamta.util.imaging.PageImage)
+	 */
+	public boolean storePageImage(String name, PageImage pageImage) throws IOException {
+		
+		//	get resolution of any previous version before we replace it
+		int oldFullDpi = this.getFullDpi(name);
+		if (!this.store.storePageImage(name, pageImage))
+			return false;
+		
+		//	store new levels, as well as resolution they go with
+		this.fullDpis.remove(name);
+		PageImage[] levels = this.storeLevels(name, pageImage);
+		
+		//	overwrite any levels of previous version not replaced by new ones, as they are bound to be outdated
+		if ((oldFullDpi != -1) && (oldFullDpi != pageImage.currentDpi)) {
+			int[] levelDpis = getLevelDpis(pageImage.currentDpi);
+			int[] oldLevelDpis = getLevelDpis(oldFullDpi);
+			for (int o = 0; o < oldLevelDpis.length; o++) {
+				if (indexOf(levelDpis, oldLevelDpis[o]) != -1)
+					continue;
+				PageImage level = pageImage; // scale from lowest new level at or above old one
+				for (int l = 0; l < levels.length; l++) {
+					if (levels[l].currentDpi >= oldLevelDpis[o])
+						level = levels[l];
+				}
+				this.store.storePageImage(getLevelName(name, oldLevelDpis[o]), level.scaleToDpi(oldLevelDpis[o]));
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Obtain the image of a specific page in a specific document, at the
+	 * lowest stored resolution at or above a given one. If the page image is
+	 * not stored at any resolution at or above the argument one, this method
+	 * returns the full resolution page image.
+	 * @param name the unified single-string name of the sought page image
+	 * @param dpi the minimum resolution of the page image
+	 * @return the image of the page
+	 */
+	public PageImage getPageImage(String name, int dpi) throws IOException {
+		int fullDpi = this.getFullDpi(name);
+		if (fullDpi == -1)
+			return null;
+		int levelDpi = getLevelDpi(fullDpi, dpi);
+		if (levelDpi == fullDpi)
+			return this.store.getPageImage(name);
+		PageImage pi = this.store.getPageImage(getLevelName(name, levelDpi));
+		if (pi != null)
+			return pi;
+		
+		//	level missing, generate levels from full resolution page image
+		pi = this.store.getPageImage(name);
+		if (pi == null)
+			return null;
+		PageImage[] levels = this.storeLevels(name, pi);
+		for (int l = 0; l < levels.length; l++) {
+			if (levels[l].currentDpi == levelDpi)
+				return levels[l];
+		}
+		return pi;
+	}
+	
+	/**
+	 * Obtain the image of a specific page in a specific document, at the
+	 * lowest stored resolution at or above a given one. This method is a
+	 * shorthand for getPageImage(PageImage.getPageImageName(docId, pageId),
+	 * dpi).
+	 * @param docId the ID of the document the page belongs to
+	 * @param pageId the ID of the actual page
+	 * @param dpi the minimum resolution of the page image
+	 * @return the image of the page
+	 */
+	public PageImage getPageImage(String docId, int pageId, int dpi) throws IOException {
+		return this.getPageImage(PageImage.getPageImageName(docId, pageId), dpi);
+	}
+	
+	/**
+	 * Obtain an input stream for the image of a specific page in a specific
+	 * document, at the lowest stored resolution at or above a given one. If
+	 * the page image is not stored at any resolution at or above the argument
+	 * one, this method returns the full resolution page image.
+	 * @param name the unified single-string name of the sought page image
+	 * @param dpi the minimum resolution of the page image
+	 * @return an input stream for the image of the page
+	 */
+	public PageImageInputStream getPageImageAsStream(String name, int dpi) throws IOException {
+		int fullDpi = this.getFullDpi(name);
+		if (fullDpi == -1)
+			return null;
+		int levelDpi = getLevelDpi(fullDpi, dpi);
+		PageImageInputStream piis = null;
+		if (levelDpi != fullDpi) {
+			piis = this.store.getPageImageAsStream(getLevelName(name, levelDpi));
+			if (piis == null) {
+				PageImage pi = this.store.getPageImage(name);
+				if (pi != null)
+					this.storeLevels(name, pi);
+				piis = this.store.getPageImageAsStream(getLevelName(name, levelDpi));
+			}
+		}
+		return ((piis == null) ? this.store.getPageImageAsStream(name) : piis);
+	}
+	
+	private int getFullDpi(String name) throws IOException {
+		Integer fullDpi = ((Integer) this.fullDpis.get(name));
+		if (fullDpi != null)
+			return fullDpi.intValue();
+		
+		//	read resolution from header of stored full resolution level info
+		PageImageInputStream piis = this.store.getPageImageAsStream(getLevelName(name, FULL_LEVEL_SUFFIX));
+		if (piis != null) try {
+			this.fullDpis.putIfAbsent(name, new Integer(piis.currentDpi), 1);
+			return piis.currentDpi;
+		}
+		finally {
+			piis.close();
+		}
+		
+		//	read resolution from page image header (page image stored before or past us)
+		piis = this.store.getPageImageAsStream(name);
+		if (piis == null)
+			return -1;
+		try {
+			this.fullDpis.putIfAbsent(name, new Integer(piis.currentDpi), 1);
+			return piis.currentDpi;
+		}
+		finally {
+			piis.close();
+		}
+	}
+	
+	private PageImage[] storeLevels(String name, PageImage pageImage) throws IOException {
+		int[] levelDpis = getLevelDpis(pageImage.currentDpi);
+		PageImage[] levels = new PageImage[levelDpis.length];
+		PageImage level = pageImage;
+		for (int l = 0; l < levelDpis.length; l++) {
+			level = level.scaleToDpi(levelDpis[l]); // scale each level from the one above, which is cheaper than from full resolution
+			this.store.storePageImage(getLevelName(name, levelDpis[l]), level);
+			levels[l] = level;
+		}
+		
+		//	store resolution of full resolution level (only after levels proper, so it never points to missing ones)
+		this.store.storePageImage(getLevelName(name, FULL_LEVEL_SUFFIX), new PageImage(new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY), pageImage.originalWidth, pageImage.originalHeight, pageImage.originalDpi, pageImage.currentDpi, this));
+		this.fullDpis.putIfAbsent(name, new Integer(pageImage.currentDpi), 1);
+		return levels;
+	}
+	
+	/* Compute the resolutions of the reduced levels for a full resolution, in
+	 * descending order */
+	private static int[] getLevelDpis(int fullDpi) {
+		int halfDpi = (fullDpi / 2);
+		int quarterDpi = (fullDpi / 4);
+		if (quarterDpi > THUMBNAIL_DPI)
+			return new int[] {halfDpi, quarterDpi, THUMBNAIL_DPI};
+		else if (halfDpi > THUMBNAIL_DPI)
+			return new int[] {halfDpi, THUMBNAIL_DPI};
+		else if (fullDpi > THUMBNAIL_DPI)
+			return new int[] {THUMBNAIL_DPI};
+		else return new int[0];
+	}
+	
+	/* Find the lowest level resolution at or above a requested one */
+	private static int getLevelDpi(int fullDpi, int dpi) {
+		int[] levelDpis = getLevelDpis(fullDpi);
+		for (int l = (levelDpis.length - 1); l >= 0; l--) {
+			if (levelDpis[l] >= dpi)
+				return levelDpis[l];
+		}
+		return fullDpi;
+	}
+	
+	/* Find a resolution in an array of level resolutions */
+	private static int indexOf(int[] levelDpis, int dpi) {
+		for (int l = 0; l < levelDpis.length; l++) {
+			if (levelDpis[l] == dpi)
+				return l;
+		}
+		return -1;
+	}
+	
+	/* Generate the name of a reduced resolution level of a page image */
+	private static String getLevelName(String name, int dpi) {
+		return getLevelName(name, ("" + dpi));
+	}
+	private static String getLevelName(String name, String level) {
+		int split = name.lastIndexOf('.');
+		if (split == -1)
+			return (name + "@" + level);
+		return (name.substring(0, split) + "@" + level + name.substring(split));
+	}
+}
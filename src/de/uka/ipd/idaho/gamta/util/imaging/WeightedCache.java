@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitaet Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITAET KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util.imaging;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe cache bounded by the total weight of its entries rather than by
+ * their number. Client code specifies the weight of each entry when adding
+ * it, usually as an estimate of the number of bytes the cached object
+ * occupies. Lookups do not block. If adding an entry pushes the total weight
+ * over the limit, the least recently used entries are evicted until the
+ * total weight is back within the limit. To keep lookups free of locks, the
+ * eviction order is kept in a queue ordered by insertion, and entries used
+ * since they were queued get a second chance at the end of the queue rather
+ * than being evicted, which approximates least recently used order at a
+ * constant cost per evicted entry. Entries with string keys are
+ * additionally indexed by their key, so all entries whose keys start with a
+ * specific prefix can be removed without scanning the whole cache.
+ * 
+ * @author sautter
+ */
+public class WeightedCache {
+	
+	private static class CacheEntry {
+		final Object key;
+		final Object value;
+		volatile long weight; // changed only while holding the entry's monitor
+		boolean removed = false; // guarded by the entry's monitor
+		volatile long lastAccess;
+		long queuedAccess; // value of lastAccess when last (re)queued for eviction, guarded by eviction lock
+		CacheEntry(Object key, Object value, long weight, long lastAccess) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+			this.lastAccess = lastAccess;
+		}
+	}
+	
+	private final ConcurrentHashMap entries = new ConcurrentHashMap();
+	private final TreeMap prefixIndex = new TreeMap();
+	private final LinkedHashMap evictionQueue = new LinkedHashMap();
+	private final Object evictionLock = new Object();
+	
+	private final AtomicLong accessClock = new AtomicLong();
+	private final AtomicLong weight = new AtomicLong();
+	private volatile long maxWeight;
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	
+	/**
+	 * Constructor
+	 * @param maxWeight the maximum total weight of the cached entries
+	 */
+	public WeightedCache(long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+	
+	/**
+	 * Retrieve the object cached for a given key. This method does not block.
+	 * @param key the key to look up
+	 * @return the object cached for the argument key, or null if there is none
+	 */
+	public Object get(Object key) {
+		CacheEntry ce = ((CacheEntry) this.entries.get(key));
+		if (ce == null) {
+			this.misses.incrementAndGet();
+			return null;
+		}
+		ce.lastAccess = this.accessClock.incrementAndGet();
+		this.hits.incrementAndGet();
+		return ce.value;
+	}
+	
+	/**
+	 * Add an object to the cache, unless some other object is already cached
+	 * for the argument key. If the argument weight exceeds the maximum weight
+	 * of the cache all by itself, the object is not cached at all.
+	 * @param key the key to cache the object for
+	 * @param value the object to cache
+	 * @param weight the weight of the object
+	 * @return the object previously cached for the argument key, or null if
+	 *            there was none
+	 */
+	public Object putIfAbsent(Object key, Object value, long weight) {
+		if (weight > this.maxWeight)
+			return null;
+		CacheEntry ce = new CacheEntry(key, value, weight, this.accessClock.incrementAndGet());
+		CacheEntry oldCe = ((CacheEntry) this.entries.putIfAbsent(key, ce));
+		if (oldCe != null) {
+			oldCe.lastAccess = ce.lastAccess;
+			return oldCe.value;
+		}
+		this.weight.addAndGet(weight);
+		if (key instanceof String) synchronized (this.prefixIndex) {
+			if (this.entries.get(key) == ce)
+				this.prefixIndex.put(key, ce);
+		}
+		synchronized (this.evictionLock) {
+			if (this.entries.get(key) == ce) {
+				ce.queuedAccess = ce.lastAccess;
+				this.evictionQueue.put(key, ce);
+			}
+		}
+		if (this.weight.get() > this.maxWeight)
+			this.evict();
+		return null;
+	}
+	
+	/**
+	 * Remove the object cached for a given key.
+	 * @param key the key to remove the cached object for
+	 * @return the object removed from the cache, or null if there was none
+	 */
+	public Object remove(Object key) {
+		CacheEntry ce = ((CacheEntry) this.entries.get(key));
+		return (((ce != null) && this.remove(ce)) ? ce.value : null);
+	}
+	
+	private boolean remove(CacheEntry ce) {
+		synchronized (this.evictionLock) {
+			if (this.evictionQueue.get(ce.key) == ce)
+				this.evictionQueue.remove(ce.key);
+		}
+		return this.removeEntry(ce);
+	}
+	
+	private boolean removeEntry(CacheEntry ce) {
+		if (!this.entries.remove(ce.key, ce))
+			return false;
+		synchronized (ce) {
+			ce.removed = true;
+			this.weight.addAndGet(-ce.weight);
+		}
+		if (ce.key instanceof String) synchronized (this.prefixIndex) {
+			if (this.prefixIndex.get(ce.key) == ce)
+				this.prefixIndex.remove(ce.key);
+		}
+		return true;
+	}
+	
+	/**
+	 * Change the weight of a cached object, e.g. after the object grew by
+	 * computing some data on demand. The weight only changes if the argument
+	 * object is still cached for the argument key. If the change pushes the
+	 * total weight over the limit, the least recently used objects are
+	 * evicted.
+	 * @param key the key the object is cached for
+	 * @param value the object whose weight to change
+	 * @param weight the new weight of the object
+	 * @return true if the weight was changed, false if the argument object is
+	 *            not cached for the argument key
+	 */
+	public boolean setWeight(Object key, Object value, long weight) {
+		CacheEntry ce = ((CacheEntry) this.entries.get(key));
+		if ((ce == null) || (ce.value != value))
+			return false;
+		synchronized (ce) {
+			if (ce.removed)
+				return false;
+			this.weight.addAndGet(weight - ce.weight);
+			ce.weight = weight;
+		}
+		if (this.weight.get() > this.maxWeight)
+			this.evict();
+		return true;
+	}
+	
+	/**
+	 * Remove all objects whose keys start with a given prefix. This method
+	 * only affects objects cached for string keys.
+	 * @param keyPrefix the prefix of the keys to remove the cached objects for
+	 * @return the number of objects removed
+	 */
+	public int removePrefix(String keyPrefix) {
+		CacheEntry[] prefixEntries;
+		synchronized (this.prefixIndex) {
+			SortedMap prefixMap = this.prefixIndex.tailMap(keyPrefix);
+			ArrayList prefixEntryList = new ArrayList();
+			for (Iterator kit = prefixMap.keySet().iterator(); kit.hasNext();) {
+				String key = ((String) kit.next());
+				if (!key.startsWith(keyPrefix))
+					break;
+				prefixEntryList.add(prefixMap.get(key));
+			}
+			prefixEntries = ((CacheEntry[]) prefixEntryList.toArray(new CacheEntry[prefixEntryList.size()]));
+		}
+		int removed = 0;
+		for (int e = 0; e < prefixEntries.length; e++) {
+			if (this.remove(prefixEntries[e]))
+				removed++;
+		}
+		return removed;
+	}
+	
+	/**
+	 * Remove all objects from the cache.
+	 */
+	public void clear() {
+		for (Iterator eit = this.entries.values().iterator(); eit.hasNext();)
+			this.remove((CacheEntry) eit.next());
+	}
+	
+	private void evict() {
+		synchronized (this.evictionLock) {
+			long excess = (this.weight.get() - this.maxWeight);
+			if (excess <= 0)
+				return;
+			
+			//	walk queue from head, re-queueing entries used since they were queued, and collecting the others for eviction until we're back within limits
+			ArrayList victims = new ArrayList();
+			ArrayList requeue = new ArrayList();
+			for (int pass = 0; (pass < 2) && (excess > 0); pass++) {
+				for (Iterator eit = this.evictionQueue.values().iterator(); eit.hasNext() && (excess > 0);) {
+					CacheEntry ce = ((CacheEntry) eit.next());
+					eit.remove();
+					long lastAccess = ce.lastAccess;
+					if ((pass == 0) && (lastAccess != ce.queuedAccess)) {
+						ce.queuedAccess = lastAccess;
+						requeue.add(ce);
+					}
+					else {
+						victims.add(ce);
+						excess -= ce.weight;
+					}
+				}
+				for (int e = 0; e < requeue.size(); e++) {
+					CacheEntry ce = ((CacheEntry) requeue.get(e));
+					this.evictionQueue.put(ce.key, ce);
+				}
+				requeue.clear();
+			}
+			
+			//	evict collected entries (we've already removed them from the queue)
+			for (int e = 0; e < victims.size(); e++) {
+				if (this.removeEntry((CacheEntry) victims.get(e)))
+					this.evictions.incrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * @return the maximum total weight of the cached objects
+	 */
+	public long getMaxWeight() {
+		return this.maxWeight;
+	}
+	
+	/**
+	 * Set the maximum total weight of the cached objects. If the current total
+	 * weight exceeds the argument limit, the least recently used objects are
+	 * evicted right away.
+	 * @param maxWeight the maximum total weight of the cached objects
+	 */
+	public void setMaxWeight(long maxWeight) {
+		this.maxWeight = maxWeight;
+		if (this.weight.get() > this.maxWeight)
+			this.evict();
+	}
+	
+	/**
+	 * @return the total weight of the cached objects
+	 */
+	public long getWeight() {
+		return this.weight.get();
+	}
+	
+	/**
+	 * @return the number of cached objects
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+	
+	/**
+	 * @return the number of lookups that found a cached object
+	 */
+	public long getHitCount() {
+		return this.hits.get();
+	}
+	
+	/**
+	 * @return the number of lookups that did not find a cached object
+	 */
+	public long getMissCount() {
+		return this.misses.get();
+	}
+	
+	/**
+	 * @return the number of objects evicted due to the weight limit
+	 */
+	public long getEvictionCount() {
+		return this.evictions.get();
+	}
+	
+	/**
+	 * Reset the hit, miss, and eviction counters to zero.
+	 */
+	public void resetStatistics() {
+		this.hits.set(0);
+		this.misses.set(0);
+		this.evictions.set(0);
+	}
+	
+	public String toString() {
+		return ("WeightedCache[entries=" + this.entries.size() + ", weight=" + this.weight.get() + "/" + this.maxWeight + ", hits=" + this.hits.get() + ", misses=" + this.misses.get() + ", evictions=" + this.evictions.get() + "]");
+	}
+}
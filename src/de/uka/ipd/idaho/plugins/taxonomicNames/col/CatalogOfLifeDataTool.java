@@ -261,6 +261,8 @@ public class CatalogOfLifeDataTool implements TaxonomicNameConstants {
 			System.out.println("index: create the index files from the data files, factoring in any");
 			System.out.println("       custom tile boundaries specified in any indexTiling.tsv file");
 			System.out.println("       found next to the data files");
+			System.out.println("compile: create the binary forms of the data and index files, which");
+			System.out.println("         load without any parsing, as well as the name index");
 			System.out.println("pack-z: zip up all the data and index files, also including a meta.txt");
 			System.out.println("        descriptor file");
 			System.out.println("pack-w: hash-rename all the data and index files for wed-based updates");
@@ -390,6 +392,20 @@ public class CatalogOfLifeDataTool implements TaxonomicNameConstants {
 				System.out.println("of the individual index files, this command also produces the");
 				System.out.println("index.tiles.txt meta file");
 			}
+			else if ("compile".equalsIgnoreCase(command)) {
+				System.out.println("'compile <dwcaFolder>': create the binary forms of the data and index");
+				System.out.println("files, which CoL-Local loads in bulk without any parsing, and in");
+				System.out.println("preference to the TSV forms");
+				System.out.println("");
+				System.out.println("<dwcaFolder>: the path of the folder the data files are located in");
+				System.out.println("");
+				System.out.println("This command fails with an error if no data.tiles.txt or no");
+				System.out.println("index.tiles.txt is found; the binary files go next to the TSV files,");
+				System.out.println("with the '.txt' file extension replaced by '.bin'; on top of this,");
+				System.out.println("the command produces the name index in " + CatalogOfLifeLocal.NAME_INDEX_FILE_NAME + ", a");
+				System.out.println("compressed trie over all index entries that CoL-Local uses for");
+				System.out.println("name lookups in preference to the individual index files");
+			}
 			else if ("pack-z".equalsIgnoreCase(command)) {
 				System.out.println("'pack-z <dwcaFolder>': zip up all the data and index files, also");
 				System.out.println("including a meta.txt descriptor file");
@@ -454,6 +470,8 @@ public class CatalogOfLifeDataTool implements TaxonomicNameConstants {
 			analyzeData(sourcePath);
 		else if ("index".equalsIgnoreCase(command))
 			index(sourcePath);
+		else if ("compile".equalsIgnoreCase(command))
+			compile(sourcePath);
 		else if ("pack-z".equalsIgnoreCase(command))
 			pack(sourcePath, destPath, true);
 		else if ("pack-w".equalsIgnoreCase(command))
@@ -3478,6 +3496,88 @@ Filter/cleanup changes:
 		itlBw.close();
 		System.out.println("Finished index tile list with " + indexTileListLines.size() + " entries");
 	}
+	private static void compile(String dwcaFolder) throws Exception {
+		compile(new File(dwcaFolder));
+	}
+	private static void compile(File dwcaFolder) throws Exception {
+		
+		//	compile data tiles
+		File dataTileFile = new File(dwcaFolder, "data.tiles.txt");
+		BufferedReader dtBr = new BufferedReader(new InputStreamReader(new BufferedInputStream(new FileInputStream(dataTileFile)), "UTF-8"));
+		for (String dtl; (dtl = dtBr.readLine()) != null;) {
+			String[] tileData = dtl.split("\\t");
+			if (tileData.length < 3)
+				continue;
+			int minId = Integer.parseInt(tileData[1], 16);
+			int maxId = Integer.parseInt(tileData[2], 16);
+			File binFile = new File(dwcaFolder, CatalogOfLifeLocal.getBinaryTileFileName(tileData[0]));
+			InputStream tsvIn = new BufferedInputStream(new FileInputStream(new File(dwcaFolder, tileData[0])));
+			try {
+				OutputStream binOut = new FileOutputStream(binFile);
+				try {
+					CatalogOfLifeLocal.compileDataTile(tsvIn, minId, maxId, binOut);
+				}
+				finally {
+					binOut.close();
+				}
+			}
+			finally {
+				tsvIn.close();
+			}
+			System.out.println(tileData[0] + " compiled to " + binFile.getName());
+		}
+		dtBr.close();
+		
+		//	compile index tiles
+		File indexTileFile = new File(dwcaFolder, "index.tiles.txt");
+		ArrayList indexTileNames = new ArrayList();
+		BufferedReader itBr = new BufferedReader(new InputStreamReader(new BufferedInputStream(new FileInputStream(indexTileFile)), "UTF-8"));
+		for (String itl; (itl = itBr.readLine()) != null;) {
+			String[] tileData = itl.split("\\t");
+			if (tileData.length < 3)
+				continue;
+			File binFile = new File(dwcaFolder, CatalogOfLifeLocal.getBinaryTileFileName(tileData[0]));
+			InputStream tsvIn = new BufferedInputStream(new FileInputStream(new File(dwcaFolder, tileData[0])));
+			try {
+				OutputStream binOut = new FileOutputStream(binFile);
+				try {
+					CatalogOfLifeLocal.compileIndexTile(tsvIn, binOut);
+				}
+				finally {
+					binOut.close();
+				}
+			}
+			finally {
+				tsvIn.close();
+			}
+			System.out.println(tileData[0] + " compiled to " + binFile.getName());
+			indexTileNames.add(tileData[0]);
+		}
+		itBr.close();
+		
+		//	compile name index over all index tiles
+		InputStream[] tsvIns = new InputStream[indexTileNames.size()];
+		File nameIndexFile = new File(dwcaFolder, CatalogOfLifeLocal.NAME_INDEX_FILE_NAME);
+		try {
+			for (int t = 0; t < indexTileNames.size(); t++)
+				tsvIns[t] = new BufferedInputStream(new FileInputStream(new File(dwcaFolder, ((String) indexTileNames.get(t)))));
+			OutputStream niOut = new BufferedOutputStream(new FileOutputStream(nameIndexFile));
+			try {
+				CatalogOfLifeLocal.compileNameIndex(((String[]) indexTileNames.toArray(new String[indexTileNames.size()])), tsvIns, niOut);
+			}
+			finally {
+				niOut.close();
+			}
+		}
+		finally {
+			for (int t = 0; t < tsvIns.length; t++) {
+				if (tsvIns[t] != null)
+					tsvIns[t].close();
+			}
+		}
+		System.out.println(indexTileNames.size() + " index tiles compiled to " + nameIndexFile.getName());
+	}
+	
 	private static String[] defaultIndexTileStarts = {"0", "a", "an", "b", "c", "ci", "d", "e", "f", "g", "h", "i", "j", "k", "l", "m", "mf", "n", "o", "p", "pf", "pr", "q", "r", "s", "sm", "t", "u", "v", "w", "x", "y", "z"};
 	private static String[] getIndexTileStarts(File dwcaFolder) throws Exception {
 		File indexTileStartFile = new File(dwcaFolder, "indexTiling.tsv");
@@ -3556,6 +3656,7 @@ Filter/cleanup changes:
 			tileFileHashes.put(dtFileName, dtFileHash);
 			tileFileNames.add(dtFileName);
 			System.out.println(dtFileName + " hashed");
+			addBinaryFile(dwcaFolder, CatalogOfLifeLocal.getBinaryTileFileName(dtFileName), dtFile, metaTxtLines, tileFileHashes, tileFileNames);
 		}
 		dtBr.close();
 		
@@ -3574,8 +3675,10 @@ Filter/cleanup changes:
 			tileFileHashes.put(itFileName, itFileHash);
 			tileFileNames.add(itFileName);
 			System.out.println(itFileName + " hashed");
+			addBinaryFile(dwcaFolder, CatalogOfLifeLocal.getBinaryTileFileName(itFileName), itFile, metaTxtLines, tileFileHashes, tileFileNames);
 		}
 		itBr.close();
+		addBinaryFile(dwcaFolder, CatalogOfLifeLocal.NAME_INDEX_FILE_NAME, indexTileFile, metaTxtLines, tileFileHashes, tileFileNames);
 		
 		//	create ZIP ...
 		if (zip) {
@@ -3654,6 +3757,20 @@ Filter/cleanup changes:
 			System.out.println(outFolder.getAbsolutePath() + " finished");
 		}
 	}
+	private static void addBinaryFile(File dwcaFolder, String binFileName, File tsvFile, ArrayList metaTxtLines, HashMap tileFileHashes, ArrayList tileFileNames) throws Exception {
+		File binFile = new File(dwcaFolder, binFileName);
+		if (!binFile.exists())
+			return;
+		if (binFile.lastModified() < tsvFile.lastModified()) {
+			System.out.println(binFileName + " ignored as outdated, use 'compile' to update");
+			return;
+		}
+		String binFileHash = computeHash(binFile);
+		metaTxtLines.add(binFileName + "\t" + binFileHash + "\t" + binFile.lastModified());
+		tileFileHashes.put(binFileName, binFileHash);
+		tileFileNames.add(binFileName);
+		System.out.println(binFileName + " hashed");
+	}
 	private static String computeHash(File file) throws Exception {
 		BufferedInputStream fin = new BufferedInputStream(new FileInputStream(file));
 		byte[] buffer = new byte[1024];
@@ -3670,6 +3787,7 @@ Filter/cleanup changes:
 		unzip(dwca, dwcaFolder);
 		distill(dwcaFolder);
 		index(dwcaFolder);
+		compile(dwcaFolder);
 		pack(dwcaFolder, destPath, zip);
 	}
 	
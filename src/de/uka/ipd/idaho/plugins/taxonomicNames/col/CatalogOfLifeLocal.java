@@ -29,14 +29,24 @@ package de.uka.ipd.idaho.plugins.taxonomicNames.col;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -44,6 +54,9 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Properties;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -143,8 +156,9 @@ public class CatalogOfLifeLocal implements TaxonomicNameConstants {
 	private AnalyzerDataProvider dataProvider;
 	private DataTile higherTile;
 	private DataTileProxy[] speciesTiles;
-	private DataTileProxy lastSpeciesTile;
+	private TileCache speciesTileCache;
 	private IndexTileProxy[] indexTiles;
+	private TileCache indexTileCache;
 	private CatalogOfLifeLocal(AnalyzerDataProvider dataProvider) throws IOException {
 		this.dataProvider = dataProvider;
 		
@@ -181,6 +195,7 @@ public class CatalogOfLifeLocal implements TaxonomicNameConstants {
 			if (this.speciesTiles[t].minId <= prevTile.maxId)
 				throw new IllegalArgumentException("Data tiles must not overlap in their ID ranges, but tiles " + prevTile + " and " + this.speciesTiles[t] + " are");
 		}
+		this.speciesTileCache = new TileCache("data", this.speciesTiles);
 		
 		ArrayList indexTiles = new ArrayList();
 		BufferedReader itBr = new BufferedReader(new InputStreamReader(getInputStream("index.tiles.txt"), "UTF-8"));
@@ -202,13 +217,10 @@ public class CatalogOfLifeLocal implements TaxonomicNameConstants {
 			if (compareStringBytes(this.indexTiles[t].minStr, 0, this.indexTiles[t].minStr.length, prevTile.maxStr, 0, prevTile.maxStr.length, true) < 0)
 				throw new IllegalArgumentException("Index tiles must not overlap in their term ranges, but tiles " + prevTile + " and " + this.indexTiles[t] + " are");
 		}
+		this.indexTileCache = new TileCache("index", this.indexTiles);
 	}
 	
-	private int maxSimultaneousSpeciesTiles = -1;
-	private int speciesTileUseNumber = 0;
-	synchronized DataTile getDataTileForId(int id) {
-		if ((this.lastSpeciesTile != null) && this.lastSpeciesTile.containsRecord(id))
-			return this.lastSpeciesTile.getTile();
+	DataTile getDataTileForId(int id) {
 		if (this.higherTile.containsRecord(id))
 			return this.higherTile;
 		int low = 0;
@@ -219,20 +231,17 @@ public class CatalogOfLifeLocal implements TaxonomicNameConstants {
 				high = (mid - 1);
 			else if (this.speciesTiles[mid].maxId < id)
 				low = (mid + 1);
-			else {
-				this.lastSpeciesTile = this.speciesTiles[mid];
-				this.lastSpeciesTile.lastTileUseNumber = this.speciesTileUseNumber++;
-				return this.lastSpeciesTile.getTile();
-			}
+			else return this.speciesTiles[mid].getTile();
 		}
 		return null;
 	}
 	
-	private CountingSet descendantTileCounts = null;
+	private volatile CountingSet descendantTileCounts = null;
 	int getDescendantTileCount(int id) {
-		if (this.descendantTileCounts == null) {
+		CountingSet descendantTileCounts = this.descendantTileCounts;
+		if (descendantTileCounts == null) {
 			System.out.println("COLLECTING DESCENDANT TILE COUNTS:");
-			this.descendantTileCounts = new CountingSet(new HashMap());
+			descendantTileCounts = new CountingSet(new HashMap());
 			for (int t = 0; t < this.speciesTiles.length; t++) {
 //				System.out.println(" - " + this.speciesTiles[t].fileName);
 				String tileRootEpithet = this.speciesTiles[t].fileName;
@@ -247,17 +256,16 @@ public class CatalogOfLifeLocal implements TaxonomicNameConstants {
 //				System.out.println("   ==> " + tileRootId);
 				for (; 0 < tileRootId; tileRootId = this.higherTile.getParentId(tileRootId)) {
 //					System.out.println("   - counting " + this.higherTile.getEpithet(tileRootId));
-					this.descendantTileCounts.add(new Integer(tileRootId));
+					descendantTileCounts.add(new Integer(tileRootId));
 				}
 			}
-			System.out.println("DESCENDANT TILE COUNTS: " + this.descendantTileCounts);
+			System.out.println("DESCENDANT TILE COUNTS: " + descendantTileCounts);
+			this.descendantTileCounts = descendantTileCounts; // publish only when complete
 		}
-		return this.descendantTileCounts.getCount(new Integer(id));
+		return descendantTileCounts.getCount(new Integer(id));
 	}
 	
-	private int maxSimultaneousIndexTiles = -1;
-	private int indexTileUseNumber = 0;
-	synchronized IndexTile getIndexTileForString(byte[] str) {
+	IndexTile getIndexTileForString(byte[] str) {
 		int low = 0;
 		int high = (this.indexTiles.length - 1);
 		while (low <= high) {
@@ -266,10 +274,7 @@ public class CatalogOfLifeLocal implements TaxonomicNameConstants {
 				high = (mid - 1);
 			else if (compareStringBytes(this.indexTiles[mid].maxStr, 0, this.indexTiles[mid].maxStr.length, str, 0, str.length, true) < 0)
 				low = (mid + 1);
-			else {
-				this.indexTiles[mid].lastTileUseNumber = this.indexTileUseNumber++;
-				return this.indexTiles[mid].getTile();
-			}
+			else return this.indexTiles[mid].getTile();
 		}
 		return null;
 	}
@@ -406,17 +411,331 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 		return epithet;
 	}
 	
-	private static class DataTileProxy implements Comparable {
+	private static abstract class TileProxy {
+		final String fileName;
+		final AtomicReference tile = new AtomicReference();
+		final AtomicInteger frequency = new AtomicInteger();
+		volatile long lastAccess = 0;
+		long tileBytes = 0; // guarded by tile cache
+		TileProxy(String fileName) {
+			this.fileName = fileName;
+		}
+		boolean isTileLoaded() {
+			return (this.tile.get() != null);
+		}
+		abstract Object loadTile();
+		abstract long getTileBytes(Object tile);
+	}
+	
+	/**
+	 * Cache of the data or index tiles currently held in memory. The cache is
+	 * bounded by the total number of bytes the loaded tiles occupy, and
+	 * optionally by the number of tiles. Lookups of loaded tiles do not block.
+	 * The most recently loaded tile is always retained. When the next tile is
+	 * loaded, the former only stays in memory if it has been asked for more
+	 * often than each of the least recently used tiles that have to make room
+	 * for it; this keeps tiles used only once in a while from displacing the
+	 * frequently used ones. Access frequencies are halved at regular
+	 * intervals, so tiles that were popular a long time ago eventually make
+	 * way as well. The statistics methods provide the numbers required to
+	 * monitor and tune the cache.
+	 * 
+	 * @author sautter
+	 */
+	public static class TileCache {
+		private static final int MAX_FREQUENCY = 15;
+		private final String tileType;
+		private final TileProxy[] tiles;
+		private final int agingInterval;
+		private final AtomicInteger agingCountdown;
+		
+		private volatile long maxBytes = -1;
+		private volatile int maxTiles = -1;
+		private volatile boolean pinned = false;
+		private TileProxy windowTile = null;
+		private long reservedBytes = 0;
+		private final AtomicLong bytes = new AtomicLong();
+		private final AtomicLong accessClock = new AtomicLong();
+		
+		private final AtomicLong hits = new AtomicLong();
+		private final AtomicLong misses = new AtomicLong();
+		private final AtomicLong loadTime = new AtomicLong();
+		private final AtomicLong evictions = new AtomicLong();
+		private final AtomicLong rejections = new AtomicLong();
+		
+		TileCache(String tileType, TileProxy[] tiles) {
+			this.tileType = tileType;
+			this.tiles = tiles;
+			this.agingInterval = Math.max(100, (this.tiles.length * 10));
+			this.agingCountdown = new AtomicInteger(this.agingInterval);
+		}
+		
+		Object getTile(TileProxy tp) {
+			tp.lastAccess = this.accessClock.incrementAndGet();
+			this.countAccess(tp);
+			Object tile = tp.tile.get();
+			if (tile != null) {
+				this.hits.incrementAndGet();
+				return tile;
+			}
+			synchronized (tp) { // lock only this very tile, so concurrent lookups load it only once, without blocking lookups in other tiles
+				tile = tp.tile.get();
+				if (tile != null) {
+					this.hits.incrementAndGet();
+					return tile;
+				}
+				this.misses.incrementAndGet();
+				long loadStart = System.currentTimeMillis();
+				tile = tp.loadTile();
+				this.loadTime.addAndGet(System.currentTimeMillis() - loadStart);
+				if (tile != null)
+					tile = this.admit(tp, tile, tp.getTileBytes(tile));
+				return tile;
+			}
+		}
+		
+		private void countAccess(TileProxy tp) {
+			for (int f; (f = tp.frequency.get()) < MAX_FREQUENCY;) {
+				if (tp.frequency.compareAndSet(f, (f + 1)))
+					break;
+			}
+			if (this.agingCountdown.decrementAndGet() > 0)
+				return;
+			this.agingCountdown.set(this.agingInterval);
+			for (int t = 0; t < this.tiles.length; t++) {
+				int f = this.tiles[t].frequency.get();
+				this.tiles[t].frequency.compareAndSet(f, (f / 2)); // losing a race with a concurrent access doesn't hurt
+			}
+		}
+		
+		private synchronized Object admit(TileProxy tp, Object tile, long tileBytes) {
+			
+			//	tiles pinned while we were loading, stick with pinned one, and leave alone all others
+			if (this.pinned) {
+				Object pinnedTile = tp.tile.get();
+				return ((pinnedTile == null) ? tile : pinnedTile);
+			}
+			
+			//	too large to ever fit in
+			if ((0 < this.maxBytes) && (this.maxBytes < tileBytes)) {
+				this.rejections.incrementAndGet();
+				System.out.println("Not retaining " + this.tileType + " tile " + tp.fileName + ", " + tileBytes + " bytes exceed limit of " + this.maxBytes);
+				return tile;
+			}
+			
+			//	retain new tile in window, and make tile previously in window a candidate for the main cache
+			tp.tileBytes = tileBytes;
+			this.bytes.addAndGet(tileBytes);
+			tp.tile.set(tile);
+			TileProxy candidate = this.windowTile;
+			this.windowTile = tp;
+			if ((candidate != null) && !candidate.isTileLoaded())
+				candidate = null;
+			
+			//	collect least recently used tiles we have to evict to get back within limits if we retain the candidate
+			TileProxy[] loadedTiles = this.getLoadedTilesByLastAccess();
+			ArrayList victims = new ArrayList();
+			long bytes = this.bytes.get();
+			int tileCount = loadedTiles.length;
+			int maxVictimFrequency = -1;
+			for (int t = 0; (t < loadedTiles.length) && this.isOverLimits(bytes, tileCount); t++) {
+				if ((loadedTiles[t] == tp) || (loadedTiles[t] == candidate))
+					continue;
+				victims.add(loadedTiles[t]);
+				bytes -= loadedTiles[t].tileBytes;
+				tileCount--;
+				maxVictimFrequency = Math.max(maxVictimFrequency, loadedTiles[t].frequency.get());
+			}
+			
+			//	admit candidate only if that gets us back within limits, and if it is used more frequently than each tile it displaces
+			if ((candidate == null) || (!this.isOverLimits(bytes, tileCount) && (maxVictimFrequency < candidate.frequency.get()))) {
+				for (int v = 0; v < victims.size(); v++)
+					this.evict(((TileProxy) victims.get(v)), false);
+				return tile;
+			}
+			
+			//	reject candidate otherwise, and evict only as many least recently used tiles as still required
+			this.evict(candidate, true);
+			for (int t = 0; (t < loadedTiles.length) && this.isOverLimits(this.bytes.get(), this.getTileCount()); t++) {
+				if ((loadedTiles[t] == tp) || (loadedTiles[t] == candidate))
+					continue;
+				this.evict(loadedTiles[t], false);
+			}
+			return tile;
+		}
+		
+		private boolean isOverLimits(long bytes, int tileCount) {
+			if ((0 < this.maxBytes) && (this.maxBytes < bytes))
+				return true;
+			if ((0 < this.maxTiles) && (this.maxTiles < tileCount))
+				return true;
+			return false;
+		}
+		
+		private void evict(TileProxy tp, boolean rejected) {
+			if (tp.tile.getAndSet(null) == null)
+				return;
+			this.bytes.addAndGet(-tp.tileBytes);
+			tp.tileBytes = 0;
+			if (rejected) {
+				this.rejections.incrementAndGet();
+				System.out.println("Not retaining " + this.tileType + " tile " + tp.fileName + ", used less frequently than tiles it would displace");
+			}
+			else {
+				this.evictions.incrementAndGet();
+				System.out.println("Evicted " + this.tileType + " tile " + tp.fileName);
+			}
+		}
+		
+		private TileProxy[] getLoadedTilesByLastAccess() {
+			TreeMap loadedTiles = new TreeMap(); // snapshot access times, as lookups keep updating them concurrently
+			for (int t = 0; t < this.tiles.length; t++) {
+				if (this.tiles[t].isTileLoaded())
+					loadedTiles.put(new Long(this.tiles[t].lastAccess), this.tiles[t]);
+			}
+			return ((TileProxy[]) loadedTiles.values().toArray(new TileProxy[loadedTiles.size()]));
+		}
+		
+		synchronized void trim() {
+			if (this.pinned)
+				return;
+			TileProxy[] loadedTiles = this.getLoadedTilesByLastAccess();
+			int tileCount = loadedTiles.length;
+			for (int t = 0; t < loadedTiles.length; t++) {
+				if (((this.maxBytes < 1) || (this.bytes.get() <= this.maxBytes)) && ((this.maxTiles < 1) || (tileCount <= this.maxTiles)))
+					break;
+				this.evict(loadedTiles[t], false);
+				tileCount--;
+			}
+		}
+		
+		synchronized void pin(Object[] tiles) {
+			for (int t = 0; t < this.tiles.length; t++) {
+				this.tiles[t].tileBytes = 0;
+				this.tiles[t].tile.set(tiles[t]);
+			}
+			this.bytes.set(0);
+			this.reservedBytes = 0;
+			this.pinned = true;
+		}
+		
+		synchronized void setReservedBytes(long reservedBytes) {
+			if (this.pinned)
+				return;
+			this.bytes.addAndGet(reservedBytes - this.reservedBytes);
+			this.reservedBytes = reservedBytes;
+			this.trim();
+		}
+		
+		void setMaxBytes(long maxBytes) {
+			this.maxBytes = maxBytes;
+			if (0 < maxBytes)
+				this.trim();
+		}
+		
+		void setMaxTiles(int maxTiles) {
+			this.maxTiles = maxTiles;
+			if (0 < maxTiles)
+				this.trim();
+		}
+		
+		/**
+		 * @return the maximum number of bytes the loaded tiles may occupy
+		 */
+		public long getMaxBytes() {
+			return this.maxBytes;
+		}
+		
+		/**
+		 * @return the maximum number of tiles to hold in memory
+		 */
+		public int getMaxTiles() {
+			return this.maxTiles;
+		}
+		
+		/**
+		 * @return the number of bytes occupied by the currently loaded tiles,
+		 *            including any other data weighed against the tiles
+		 */
+		public long getBytes() {
+			return this.bytes.get();
+		}
+		
+		/**
+		 * @return the number of currently loaded tiles
+		 */
+		public int getTileCount() {
+			int tileCount = 0;
+			for (int t = 0; t < this.tiles.length; t++) {
+				if (this.tiles[t].isTileLoaded())
+					tileCount++;
+			}
+			return tileCount;
+		}
+		
+		/**
+		 * @return the number of lookups that found their tile loaded
+		 */
+		public long getHitCount() {
+			return this.hits.get();
+		}
+		
+		/**
+		 * @return the number of lookups that had to load their tile
+		 */
+		public long getMissCount() {
+			return this.misses.get();
+		}
+		
+		/**
+		 * @return the total time spent loading tiles, in milliseconds
+		 */
+		public long getLoadTime() {
+			return this.loadTime.get();
+		}
+		
+		/**
+		 * @return the number of tiles evicted to make room for other tiles
+		 */
+		public long getEvictionCount() {
+			return this.evictions.get();
+		}
+		
+		/**
+		 * @return the number of loaded tiles not retained in memory, either
+		 *            due to their size, or due to them being used less
+		 *            frequently than the tiles they would have displaced
+		 */
+		public long getRejectionCount() {
+			return this.rejections.get();
+		}
+		
+		/**
+		 * Reset the hit, miss, load time, eviction, and rejection counters to
+		 * zero.
+		 */
+		public void resetStatistics() {
+			this.hits.set(0);
+			this.misses.set(0);
+			this.loadTime.set(0);
+			this.evictions.set(0);
+			this.rejections.set(0);
+		}
+		
+		public String toString() {
+			return ("TileCache[" + this.tileType + ", tiles=" + this.getTileCount() + "/" + this.maxTiles + ", bytes=" + this.bytes.get() + "/" + this.maxBytes + ", hits=" + this.hits.get() + ", misses=" + this.misses.get() + ", loadTime=" + this.loadTime.get() + "ms, evictions=" + this.evictions.get() + ", rejections=" + this.rejections.get() + "]");
+		}
+	}
+	
+	private static class DataTileProxy extends TileProxy implements Comparable {
 		final CatalogOfLifeLocal col;
 		final int minId;
 		final int maxId;
 		final int minColId;
 		final int maxColId;
-		final String fileName;
-		DataTile tile = null;
-		int lastTileUseNumber = 0;
 //		DataTileProxy(CatalogOfLifeLocal col, int minId, int maxId, String fileName) {
 		DataTileProxy(CatalogOfLifeLocal col, int minId, int maxId, int minColId, int maxColId, String fileName) {
+			super(fileName);
 			this.col = col;
 			if (maxId < minId)
 				throw new IllegalArgumentException("The maxId must be less than or equal to the minId, but values are minId: " + minId + ", maxId: " + maxId);
@@ -424,7 +743,6 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			this.maxId = maxId;
 			this.minColId = minColId;
 			this.maxColId = maxColId;
-			this.fileName = fileName;
 		}
 		boolean containsRecord(int id) {
 			return ((this.minId <= id) && (id <= this.maxId));
@@ -435,13 +753,17 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 		boolean spansColRecord(int colId) {
 			return ((this.minColId <= colId) && (colId <= this.maxColId));
 		}
-		boolean isTileLoaded() {
-			return (this.tile != null);
+		DataTile getLoadedTile() {
+			return ((DataTile) this.tile.get());
 		}
 		DataTile getTile() {
-			if (this.tile == null)
-				this.tile = this.col.loadDataTile(this.fileName, this.minId, this.maxId);
-			return this.tile;
+			return ((DataTile) this.col.speciesTileCache.getTile(this));
+		}
+		Object loadTile() {
+			return this.col.loadDataTile(this.fileName, this.minId, this.maxId);
+		}
+		long getTileBytes(Object tile) {
+			return ((DataTile) tile).getByteSize();
 		}
 		public int compareTo(Object obj) {
 			DataTileProxy tp = ((DataTileProxy) obj);
@@ -458,6 +780,15 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 	
 	DataTile loadDataTile(String fileName, int minId, int maxId) {
 		try {
+			String binFileName = getBinaryTileFileName(fileName);
+			if (this.isDataAvailable(binFileName)) try {
+				System.out.println("Loading binary data tile " + binFileName);
+				InputStream in = getInputStream(binFileName);
+				return loadBinaryDataTile(in, this.getDataSize(binFileName), minId, maxId, this.getDataSize(fileName), this);
+			}
+			catch (IOException ioe) {
+				System.out.println("Error loading binary data tile " + binFileName + ", falling back to " + fileName + ": " + ioe.getMessage());
+			}
 			System.out.println("Loading data tile " + fileName);
 			InputStream in = getInputStream(fileName);
 			return loadDataTile(in, minId, maxId, this);
@@ -467,35 +798,7 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			ioe.printStackTrace(System.out);
 			return null;
 		}
-		finally {
-			if (0 < this.maxSimultaneousSpeciesTiles)
-				this.trimSpeciesTiles();
-		}
 	}
-	private synchronized void trimSpeciesTiles() {
-		ArrayList loadedSpeciesTiles = new ArrayList();
-		for (int t = 0; t < this.speciesTiles.length; t++) {
-			if (this.speciesTiles[t].isTileLoaded())
-				loadedSpeciesTiles.add(this.speciesTiles[t]);
-		}
-		if (loadedSpeciesTiles.size() <= this.maxSimultaneousSpeciesTiles)
-			return;
-		Collections.sort(loadedSpeciesTiles, speciesTileUseOrder);
-		while (this.maxSimultaneousSpeciesTiles < loadedSpeciesTiles.size()) {
-			DataTileProxy dtp = ((DataTileProxy) loadedSpeciesTiles.remove(0));
-			dtp.tile = null;
-			System.out.println("Evicted data tile " + dtp.fileName);
-		}
-		System.gc();
-	}
-	private static final Comparator speciesTileUseOrder = new Comparator() {
-		public int compare(Object obj1, Object obj2) {
-			DataTileProxy dtp1 = ((DataTileProxy) obj1);
-			DataTileProxy dtp2 = ((DataTileProxy) obj2);
-			return (dtp1.lastTileUseNumber - dtp2.lastTileUseNumber);
-		}
-	};
-	
 	static DataTile loadDataTile(InputStream in, int minId, int maxId, CatalogOfLifeLocal col) throws IOException {
 		BufferedReader br = new BufferedReader(new InputStreamReader(in, "UTF-8"));
 		int[] recordOffsets = new int[1024];
@@ -715,31 +1018,252 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 		return ids.toArray();
 	}
 	
+	/* Binary data tile layout (big endian):
+	 * - magic number (4 bytes, 'COLD')
+	 * - format version (1 byte)
+	 * - flags (1 byte, 0x01 indicating original CoL IDs to be present)
+	 * - min ID and max ID (4 bytes each)
+	 * - min and max original CoL ID (4 bytes each)
+	 * - number of records (4 bytes)
+	 * - number of record data bytes (4 bytes)
+	 * - size of the TSV data the tile was compiled from (8 bytes), to tell
+	 *   outdated binary tiles
+	 * - record offsets in epithet order (4 bytes each)
+	 * - record offsets in ID order (4 bytes each)
+	 * - if original CoL IDs present:
+	 *   - original CoL IDs in ID order (4 bytes each)
+	 *   - sorted original CoL IDs combined with record offsets (8 bytes each)
+	 * - record data bytes (as indicated)
+	 */
+	private static final int BINARY_DATA_TILE_MAGIC = 0x434F4C44; // 'COLD'
+	private static final int BINARY_INDEX_TILE_MAGIC = 0x434F4C49; // 'COLI'
+	private static final byte BINARY_TILE_VERSION = 2;
+	private static final byte BINARY_TILE_HAS_COL_IDS = 0x01;
+	private static final int BINARY_DATA_TILE_HEADER_SIZE = 38;
+	private static final int BINARY_INDEX_TILE_HEADER_SIZE = 21;
+	
+	/**
+	 * Compute the name of the binary (pre-compiled) form of a data or index
+	 * tile from the name of the TSV file the tile is listed under in the
+	 * 'data.tiles.txt' or 'index.tiles.txt' meta file.
+	 * @param fileName the name of the TSV tile file
+	 * @return the name of the binary tile file
+	 */
+	static String getBinaryTileFileName(String fileName) {
+		if (fileName.endsWith(".txt"))
+			return (fileName.substring(0, (fileName.length() - ".txt".length())) + ".bin");
+		else return (fileName + ".bin");
+	}
+	
+	/* Input stream counting the bytes read through it, to record the size of
+	 * the TSV data a binary tile is compiled from */
+	private static class CountingInputStream extends FilterInputStream {
+		long count = 0;
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1)
+				this.count++;
+			return b;
+		}
+		public int read(byte[] b, int off, int len) throws IOException {
+			int r = super.read(b, off, len);
+			if (r != -1)
+				this.count += r;
+			return r;
+		}
+		public long skip(long n) throws IOException {
+			long s = super.skip(n);
+			this.count += s;
+			return s;
+		}
+	}
+	
+	/* Check if a binary tile was compiled from the TSV data we have, which
+	 * is the case if the recorded size matches, or if we cannot tell the
+	 * size of the latter */
+	private static void checkBinaryTileSource(ByteBuffer tileData, int offset, long tsvSize, String type) throws IOException {
+		if (tsvSize < 0)
+			return;
+		long tileTsvSize = tileData.getLong(offset);
+		if (tileTsvSize != tsvSize)
+			throw new IOException("Outdated binary " + type + " tile, compiled from " + tileTsvSize + " bytes of TSV data, but TSV data has " + tsvSize + " bytes");
+	}
+	
+	/**
+	 * Compile a data tile from its TSV representation into the binary form,
+	 * which loads without any parsing. The TSV data is read to its very end,
+	 * and the binary form records its size, so binary tiles compiled from
+	 * outdated TSV data can be recognized as such.
+	 * @param tsvIn the input stream to read the TSV data from
+	 * @param minId the minimum record ID contained in the tile
+	 * @param maxId the maximum record ID contained in the tile
+	 * @param binOut the output stream to write the binary data to
+	 * @throws IOException
+	 */
+	static void compileDataTile(InputStream tsvIn, int minId, int maxId, OutputStream binOut) throws IOException {
+		CountingInputStream cTsvIn = new CountingInputStream(tsvIn);
+		DataTile tile = loadDataTile(cTsvIn, minId, maxId, null);
+		int recordCount = tile.recordOffsets.limit();
+		boolean hasColIDs = (tile.colIdRecordOffsets != null);
+		ByteBuffer tileData = ByteBuffer.allocate(getBinaryDataTileSize(hasColIDs, recordCount, tile.data.limit()));
+		tileData.putInt(BINARY_DATA_TILE_MAGIC);
+		tileData.put(BINARY_TILE_VERSION);
+		tileData.put(hasColIDs ? BINARY_TILE_HAS_COL_IDS : 0);
+		tileData.putInt(tile.minId);
+		tileData.putInt(tile.maxId);
+		tileData.putInt(tile.minColId);
+		tileData.putInt(tile.maxColId);
+		tileData.putInt(recordCount);
+		tileData.putInt(tile.data.limit());
+		tileData.putLong(cTsvIn.count);
+		putInts(tileData, tile.recordOffsets);
+		putInts(tileData, tile.idRecordOffsets);
+		if (hasColIDs) {
+			putInts(tileData, tile.idRecordColIDs);
+			for (int r = 0; r < recordCount; r++)
+				tileData.putLong(tile.colIdRecordOffsets.get(r));
+		}
+		tileData.put(tile.data.duplicate());
+		binOut.write(tileData.array());
+		binOut.flush();
+	}
+	
+	static DataTile loadBinaryDataTile(InputStream in, long binSize, int minId, int maxId, long tsvSize, CatalogOfLifeLocal col) throws IOException {
+		DataInputStream din = new DataInputStream(in);
+		try {
+			
+			//	read and check header first, so we don't allocate any garbage sizes
+			byte[] header = new byte[BINARY_DATA_TILE_HEADER_SIZE];
+			din.readFully(header);
+			ByteBuffer hData = ByteBuffer.wrap(header);
+			checkBinaryTileHeader(hData, BINARY_DATA_TILE_MAGIC, "data");
+			checkBinaryTileSource(hData, 30, tsvSize, "data");
+			
+			//	read whole tile in one go, and create tile on top of it
+			int tileSize = getBinaryDataTileSize(((hData.get(5) & BINARY_TILE_HAS_COL_IDS) != 0), hData.getInt(22), hData.getInt(26));
+			if ((binSize != -1) && (binSize < tileSize))
+				throw new IOException("Truncated binary data tile");
+			byte[] tileBytes = new byte[tileSize];
+			System.arraycopy(header, 0, tileBytes, 0, header.length);
+			din.readFully(tileBytes, header.length, (tileBytes.length - header.length));
+			return createBinaryDataTile(ByteBuffer.wrap(tileBytes), minId, maxId, tsvSize, col);
+		}
+		finally {
+			din.close();
+		}
+	}
+	
+	static DataTile mapBinaryDataTile(File file, int minId, int maxId, long tsvSize, CatalogOfLifeLocal col) throws IOException {
+		return createBinaryDataTile(mapFile(file), minId, maxId, tsvSize, col);
+	}
+	
+	private static DataTile createBinaryDataTile(ByteBuffer tileData, int minId, int maxId, long tsvSize, CatalogOfLifeLocal col) throws IOException {
+		checkBinaryTileHeader(tileData, BINARY_DATA_TILE_MAGIC, "data");
+		if (tileData.limit() < BINARY_DATA_TILE_HEADER_SIZE)
+			throw new IOException("Truncated binary data tile");
+		checkBinaryTileSource(tileData, 30, tsvSize, "data");
+		boolean hasColIDs = ((tileData.get(5) & BINARY_TILE_HAS_COL_IDS) != 0);
+		int tMinId = tileData.getInt(6);
+		int tMaxId = tileData.getInt(10);
+		if ((tMinId != minId) || (tMaxId != maxId))
+			throw new IOException("Binary data tile ID range [" + tMinId + "," + tMaxId + "] does not match [" + minId + "," + maxId + "]");
+		int minColId = tileData.getInt(14);
+		int maxColId = tileData.getInt(18);
+		int recordCount = tileData.getInt(22);
+		int dataLength = tileData.getInt(26);
+		if (tileData.limit() < getBinaryDataTileSize(hasColIDs, recordCount, dataLength))
+			throw new IOException("Truncated binary data tile");
+		
+		//	create views of offset arrays and record data, no copying required
+		int offset = BINARY_DATA_TILE_HEADER_SIZE;
+		java.nio.IntBuffer recordOffsets = getSlice(tileData, offset, (recordCount * 4)).asIntBuffer();
+		offset += (recordCount * 4);
+		java.nio.IntBuffer idRecordOffsets = getSlice(tileData, offset, (recordCount * 4)).asIntBuffer();
+		offset += (recordCount * 4);
+		java.nio.IntBuffer idRecordColIDs = null;
+		LongBuffer colIdRecordOffsets = null;
+		if (hasColIDs) {
+			idRecordColIDs = getSlice(tileData, offset, (recordCount * 4)).asIntBuffer();
+			offset += (recordCount * 4);
+			colIdRecordOffsets = getSlice(tileData, offset, (recordCount * 8)).asLongBuffer();
+			offset += (recordCount * 8);
+		}
+		ByteBuffer data = getSlice(tileData, offset, dataLength);
+		
+		//	finally ...
+		return new DataTile(col, minId, maxId, recordOffsets, idRecordOffsets, idRecordColIDs, minColId, maxColId, colIdRecordOffsets, data);
+	}
+	
+	private static int getBinaryDataTileSize(boolean hasColIDs, int recordCount, int dataLength) throws IOException {
+		if ((recordCount < 0) || (dataLength < 0))
+			throw new IOException("Invalid binary data tile");
+		long tileSize = (((long) BINARY_DATA_TILE_HEADER_SIZE) + (((long) recordCount) * (hasColIDs ? 20 : 8)) + dataLength);
+		if (tileSize > Integer.MAX_VALUE)
+			throw new IOException("Binary data tile exceeds 2GB");
+		return ((int) tileSize);
+	}
+	
+	private static void checkBinaryTileHeader(ByteBuffer tileData, int magic, String type) throws IOException {
+		if ((tileData.limit() < 5) || (tileData.getInt(0) != magic))
+			throw new IOException("Invalid binary " + type + " tile");
+		byte version = tileData.get(4);
+		if (version != BINARY_TILE_VERSION)
+			throw new IOException("Unsupported binary " + type + " tile version " + version);
+	}
+	
+	private static ByteBuffer getSlice(ByteBuffer bb, int offset, int length) {
+		ByteBuffer slice = bb.duplicate();
+		slice.position(offset);
+		slice.limit(offset + length);
+		return slice.slice();
+	}
+	
+	private static ByteBuffer mapFile(File file) throws IOException {
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			FileChannel fc = fis.getChannel();
+			return fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+		}
+		finally {
+			fis.close(); // mapping remains valid after channel is closed
+		}
+	}
+	
+	private static void putInts(ByteBuffer bb, java.nio.IntBuffer ints) {
+		for (int i = 0; i < ints.limit(); i++)
+			bb.putInt(ints.get(i));
+	}
+	
 	private static class DataTile {
 		final CatalogOfLifeLocal col;
 		final int minId;
 		final int maxId;
-		final int[] recordOffsets;
-		final int[] idRecordOffsets;
-		final int[] idRecordColIDs;
+		final java.nio.IntBuffer recordOffsets;
+		final java.nio.IntBuffer idRecordOffsets;
+		final java.nio.IntBuffer idRecordColIDs;
 		final int minColId;
 		final int maxColId;
-		final long[] colIdRecordOffsets;
-		final byte[] data;
+		final LongBuffer colIdRecordOffsets;
+		final ByteBuffer data;
 		DataTile(CatalogOfLifeLocal col, int minId, int maxId, int[] recordOffsets, byte[] data, int[] recordColIDs) {
 			this.col = col;
 			this.minId = minId;
 			this.maxId = maxId;
-			this.data = data;
-			this.recordOffsets = recordOffsets;
-			this.idRecordOffsets = new int[this.recordOffsets.length];
-			this.idRecordColIDs = ((recordColIDs == null) ? null : new int[this.recordOffsets.length]);
-			for (int r = 0; r < this.recordOffsets.length; r++) {
-				int id = TaxonRecord.getId(this.data, this.recordOffsets[r]);
-				this.idRecordOffsets[id - this.minId] = this.recordOffsets[r];
+			this.data = ByteBuffer.wrap(data);
+			this.recordOffsets = java.nio.IntBuffer.wrap(recordOffsets);
+			int[] idRecordOffsets = new int[recordOffsets.length];
+			int[] idRecordColIDs = ((recordColIDs == null) ? null : new int[recordOffsets.length]);
+			for (int r = 0; r < recordOffsets.length; r++) {
+				int id = TaxonRecord.getId(this.data, recordOffsets[r]);
+				idRecordOffsets[id - this.minId] = recordOffsets[r];
 				if (recordColIDs != null)
-					this.idRecordColIDs[id - this.minId] = recordColIDs[r];
+					idRecordColIDs[id - this.minId] = recordColIDs[r];
 			}
+			this.idRecordOffsets = java.nio.IntBuffer.wrap(idRecordOffsets);
+			this.idRecordColIDs = ((idRecordColIDs == null) ? null : java.nio.IntBuffer.wrap(idRecordColIDs));
 			if (recordColIDs == null) {
 				this.minColId = Integer.MAX_VALUE;
 				this.maxColId = Integer.MIN_VALUE;
@@ -748,27 +1272,50 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			else {
 				int minColId = Integer.MAX_VALUE;
 				int maxColId = Integer.MIN_VALUE;
-				this.colIdRecordOffsets = new long[this.recordOffsets.length];
-				for (int r = 0; r < this.recordOffsets.length; r++) {
+				long[] colIdRecordOffsets = new long[recordOffsets.length];
+				for (int r = 0; r < recordOffsets.length; r++) {
 					int colId = recordColIDs[r];
 					minColId = Math.min(minColId, colId);
 					maxColId = Math.max(maxColId, colId);
-					this.colIdRecordOffsets[r] = colId;
-					this.colIdRecordOffsets[r] <<= 32;
-					this.colIdRecordOffsets[r] |= this.recordOffsets[r];
+					colIdRecordOffsets[r] = colId;
+					colIdRecordOffsets[r] <<= 32;
+					colIdRecordOffsets[r] |= recordOffsets[r];
 				}
 				this.minColId = minColId;
 				this.maxColId = maxColId;
-				Arrays.sort(this.colIdRecordOffsets);
+				Arrays.sort(colIdRecordOffsets);
+				this.colIdRecordOffsets = LongBuffer.wrap(colIdRecordOffsets);
 			}
 		}
+		DataTile(CatalogOfLifeLocal col, int minId, int maxId, java.nio.IntBuffer recordOffsets, java.nio.IntBuffer idRecordOffsets, java.nio.IntBuffer idRecordColIDs, int minColId, int maxColId, LongBuffer colIdRecordOffsets, ByteBuffer data) {
+			this.col = col;
+			this.minId = minId;
+			this.maxId = maxId;
+			this.data = data;
+			this.recordOffsets = recordOffsets;
+			this.idRecordOffsets = idRecordOffsets;
+			this.idRecordColIDs = idRecordColIDs;
+			this.minColId = ((colIdRecordOffsets == null) ? Integer.MAX_VALUE : minColId);
+			this.maxColId = ((colIdRecordOffsets == null) ? Integer.MIN_VALUE : maxColId);
+			this.colIdRecordOffsets = colIdRecordOffsets;
+		}
 		
+		long getByteSize() {
+			long byteSize = this.data.limit();
+			byteSize += (this.recordOffsets.limit() * 4);
+			byteSize += (this.idRecordOffsets.limit() * 4);
+			if (this.idRecordColIDs != null)
+				byteSize += (this.idRecordColIDs.limit() * 4);
+			if (this.colIdRecordOffsets != null)
+				byteSize += (this.colIdRecordOffsets.limit() * 8);
+			return byteSize;
+		}
 		boolean containsRecord(int id) {
 			return ((this.minId <= id) && (id <= this.maxId));
 		}
 		TaxonRecord getRecord(int id) {
 			if (this.containsRecord(id))
-				return new TaxonRecord(this, this.idRecordOffsets[id - this.minId]);
+				return new TaxonRecord(this, this.idRecordOffsets.get(id - this.minId));
 			else return this.col.getRecord(id);
 		}
 		boolean colSpansRecord(String colId) {
@@ -786,56 +1333,56 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 				minColId <<= 32;
 				long maxColId = (minColId | 0x00000000FFFFFFFFL);
 				int low = 0;
-				int high = (this.colIdRecordOffsets.length - 1);
+				int high = (this.colIdRecordOffsets.limit() - 1);
 				int pos = -1;
 				while (low <= high) {
 					int mid = ((low + high) / 2);
-					if (this.colIdRecordOffsets[mid] < minColId)
+					if (this.colIdRecordOffsets.get(mid) < minColId)
 						low = (mid + 1);
-					else if (this.colIdRecordOffsets[mid] > maxColId)
+					else if (this.colIdRecordOffsets.get(mid) > maxColId)
 						high = (mid - 1);
 					else {
 						pos = mid;
 						break;
 					}
 				}
-				return ((pos == -1) ? null : new TaxonRecord(this, ((int) (this.colIdRecordOffsets[pos] & 0x000000007FFFFFFFL))));
+				return ((pos == -1) ? null : new TaxonRecord(this, ((int) (this.colIdRecordOffsets.get(pos) & 0x000000007FFFFFFFL))));
 			}
 			else return null;
 		}
 		int colGetId(int id) {
-			return ((this.idRecordColIDs == null) ? -1 : this.idRecordColIDs[id - this.minId]);
+			return ((this.idRecordColIDs == null) ? -1 : this.idRecordColIDs.get(id - this.minId));
 		}
 		
 		String getEpithet(int id) {
-			return TaxonRecord.getEpithet(this.data, this.idRecordOffsets[id - this.minId]);
+			return TaxonRecord.getEpithet(this.data, this.idRecordOffsets.get(id - this.minId));
 		}
 		byte[] getEpithetBytes(int id) {
-			return TaxonRecord.getEpithetBytes(this.data, this.idRecordOffsets[id - this.minId]);
+			return TaxonRecord.getEpithetBytes(this.data, this.idRecordOffsets.get(id - this.minId));
 		}
 		boolean isValidTaxon(int id) {
-			return TaxonRecord.isValidTaxon(this.data, this.idRecordOffsets[id - this.minId]);
+			return TaxonRecord.isValidTaxon(this.data, this.idRecordOffsets.get(id - this.minId));
 		}
 		boolean isExtantTaxon(int id) {
-			return TaxonRecord.isExtant(this.data, this.idRecordOffsets[id - this.minId]);
+			return TaxonRecord.isExtant(this.data, this.idRecordOffsets.get(id - this.minId));
 		}
 		String getRank(int id) {
-			byte rank = TaxonRecord.getRank(this.data, this.idRecordOffsets[id - this.minId]);
+			byte rank = TaxonRecord.getRank(this.data, this.idRecordOffsets.get(id - this.minId));
 			return decodeRank(rank);
 		}
 		byte getRankByte(int id) {
-			return TaxonRecord.getRank(this.data, this.idRecordOffsets[id - this.minId]);
+			return TaxonRecord.getRank(this.data, this.idRecordOffsets.get(id - this.minId));
 		}
 		boolean isPrimaryRank(int id) {
-			return TaxonRecord.isPrimaryRank(this.data, this.idRecordOffsets[id - this.minId]);
+			return TaxonRecord.isPrimaryRank(this.data, this.idRecordOffsets.get(id - this.minId));
 		}
 		int getParentId(int id) {
-			if (TaxonRecord.isValidTaxon(this.data, this.idRecordOffsets[id - this.minId]))
-				return TaxonRecord.getParentOrValidId(this.data, this.idRecordOffsets[id - this.minId]);
+			if (TaxonRecord.isValidTaxon(this.data, this.idRecordOffsets.get(id - this.minId)))
+				return TaxonRecord.getParentOrValidId(this.data, this.idRecordOffsets.get(id - this.minId));
 			else return -1;
 		}
 		int[] getChildIDs(int id) {
-			return TaxonRecord.getChildIDs(this.data, this.idRecordOffsets[id - this.minId]);
+			return TaxonRecord.getChildIDs(this.data, this.idRecordOffsets.get(id - this.minId));
 		}
 		int[] findDescendantIDs(int id, byte[] query, boolean prefixMatch, boolean caseSensitive, byte rank, boolean includeSynonyms) {
 			int descendantTileCount;
@@ -910,10 +1457,7 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 						lQuery[b] = ((byte) (query[b] | 0x20));
 					else lQuery[b] = query[b];
 				}
-				IndexTile queryTile = this.col.getIndexTileForString(lQuery);
-				if (queryTile == null)
-					return null;
-				IndexEntry[] queryResults = queryTile.findMatches(lQuery, prefixMatch);
+				IndexEntry[] queryResults = this.col.findIndexEntries(lQuery, prefixMatch);
 				if (queryResults == null)
 					return null;
 				IntBuffer matchIDs = new IntBuffer();
@@ -960,7 +1504,7 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 		private boolean recordMatches(int id, byte[] query, boolean prefixMatch, boolean caseSensitive, byte rank) {
 			if ((rank != -1) && (rank != this.getRankByte(id)))
 				return false;
-			else return (TaxonRecord.compareEpithetTo(this.data, this.idRecordOffsets[id - this.minId], query, prefixMatch, caseSensitive) == 0);
+			else return (TaxonRecord.compareEpithetTo(this.data, this.idRecordOffsets.get(id - this.minId), query, prefixMatch, caseSensitive) == 0);
 		}
 		int getPrimaryParentId(int id) {
 			int parentId = this.getParentId(id);
@@ -1024,25 +1568,25 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			return higherTaxonomy;
 		}
 		int getValidTaxonId(int id) {
-			if (TaxonRecord.isValidTaxon(this.data, this.idRecordOffsets[id - this.minId]))
+			if (TaxonRecord.isValidTaxon(this.data, this.idRecordOffsets.get(id - this.minId)))
 				return id;
-			return TaxonRecord.getParentOrValidId(this.data, this.idRecordOffsets[id - this.minId]);
+			return TaxonRecord.getParentOrValidId(this.data, this.idRecordOffsets.get(id - this.minId));
 		}
 		public String getOriginalParentEpithets(int id) {
-			if (TaxonRecord.isValidTaxon(this.data, this.idRecordOffsets[id - this.minId]))
+			if (TaxonRecord.isValidTaxon(this.data, this.idRecordOffsets.get(id - this.minId)))
 				return null;
-			if (!TaxonRecord.hasOriginalParent(this.data, this.idRecordOffsets[id - this.minId]))
+			if (!TaxonRecord.hasOriginalParent(this.data, this.idRecordOffsets.get(id - this.minId)))
 				return null;
-			return TaxonRecord.getOriginalParentEpithets(this.data, this.idRecordOffsets[id - this.minId]);
+			return TaxonRecord.getOriginalParentEpithets(this.data, this.idRecordOffsets.get(id - this.minId));
 		}
 		int[] getSynonymIDs(int id) {
-			return TaxonRecord.getSynonymIDs(this.data, this.idRecordOffsets[id - this.minId]);
+			return TaxonRecord.getSynonymIDs(this.data, this.idRecordOffsets.get(id - this.minId));
 		}
 		String getAuthority(int id) {
-			byte[] authorityBytes = TaxonRecord.getAuthorityBytes(this.data, this.idRecordOffsets[id - this.minId]);
+			byte[] authorityBytes = TaxonRecord.getAuthorityBytes(this.data, this.idRecordOffsets.get(id - this.minId));
 			if (authorityBytes == null)
 				return null;
-			else if (TaxonRecord.storesVerbatimAuthority(this.data, this.idRecordOffsets[id - this.minId]))
+			else if (TaxonRecord.storesVerbatimAuthority(this.data, this.idRecordOffsets.get(id - this.minId)))
 				return getString(authorityBytes, 0, authorityBytes.length);
 			else return this.decodeAuthority(authorityBytes);
 		}
@@ -1075,16 +1619,16 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			int pos = findFirst(epithet, this.data, this.recordOffsets, prefixMatch, caseSensitive);
 			if (pos == -1)
 				return -1;
-			if ((rank == -1) || (rank == TaxonRecord.getRank(this.data, this.recordOffsets[pos])))
-				return TaxonRecord.getId(this.data, this.recordOffsets[pos]);
+			if ((rank == -1) || (rank == TaxonRecord.getRank(this.data, this.recordOffsets.get(pos))))
+				return TaxonRecord.getId(this.data, this.recordOffsets.get(pos));
 			do {
 				pos++;
-				if (pos == this.recordOffsets.length)
+				if (pos == this.recordOffsets.limit())
 					return -1;
-				if (TaxonRecord.compareEpithetTo(this.data, this.recordOffsets[pos], epithet, prefixMatch, caseSensitive) != 0)
+				if (TaxonRecord.compareEpithetTo(this.data, this.recordOffsets.get(pos), epithet, prefixMatch, caseSensitive) != 0)
 					return -1;
-				if (rank == TaxonRecord.getRank(this.data, this.recordOffsets[pos]))
-					return TaxonRecord.getId(this.data, this.recordOffsets[pos]);
+				if (rank == TaxonRecord.getRank(this.data, this.recordOffsets.get(pos)))
+					return TaxonRecord.getId(this.data, this.recordOffsets.get(pos));
 			} while (true);
 		}
 		int[] findRecordIDs(byte[] epithet, byte rank) {
@@ -1095,19 +1639,19 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			if (fPos == -1)
 				return null;
 			int lPos = (fPos+1);
-			while (lPos < this.recordOffsets.length) {
-				if (TaxonRecord.compareEpithetTo(this.data, this.recordOffsets[lPos], epithet, prefixMatch, caseSensitive) != 0)
+			while (lPos < this.recordOffsets.limit()) {
+				if (TaxonRecord.compareEpithetTo(this.data, this.recordOffsets.get(lPos), epithet, prefixMatch, caseSensitive) != 0)
 					break;
 				lPos++;
 			}
 			int[] ids = new int[lPos - fPos];
 			for (int i = 0; i < ids.length; i++)
-				ids[i] = TaxonRecord.getId(this.data, this.recordOffsets[fPos + i]);
+				ids[i] = TaxonRecord.getId(this.data, this.recordOffsets.get(fPos + i));
 			if (rank == -1)
 				return ids;
 			int rankMatches = 0;
 			for (int i = 0; i < ids.length; i++) {
-				if (TaxonRecord.getRank(this.data, this.idRecordOffsets[ids[i] - this.minId]) == rank)
+				if (TaxonRecord.getRank(this.data, this.idRecordOffsets.get(ids[i] - this.minId)) == rank)
 					rankMatches++;
 				else ids[i] = -1;
 			}
@@ -1122,13 +1666,13 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			}
 			return rIds;
 		}
-		private static int findFirst(byte[] epithet, byte[] data, int[] recordOffsets, boolean prefixMatch, boolean caseSensitive) {
+		private static int findFirst(byte[] epithet, ByteBuffer data, java.nio.IntBuffer recordOffsets, boolean prefixMatch, boolean caseSensitive) {
 			int low = 0;
-			int high = (recordOffsets.length - 1);
+			int high = (recordOffsets.limit() - 1);
 			int pos = -1;
 			while (low <= high) {
 				int mid = ((low + high) / 2);
-				int c = TaxonRecord.compareEpithetTo(data, recordOffsets[mid], epithet, prefixMatch, caseSensitive);
+				int c = TaxonRecord.compareEpithetTo(data, recordOffsets.get(mid), epithet, prefixMatch, caseSensitive);
 				if (c < 0)
 					low = (mid + 1);
 				else if (c > 0)
@@ -1141,7 +1685,7 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			if (pos == -1)
 				return -1;
 			while (pos != 0) {
-				int c = TaxonRecord.compareEpithetTo(data, recordOffsets[pos-1], epithet, prefixMatch, caseSensitive);
+				int c = TaxonRecord.compareEpithetTo(data, recordOffsets.get(pos-1), epithet, prefixMatch, caseSensitive);
 				if (c == 0)
 					pos--;
 				else break;
@@ -1150,20 +1694,17 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 		}
 	}
 	
-	private static class IndexTileProxy implements Comparable {
+	private static class IndexTileProxy extends TileProxy implements Comparable {
 		final CatalogOfLifeLocal col;
 		final byte[] minStr;
 		final byte[] maxStr;
-		final String fileName;
-		IndexTile tile = null;
-		int lastTileUseNumber = 0;
 		IndexTileProxy(CatalogOfLifeLocal col, byte[] minStr, byte[] maxStr, String fileName) {
+			super(fileName);
 			this.col = col;
 			if (compareStringBytes(maxStr, 0, maxStr.length, minStr, 0, minStr.length, true) < 0)
 				throw new IllegalArgumentException("The maxString must be less than or equal to the minString, but values are minString: " + getString(minStr, 0, minStr.length) + ", maxId: " + getString(maxStr, 0, maxStr.length));
 			this.minStr = minStr;
 			this.maxStr = maxStr;
-			this.fileName = fileName;
 		}
 //		boolean containsString(byte[] str) {
 //			if (compareStringBytes(this.minStr, 0, this.minStr.length, str, 0, str.length, true) < 0)
@@ -1172,13 +1713,14 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 //				return true;
 //			else return false;
 //		}
-		boolean isTileLoaded() {
-			return (this.tile != null);
-		}
 		IndexTile getTile() {
-			if (this.tile == null)
-				this.tile = this.col.loadIndexTile(this.fileName, this.minStr, this.maxStr);
-			return this.tile;
+			return ((IndexTile) this.col.indexTileCache.getTile(this));
+		}
+		Object loadTile() {
+			return this.col.loadIndexTile(this.fileName, this.minStr, this.maxStr);
+		}
+		long getTileBytes(Object tile) {
+			return ((IndexTile) tile).getByteSize();
 		}
 		public int compareTo(Object obj) {
 			IndexTileProxy tp = ((IndexTileProxy) obj);
@@ -1195,6 +1737,15 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 	
 	IndexTile loadIndexTile(String fileName, byte[] minStr, byte[] maxStr) {
 		try {
+			String binFileName = getBinaryTileFileName(fileName);
+			if (this.isDataAvailable(binFileName)) try {
+				System.out.println("Loading binary index tile " + binFileName);
+				InputStream in = getInputStream(binFileName);
+				return loadBinaryIndexTile(in, this.getDataSize(binFileName), minStr, maxStr, this.getDataSize(fileName), this);
+			}
+			catch (IOException ioe) {
+				System.out.println("Error loading binary index tile " + binFileName + ", falling back to " + fileName + ": " + ioe.getMessage());
+			}
 			System.out.println("Loading index tile " + fileName);
 			InputStream in = getInputStream(fileName);
 			return loadIndexTile(in, minStr, maxStr, this);
@@ -1204,35 +1755,7 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			ioe.printStackTrace(System.out);
 			return null;
 		}
-		finally {
-			if (0 < this.maxSimultaneousIndexTiles)
-				this.trimIndexTiles();
-		}
-	}
-	private synchronized void trimIndexTiles() {
-		ArrayList loadedIndexTiles = new ArrayList();
-		for (int t = 0; t < this.indexTiles.length; t++) {
-			if (this.indexTiles[t].isTileLoaded())
-				loadedIndexTiles.add(this.indexTiles[t]);
-		}
-		if (loadedIndexTiles.size() <= this.maxSimultaneousIndexTiles)
-			return;
-		Collections.sort(loadedIndexTiles, indexTileUseOrder);
-		while (this.maxSimultaneousIndexTiles < loadedIndexTiles.size()) {
-			IndexTileProxy itp = ((IndexTileProxy) loadedIndexTiles.remove(0));
-			itp.tile = null;
-			System.out.println("Evicted index tile " + itp.fileName);
-		}
-		System.gc();
 	}
-	private static final Comparator indexTileUseOrder = new Comparator() {
-		public int compare(Object obj1, Object obj2) {
-			IndexTileProxy itp1 = ((IndexTileProxy) obj1);
-			IndexTileProxy itp2 = ((IndexTileProxy) obj2);
-			return (itp1.lastTileUseNumber - itp2.lastTileUseNumber);
-		}
-	};
-	
 	static IndexTile loadIndexTile(InputStream in, byte[] minStr, byte[] maxStr, CatalogOfLifeLocal col) throws IOException {
 		BufferedReader br = new BufferedReader(new InputStreamReader(in, "UTF-8"));
 		int[] entryOffsets = new int[1024];
@@ -1399,37 +1922,130 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 		return new IndexTile(col, minStr, maxStr, entryOffsets, entryBytes);
 	}
 	
+	/* Binary index tile layout (big endian):
+	 * - magic number (4 bytes, 'COLI')
+	 * - format version (1 byte)
+	 * - number of entries (4 bytes)
+	 * - number of entry data bytes (4 bytes)
+	 * - size of the TSV data the tile was compiled from (8 bytes), to tell
+	 *   outdated binary tiles
+	 * - entry offsets (4 bytes each)
+	 * - entry data bytes (as indicated)
+	 */
+	/**
+	 * Compile an index tile from its TSV representation into the binary form,
+	 * which loads without any parsing. The TSV data is read to its very end,
+	 * and the binary form records its size, so binary tiles compiled from
+	 * outdated TSV data can be recognized as such.
+	 * @param tsvIn the input stream to read the TSV data from
+	 * @param binOut the output stream to write the binary data to
+	 * @throws IOException
+	 */
+	static void compileIndexTile(InputStream tsvIn, OutputStream binOut) throws IOException {
+		CountingInputStream cTsvIn = new CountingInputStream(tsvIn);
+		IndexTile tile = loadIndexTile(cTsvIn, null, null, null);
+		int entryCount = tile.entryOffsets.limit();
+		ByteBuffer tileData = ByteBuffer.allocate(getBinaryIndexTileSize(entryCount, tile.data.limit()));
+		tileData.putInt(BINARY_INDEX_TILE_MAGIC);
+		tileData.put(BINARY_TILE_VERSION);
+		tileData.putInt(entryCount);
+		tileData.putInt(tile.data.limit());
+		tileData.putLong(cTsvIn.count);
+		putInts(tileData, tile.entryOffsets);
+		tileData.put(tile.data.duplicate());
+		binOut.write(tileData.array());
+		binOut.flush();
+	}
+	
+	static IndexTile loadBinaryIndexTile(InputStream in, long binSize, byte[] minStr, byte[] maxStr, long tsvSize, CatalogOfLifeLocal col) throws IOException {
+		DataInputStream din = new DataInputStream(in);
+		try {
+			
+			//	read and check header first, so we don't allocate any garbage sizes
+			byte[] header = new byte[BINARY_INDEX_TILE_HEADER_SIZE];
+			din.readFully(header);
+			ByteBuffer hData = ByteBuffer.wrap(header);
+			checkBinaryTileHeader(hData, BINARY_INDEX_TILE_MAGIC, "index");
+			checkBinaryTileSource(hData, 13, tsvSize, "index");
+			
+			//	read whole tile in one go, and create tile on top of it
+			int tileSize = getBinaryIndexTileSize(hData.getInt(5), hData.getInt(9));
+			if ((binSize != -1) && (binSize < tileSize))
+				throw new IOException("Truncated binary index tile");
+			byte[] tileBytes = new byte[tileSize];
+			System.arraycopy(header, 0, tileBytes, 0, header.length);
+			din.readFully(tileBytes, header.length, (tileBytes.length - header.length));
+			return createBinaryIndexTile(ByteBuffer.wrap(tileBytes), minStr, maxStr, tsvSize, col);
+		}
+		finally {
+			din.close();
+		}
+	}
+	
+	static IndexTile mapBinaryIndexTile(File file, byte[] minStr, byte[] maxStr, long tsvSize, CatalogOfLifeLocal col) throws IOException {
+		return createBinaryIndexTile(mapFile(file), minStr, maxStr, tsvSize, col);
+	}
+	
+	private static IndexTile createBinaryIndexTile(ByteBuffer tileData, byte[] minStr, byte[] maxStr, long tsvSize, CatalogOfLifeLocal col) throws IOException {
+		checkBinaryTileHeader(tileData, BINARY_INDEX_TILE_MAGIC, "index");
+		if (tileData.limit() < BINARY_INDEX_TILE_HEADER_SIZE)
+			throw new IOException("Truncated binary index tile");
+		checkBinaryTileSource(tileData, 13, tsvSize, "index");
+		int entryCount = tileData.getInt(5);
+		int dataLength = tileData.getInt(9);
+		if (tileData.limit() < getBinaryIndexTileSize(entryCount, dataLength))
+			throw new IOException("Truncated binary index tile");
+		java.nio.IntBuffer entryOffsets = getSlice(tileData, BINARY_INDEX_TILE_HEADER_SIZE, (entryCount * 4)).asIntBuffer();
+		ByteBuffer data = getSlice(tileData, (BINARY_INDEX_TILE_HEADER_SIZE + (entryCount * 4)), dataLength);
+		return new IndexTile(col, minStr, maxStr, entryOffsets, data);
+	}
+	
+	private static int getBinaryIndexTileSize(int entryCount, int dataLength) throws IOException {
+		if ((entryCount < 0) || (dataLength < 0))
+			throw new IOException("Invalid binary index tile");
+		long tileSize = (((long) BINARY_INDEX_TILE_HEADER_SIZE) + (((long) entryCount) * 4) + dataLength);
+		if (tileSize > Integer.MAX_VALUE)
+			throw new IOException("Binary index tile exceeds 2GB");
+		return ((int) tileSize);
+	}
+	
 	private static class IndexTile {
 		final CatalogOfLifeLocal col;
 		final byte[] minStr;
 		final byte[] maxStr;
-		final int[] entryOffsets;
-		final byte[] data;
+		final java.nio.IntBuffer entryOffsets;
+		final ByteBuffer data;
 		IndexTile(CatalogOfLifeLocal col, byte[] minStr, byte[] maxStr, int[] entryOffsets, byte[] data) {
+			this(col, minStr, maxStr, java.nio.IntBuffer.wrap(entryOffsets), ByteBuffer.wrap(data));
+		}
+		IndexTile(CatalogOfLifeLocal col, byte[] minStr, byte[] maxStr, java.nio.IntBuffer entryOffsets, ByteBuffer data) {
 			this.col = col;
 			this.minStr = minStr;
 			this.maxStr = maxStr;
 			this.entryOffsets = entryOffsets;
 			this.data = data;
 		}
+		long getByteSize() {
+			return (this.data.limit() + (this.entryOffsets.limit() * 4));
+		}
 		IndexEntry[] findMatches(byte[] str, boolean prefixMatch) {
 			int start = findFirst(str, this.data, this.entryOffsets, prefixMatch);
 			if (start == -1)
 				return null;
 			ArrayList matches = new ArrayList();
 			do {
-				matches.add(new IndexEntry(this, this.entryOffsets[start++]));
+				matches.add(new IndexEntry(this, this.entryOffsets.get(start++)));
 			}
-			while ((start < this.entryOffsets.length) && (IndexEntry.compareStringTo(this.data, this.entryOffsets[start], str, prefixMatch) == 0));
+			while ((start < this.entryOffsets.limit()) && (IndexEntry.compareStringTo(this.data, this.entryOffsets.get(start), str, prefixMatch) == 0));
 			return ((IndexEntry[]) matches.toArray(new IndexEntry[matches.size()]));
 		}
-		private static int findFirst(byte[] str, byte[] data, int[] entryOffsets, boolean prefixMatch) {
+		private static int findFirst(byte[] str, ByteBuffer data, java.nio.IntBuffer entryOffsets, boolean prefixMatch) {
 			int low = 0;
-			int high = (entryOffsets.length - 1);
+			int high = (entryOffsets.limit() - 1);
 			int pos = -1;
 			while (low <= high) {
 				int mid = ((low + high) / 2);
-				int c = IndexEntry.compareStringTo(data, entryOffsets[mid], str, prefixMatch);
+				int c = IndexEntry.compareStringTo(data, entryOffsets.get(mid), str, prefixMatch);
 				if (c < 0)
 					low = (mid + 1);
 				else if (c > 0)
@@ -1442,7 +2058,7 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			if (pos == -1)
 				return -1;
 			while (pos != 0) {
-				int c = IndexEntry.compareStringTo(data, entryOffsets[pos-1], str, prefixMatch);
+				int c = IndexEntry.compareStringTo(data, entryOffsets.get(pos-1), str, prefixMatch);
 				if (c == 0)
 					pos--;
 				else break;
@@ -1451,6 +2067,356 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 		}
 	}
 	
+	/* Name index layout (big endian):
+	 * - magic number (4 bytes, 'COLT')
+	 * - format version (1 byte)
+	 * - number of index tiles (4 bytes)
+	 * - number of index tile table bytes (4 bytes)
+	 * - number of trie bytes (4 bytes)
+	 * - index tile table, in entry string order, one record per tile:
+	 *   - length of tile file name (2 bytes)
+	 *   - tile file name, UTF-8 encoded (as indicated)
+	 *   - size of the TSV data the tile was compiled from (8 bytes)
+	 *   - number of entries in tile (4 bytes)
+	 * - trie bytes (as indicated), root node first
+	 * 
+	 * Trie node layout:
+	 * - position of first entry whose string starts with the node path, in
+	 *   the entries of all index tiles in the order of the tile table (4 bytes)
+	 * - number of entries whose string starts with the node path (4 bytes)
+	 * - number of entries whose string is the node path (4 bytes)
+	 * - number of child edges (1 byte)
+	 * - child edges, in label order:
+	 *   - label length (1 byte)
+	 *   - label bytes (as indicated)
+	 *   - offset of child node (4 bytes)
+	 */
+	static final String NAME_INDEX_FILE_NAME = "index.trie.bin";
+	private static final int NAME_INDEX_MAGIC = 0x434F4C54; // 'COLT'
+	private static final int NAME_INDEX_HEADER_SIZE = 17;
+	
+	/**
+	 * Compile the name index, a path compressed trie over the entry strings
+	 * of all index tiles that resolves exact and prefix queries in a single
+	 * walk from the root, rather than via a binary search in an index tile.
+	 * The name index does not duplicate any index entries, but only points to
+	 * their positions in the index tiles, from which they are loaded as
+	 * usual. As every trie node spans a contiguous range of the sorted
+	 * entries, a prefix query simply yields all entries in the range of the
+	 * node it ends in, regardless of any index tile boundaries.
+	 * @param tileFileNames the names of the TSV files of the index tiles, as
+	 *            listed in 'index.tiles.txt'
+	 * @param tsvIns the input streams to read the TSV data of the index tiles
+	 *            from, in the same order as the file names
+	 * @param binOut the output stream to write the name index to
+	 * @throws IOException
+	 */
+	static void compileNameIndex(String[] tileFileNames, InputStream[] tsvIns, OutputStream binOut) throws IOException {
+		
+		//	collect entry strings from all tiles (in tile order, which is sort order)
+		TreeMap tilesByFirstString = new TreeMap(new Comparator() {
+			public int compare(Object obj1, Object obj2) {
+				byte[] str1 = ((byte[]) obj1);
+				byte[] str2 = ((byte[]) obj2);
+				return compareStringBytes(str1, 0, str1.length, str2, 0, str2.length, true);
+			}
+		});
+		for (int t = 0; t < tsvIns.length; t++) {
+			CountingInputStream cTsvIn = new CountingInputStream(tsvIns[t]);
+			IndexTile tile = loadIndexTile(cTsvIn, null, null, null);
+			byte[][] tileStrings = new byte[tile.entryOffsets.limit()][];
+			for (int e = 0; e < tileStrings.length; e++) {
+				int entryOffset = tile.entryOffsets.get(e);
+				tileStrings[e] = getBytes(tile.data, (entryOffset + IndexEntry.ENTRY_VALUE_OFFSET), getInt(tile.data, (entryOffset + IndexEntry.ENTRY_LENGTH_OFFSET), IndexEntry.ENTRY_LENGTH_SIZE));
+			}
+			if (tileStrings.length != 0)
+				tilesByFirstString.put(tileStrings[0], new Object[] {tileFileNames[t], new Long(cTsvIn.count), tileStrings});
+		}
+		
+		//	concatenate entry strings, and write tile table
+		ArrayList stringList = new ArrayList();
+		ByteArrayOutputStream tileTable = new ByteArrayOutputStream();
+		DataOutputStream tileTableOut = new DataOutputStream(tileTable);
+		for (Iterator tit = tilesByFirstString.values().iterator(); tit.hasNext();) {
+			Object[] tileData = ((Object[]) tit.next());
+			byte[] tileFileName = ((String) tileData[0]).getBytes("UTF-8");
+			byte[][] tileStrings = ((byte[][]) tileData[2]);
+			tileTableOut.writeShort(tileFileName.length);
+			tileTableOut.write(tileFileName);
+			tileTableOut.writeLong(((Long) tileData[1]).longValue());
+			tileTableOut.writeInt(tileStrings.length);
+			stringList.addAll(Arrays.asList(tileStrings));
+		}
+		tileTableOut.flush();
+		byte[][] strings = ((byte[][]) stringList.toArray(new byte[stringList.size()][]));
+		
+		//	make sure entries are sorted, as trie nodes refer to ranges of them
+		for (int s = 1; s < strings.length; s++) {
+			if (compareStringBytes(strings[s-1], 0, strings[s-1].length, strings[s], 0, strings[s].length, true) > 0)
+				throw new IOException("Index tiles not sorted or overlapping at '" + getString(strings[s], 0, strings[s].length) + "'");
+		}
+		
+		//	build trie over sorted entry strings
+		TrieBuilder trie = new TrieBuilder(strings);
+		trie.addNode(0, strings.length, 0);
+		
+		//	write name index
+		DataOutputStream nameIndexOut = new DataOutputStream(binOut);
+		nameIndexOut.writeInt(NAME_INDEX_MAGIC);
+		nameIndexOut.writeByte(BINARY_TILE_VERSION);
+		nameIndexOut.writeInt(tilesByFirstString.size());
+		nameIndexOut.writeInt(tileTable.size());
+		nameIndexOut.writeInt(trie.size);
+		tileTable.writeTo(nameIndexOut);
+		nameIndexOut.write(trie.data, 0, trie.size);
+		nameIndexOut.flush();
+		System.out.println("GOT NAME INDEX WITH " + strings.length + " ENTRIES IN " + tilesByFirstString.size() + " TILES, TRIE HAS " + trie.size + " BYTES");
+	}
+	
+	private static class TrieBuilder {
+		private final byte[][] strings;
+		byte[] data = new byte[65536];
+		int size = 0;
+		TrieBuilder(byte[][] strings) {
+			this.strings = strings;
+		}
+		int addNode(int from, int to, int depth) throws IOException {
+			
+			//	strings ending right at this node sort first, skip them
+			int childFrom = from;
+			while ((childFrom < to) && (this.strings[childFrom].length == depth))
+				childFrom++;
+			
+			//	group remaining strings by next byte, and find common prefix of each group
+			IntBuffer groupStarts = new IntBuffer();
+			IntBuffer groupEnds = new IntBuffer();
+			for (int s = childFrom; s < to;) {
+				byte groupByte = this.strings[s][depth];
+				int groupEnd = (s + 1);
+				while ((groupEnd < to) && (this.strings[groupEnd][depth] == groupByte))
+					groupEnd++;
+				groupStarts.add(s);
+				groupEnds.add(groupEnd);
+				s = groupEnd;
+			}
+			
+			//	write node, leaving child offsets to fill in later
+			int node = this.size;
+			this.putInt(from);
+			this.putInt(to - from);
+			this.putInt(childFrom - from);
+			this.put((byte) groupStarts.size());
+			int[] childOffsetPositions = new int[groupStarts.size()];
+			int[] childDepths = new int[groupStarts.size()];
+			for (int g = 0; g < groupStarts.size(); g++) {
+				byte[] first = this.strings[groupStarts.get(g)];
+				byte[] last = this.strings[groupEnds.get(g) - 1];
+				int childDepth = (depth + 1);
+				while ((childDepth < first.length) && (childDepth < last.length) && (first[childDepth] == last[childDepth]))
+					childDepth++;
+				this.put((byte) (childDepth - depth));
+				for (int b = depth; b < childDepth; b++)
+					this.put(first[b]);
+				childOffsetPositions[g] = this.size;
+				this.putInt(0);
+				childDepths[g] = childDepth;
+			}
+			
+			//	write child nodes
+			for (int g = 0; g < groupStarts.size(); g++) {
+				int child = this.addNode(groupStarts.get(g), groupEnds.get(g), childDepths[g]);
+				ByteBuffer.wrap(this.data).putInt(childOffsetPositions[g], child);
+			}
+			return node;
+		}
+		private void put(byte b) throws IOException {
+			if (this.size == this.data.length) {
+				if (this.data.length > (Integer.MAX_VALUE / 2))
+					throw new IOException("Name index trie exceeds 2GB");
+				byte[] cData = new byte[this.data.length * 2];
+				System.arraycopy(this.data, 0, cData, 0, this.data.length);
+				this.data = cData;
+			}
+			this.data[this.size++] = b;
+		}
+		private void putInt(int i) throws IOException {
+			this.put((byte) (i >>> 24));
+			this.put((byte) (i >>> 16));
+			this.put((byte) (i >>> 8));
+			this.put((byte) i);
+		}
+	}
+	
+	/**
+	 * Load the name index from an input stream. If the argument maximum
+	 * number of bytes is positive and the name index is larger, this method
+	 * does not load it, but returns null.
+	 * @param in the input stream to read from
+	 * @param binSize the size of the name index file, or -1 if unknown
+	 * @param maxBytes the maximum size of the name index to load
+	 * @param col the Catalog of Life the name index belongs to
+	 * @return the name index
+	 * @throws IOException
+	 */
+	static NameIndex loadNameIndex(InputStream in, long binSize, long maxBytes, CatalogOfLifeLocal col) throws IOException {
+		DataInputStream din = new DataInputStream(in);
+		try {
+			
+			//	read and check header first, so we don't allocate any garbage sizes
+			byte[] header = new byte[NAME_INDEX_HEADER_SIZE];
+			din.readFully(header);
+			ByteBuffer hData = ByteBuffer.wrap(header);
+			checkBinaryTileHeader(hData, NAME_INDEX_MAGIC, "name index");
+			int nameIndexSize = getNameIndexSize(hData.getInt(5), hData.getInt(9), hData.getInt(13));
+			if ((binSize != -1) && (binSize < nameIndexSize))
+				throw new IOException("Truncated name index");
+			if ((0 < maxBytes) && (maxBytes < nameIndexSize)) {
+				System.out.println("Not loading name index, " + nameIndexSize + " bytes exceed index tile limit of " + maxBytes);
+				return null;
+			}
+			
+			//	read whole index in one go, and create index on top of it
+			byte[] nameIndexBytes = new byte[nameIndexSize];
+			System.arraycopy(header, 0, nameIndexBytes, 0, header.length);
+			din.readFully(nameIndexBytes, header.length, (nameIndexBytes.length - header.length));
+			return createNameIndex(ByteBuffer.wrap(nameIndexBytes), col);
+		}
+		finally {
+			din.close();
+		}
+	}
+	
+	static NameIndex mapNameIndex(File file, CatalogOfLifeLocal col) throws IOException {
+		return createNameIndex(mapFile(file), col);
+	}
+	
+	private static NameIndex createNameIndex(ByteBuffer nameIndexData, CatalogOfLifeLocal col) throws IOException {
+		checkBinaryTileHeader(nameIndexData, NAME_INDEX_MAGIC, "name index");
+		if (nameIndexData.limit() < NAME_INDEX_HEADER_SIZE)
+			throw new IOException("Truncated name index");
+		int tileCount = nameIndexData.getInt(5);
+		int tileTableLength = nameIndexData.getInt(9);
+		int trieLength = nameIndexData.getInt(13);
+		if (nameIndexData.limit() < getNameIndexSize(tileCount, tileTableLength, trieLength))
+			throw new IOException("Truncated name index");
+		
+		//	resolve tiles, making sure they are the ones the name index was compiled from
+		HashMap tilesByFileName = new HashMap();
+		for (int t = 0; t < col.indexTiles.length; t++)
+			tilesByFileName.put(col.indexTiles[t].fileName, col.indexTiles[t]);
+		IndexTileProxy[] tiles = new IndexTileProxy[tileCount];
+		int[] tileStarts = new int[tileCount + 1];
+		ByteBuffer tileTable = getSlice(nameIndexData, NAME_INDEX_HEADER_SIZE, tileTableLength);
+		for (int t = 0; t < tileCount; t++) {
+			byte[] tileFileNameBytes = new byte[tileTable.getShort() & 0xFFFF];
+			tileTable.get(tileFileNameBytes);
+			String tileFileName = new String(tileFileNameBytes, "UTF-8");
+			long tileTsvSize = tileTable.getLong();
+			int tileEntryCount = tileTable.getInt();
+			tiles[t] = ((IndexTileProxy) tilesByFileName.get(tileFileName));
+			if (tiles[t] == null)
+				throw new IOException("Outdated name index, refers to unknown index tile " + tileFileName);
+			long tsvSize = col.getDataSize(tileFileName);
+			if ((tsvSize != -1) && (tsvSize != tileTsvSize))
+				throw new IOException("Outdated name index, compiled from " + tileTsvSize + " bytes of TSV data in index tile " + tileFileName + ", but TSV data has " + tsvSize + " bytes");
+			if ((tileStarts[t] + ((long) tileEntryCount)) > Integer.MAX_VALUE)
+				throw new IOException("Invalid name index");
+			tileStarts[t + 1] = (tileStarts[t] + tileEntryCount);
+		}
+		ByteBuffer trie = getSlice(nameIndexData, (NAME_INDEX_HEADER_SIZE + tileTableLength), trieLength);
+		return new NameIndex(tiles, tileStarts, trie);
+	}
+	
+	private static int getNameIndexSize(int tileCount, int tileTableLength, int trieLength) throws IOException {
+		if ((tileCount < 0) || (tileTableLength < 0) || (trieLength < 0))
+			throw new IOException("Invalid name index");
+		long nameIndexSize = (((long) NAME_INDEX_HEADER_SIZE) + tileTableLength + trieLength);
+		if (nameIndexSize > Integer.MAX_VALUE)
+			throw new IOException("Name index exceeds 2GB");
+		return ((int) nameIndexSize);
+	}
+	
+	private static class NameIndex {
+		final IndexTileProxy[] tiles;
+		final int[] tileStarts;
+		final ByteBuffer trie;
+		NameIndex(IndexTileProxy[] tiles, int[] tileStarts, ByteBuffer trie) {
+			this.tiles = tiles;
+			this.tileStarts = tileStarts;
+			this.trie = trie;
+		}
+		long getByteSize() {
+			return (this.trie.limit() + (this.tileStarts.length * 4));
+		}
+		IndexEntry[] findMatches(byte[] str, boolean prefixMatch) {
+			
+			//	walk down trie
+			int node = 0;
+			for (int pos = 0; pos < str.length;) {
+				int edge = this.findEdge(node, str[pos]);
+				if (edge == -1)
+					return null;
+				int labelLength = (this.trie.get(edge) & 0xFF);
+				int matchLength = Math.min(labelLength, (str.length - pos));
+				for (int b = 1; b < matchLength; b++) {
+					if (this.trie.get(edge + 1 + b) != str[pos + b])
+						return null;
+				}
+				if ((matchLength < labelLength) && !prefixMatch)
+					return null; // query ends inside edge label, no exact match possible
+				node = this.trie.getInt(edge + 1 + labelLength);
+				pos += matchLength;
+			}
+			
+			//	get entries below node (for exact match, only those ending right at node, which sort first)
+			int first = this.trie.getInt(node);
+			int count = this.trie.getInt(node + (prefixMatch ? 4 : 8));
+			if (count == 0)
+				return null;
+			
+			//	resolve entries in index tiles (those load and evict as usual)
+			ArrayList matches = new ArrayList(count);
+			int t = this.findTile(first);
+			IndexTile tile = null;
+			for (int p = first; p < (first + count); p++) {
+				while (this.tileStarts[t + 1] <= p) {
+					t++;
+					tile = null;
+				}
+				if (tile == null)
+					tile = this.tiles[t].getTile();
+				if (tile == null)
+					continue; // failed to load
+				int e = (p - this.tileStarts[t]);
+				if (e < tile.entryOffsets.limit())
+					matches.add(new IndexEntry(tile, tile.entryOffsets.get(e)));
+			}
+			return (matches.isEmpty() ? null : ((IndexEntry[]) matches.toArray(new IndexEntry[matches.size()])));
+		}
+		private int findEdge(int node, byte b) {
+			int childCount = (this.trie.get(node + 12) & 0xFF);
+			int edge = (node + 13);
+			for (int c = 0; c < childCount; c++) {
+				int labelLength = (this.trie.get(edge) & 0xFF);
+				if (this.trie.get(edge + 1) == b)
+					return edge;
+				edge += (1 + labelLength + 4);
+			}
+			return -1;
+		}
+		private int findTile(int pos) {
+			int low = 0;
+			int high = (this.tiles.length - 1);
+			while (low < high) {
+				int mid = ((low + high + 1) / 2);
+				if (this.tileStarts[mid] <= pos)
+					low = mid;
+				else high = (mid - 1);
+			}
+			return low;
+		}
+	}
+	
 	/* IndexEntry byte layout:
 	 * - flags (1 byte):
 	 *   - hasLowerCaseMatches
@@ -1477,7 +2443,7 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 	 */
 	public static class IndexEntry {
 		final IndexTile tile;
-		final byte[] data;
+		final ByteBuffer data;
 		final int offset;
 		IndexEntry(IndexTile tile, int offset) {
 			this.tile = tile;
@@ -1524,41 +2490,41 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 		
 		static final int FLAGS_BYTE_OFFSET = 0; // position of flags byte from start of record
 		static final byte HAS_EPITHET_MATCHES_LOWER_CASE = ((byte) 0x01);
-		static boolean hasEpithetMatchesLowerCase(byte[] data, int offset) {
-			return ((data[offset + FLAGS_BYTE_OFFSET] & HAS_EPITHET_MATCHES_LOWER_CASE) != 0);
+		static boolean hasEpithetMatchesLowerCase(ByteBuffer data, int offset) {
+			return ((data.get(offset + FLAGS_BYTE_OFFSET) & HAS_EPITHET_MATCHES_LOWER_CASE) != 0);
 		}
 		static final byte HAS_EPITHET_MATCHES_CAPITALIZED = ((byte) 0x02);
-		static boolean hasEpithetMatchesCapitalized(byte[] data, int offset) {
-			return ((data[offset + FLAGS_BYTE_OFFSET] & HAS_EPITHET_MATCHES_CAPITALIZED) != 0);
+		static boolean hasEpithetMatchesCapitalized(ByteBuffer data, int offset) {
+			return ((data.get(offset + FLAGS_BYTE_OFFSET) & HAS_EPITHET_MATCHES_CAPITALIZED) != 0);
 		}
 		static final byte HAS_PREFIX_MATCHES_LOWER_CASE = ((byte) 0x04);
-		static boolean hasPrefixMatchesLowerCase(byte[] data, int offset) {
-			return ((data[offset + FLAGS_BYTE_OFFSET] & HAS_PREFIX_MATCHES_LOWER_CASE) != 0);
+		static boolean hasPrefixMatchesLowerCase(ByteBuffer data, int offset) {
+			return ((data.get(offset + FLAGS_BYTE_OFFSET) & HAS_PREFIX_MATCHES_LOWER_CASE) != 0);
 		}
 		static final byte HAS_PREFIX_MATCHES_CAPITALIZED = ((byte) 0x08);
-		static boolean hasPrefixMatchesCapitalized(byte[] data, int offset) {
-			return ((data[offset + FLAGS_BYTE_OFFSET] & HAS_PREFIX_MATCHES_CAPITALIZED) != 0);
+		static boolean hasPrefixMatchesCapitalized(ByteBuffer data, int offset) {
+			return ((data.get(offset + FLAGS_BYTE_OFFSET) & HAS_PREFIX_MATCHES_CAPITALIZED) != 0);
 		}
 		static final int ENTRY_LENGTH_OFFSET = 1; // position of entry value length from start of record
 		static final int ENTRY_LENGTH_SIZE = 1; // number of bytes used to store length of entry value
 		static final int ENTRY_VALUE_OFFSET = 2; // start position of entry value from start of record
-		static String getEntryString(byte[] data, int offset) {
+		static String getEntryString(ByteBuffer data, int offset) {
 			int entryLength = getInt(data, (offset + ENTRY_LENGTH_OFFSET), ENTRY_LENGTH_SIZE);
 			return getString(data, (offset + ENTRY_VALUE_OFFSET), entryLength);
 		}
-		static int compareStringTo(byte[] data, int offset, byte[] str, boolean prefixMatch) {
+		static int compareStringTo(ByteBuffer data, int offset, byte[] str, boolean prefixMatch) {
 			int entryLength = getInt(data, (offset + ENTRY_LENGTH_OFFSET), ENTRY_LENGTH_SIZE);
 			return compareStringBytes(data, (offset + ENTRY_VALUE_OFFSET), (prefixMatch ? Math.min(entryLength, str.length) : entryLength), str, 0, str.length, true);
 		}
 		static final int ID_LIST_LENGTH_SIZE = 2; // number of bytes used to store length of ID list in bytes
-		static int[] getEpithetMatchLowerCaseIDs(byte[] data, int offset) {
+		static int[] getEpithetMatchLowerCaseIDs(ByteBuffer data, int offset) {
 			if (!hasEpithetMatchesLowerCase(data, offset))
 				return null;
 			int entryLength = getInt(data, (offset + ENTRY_LENGTH_OFFSET), ENTRY_LENGTH_SIZE);
 			int elcIdListLength = getInt(data, (offset + ENTRY_VALUE_OFFSET + entryLength), ID_LIST_LENGTH_SIZE);
 			return getInts(data, (offset + ENTRY_VALUE_OFFSET + entryLength + ID_LIST_LENGTH_SIZE), elcIdListLength);
 		}
-		static int[] getEpithetMatchCapitalizedIDs(byte[] data, int offset) {
+		static int[] getEpithetMatchCapitalizedIDs(ByteBuffer data, int offset) {
 			if (!hasEpithetMatchesCapitalized(data, offset))
 				return null;
 			int entryLength = getInt(data, (offset + ENTRY_LENGTH_OFFSET), ENTRY_LENGTH_SIZE);
@@ -1570,7 +2536,7 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			int ecpIdListLength = getInt(data, (offset + ENTRY_VALUE_OFFSET + entryLength + elcListLength), ID_LIST_LENGTH_SIZE);
 			return getInts(data, (offset + ENTRY_VALUE_OFFSET + entryLength + elcListLength + ID_LIST_LENGTH_SIZE), ecpIdListLength);
 		}
-		static int[] getPrefixMatchLowerCaseIDs(byte[] data, int offset) {
+		static int[] getPrefixMatchLowerCaseIDs(ByteBuffer data, int offset) {
 			if (!hasPrefixMatchesLowerCase(data, offset))
 				return null;
 			int entryLength = getInt(data, (offset + ENTRY_LENGTH_OFFSET), ENTRY_LENGTH_SIZE);
@@ -1587,7 +2553,7 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			int plcIdListLength = getInt(data, (offset + ENTRY_VALUE_OFFSET + entryLength + elcListLength + ecpListLength), ID_LIST_LENGTH_SIZE);
 			return getInts(data, (offset + ENTRY_VALUE_OFFSET + entryLength + elcListLength + ecpListLength + ID_LIST_LENGTH_SIZE), plcIdListLength);
 		}
-		static int[] getPrefixMatchCapitalizedIDs(byte[] data, int offset) {
+		static int[] getPrefixMatchCapitalizedIDs(ByteBuffer data, int offset) {
 			if (!hasPrefixMatchesCapitalized(data, offset))
 				return null;
 			int entryLength = getInt(data, (offset + ENTRY_LENGTH_OFFSET), ENTRY_LENGTH_SIZE);
@@ -1612,15 +2578,15 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 	}
 	
 	private static class ByteArrayCharSequence implements CharSequence {
-		private byte[] data;
+		private ByteBuffer data;
 		private int offset;
 		private int length;
-		ByteArrayCharSequence(byte[] data, int offset, int length) {
+		ByteArrayCharSequence(ByteBuffer data, int offset, int length) {
 			this.data = data;
 			this.offset = offset;
 			this.length = length;
 		}
-		void update(byte[] data, int offset, int length) {
+		void update(ByteBuffer data, int offset, int length) {
 			this.data = data;
 			this.offset = offset;
 			this.length = length;
@@ -1629,7 +2595,7 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			return this.length;
 		}
 		public char charAt(int index) {
-			return ((char) (this.data[this.offset + index] & 0xFF));
+			return ((char) (this.data.get(this.offset + index) & 0xFF));
 		}
 		public CharSequence subSequence(int start, int end) {
 			return new ByteArrayCharSequence(this.data, (this.offset + start), (end - start));
@@ -1652,7 +2618,7 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 		ByteSequenceMatcher(Pattern pattern) {
 			this.pattern = pattern;
 		}
-		boolean matches(byte[] data, int offset, int length) {
+		boolean matches(ByteBuffer data, int offset, int length) {
 			if (this.chars == null)
 				this.chars = new ByteArrayCharSequence(data, offset, length);
 			else this.chars.update(data, offset, length);
@@ -1703,7 +2669,7 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 	 */
 	public static class TaxonRecord {
 		final DataTile tile;
-		final byte[] data;
+		final ByteBuffer data;
 		final int offset;
 		TaxonRecord(DataTile tile, int offset) {
 			this.tile = tile;
@@ -1970,82 +2936,78 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 		
 		static final int ID_OFFSET = 0; // position of ID from start of record
 		static final int ID_SIZE = 4; // number of bytes used to store IDs
-		static int getId(byte[] data, int offset) {
+		static int getId(ByteBuffer data, int offset) {
 			return getInt(data, (offset + ID_OFFSET), ID_SIZE);
 		}
 //		static int getOriginalColId(byte[] data, int offset) {
 //			return getInt(data, (offset + ORIGINAL_COL_ID_OFFSET), ID_SIZE);
 //		}
 		static final int PARENT_OR_VALID_ID_OFFSET = 4; // position of parent/valid ID from start of record
-		static int getParentOrValidId(byte[] data, int offset) {
+		static int getParentOrValidId(ByteBuffer data, int offset) {
 			return getInt(data, (offset + PARENT_OR_VALID_ID_OFFSET), ID_SIZE);
 		}
 		static final int FLAGS_BYTE_OFFSET = 8; // position of flags byte from start of record
 		static final byte IS_VALID = ((byte) 0x01);
-		static boolean isValidTaxon(byte[] data, int offset) {
-			return ((data[offset + FLAGS_BYTE_OFFSET] & IS_VALID) != 0);
+		static boolean isValidTaxon(ByteBuffer data, int offset) {
+			return ((data.get(offset + FLAGS_BYTE_OFFSET) & IS_VALID) != 0);
 		}
 		static final byte IS_PRIMARY_RANK = ((byte) 0x02);
-		static boolean isPrimaryRank(byte[] data, int offset) {
-			return ((data[offset + FLAGS_BYTE_OFFSET] & IS_PRIMARY_RANK) != 0);
+		static boolean isPrimaryRank(ByteBuffer data, int offset) {
+			return ((data.get(offset + FLAGS_BYTE_OFFSET) & IS_PRIMARY_RANK) != 0);
 		}
 		static final byte IS_EXTANT = ((byte) 0x04);
-		static boolean isExtant(byte[] data, int offset) {
-			return ((data[offset + FLAGS_BYTE_OFFSET] & IS_EXTANT) != 0);
+		static boolean isExtant(ByteBuffer data, int offset) {
+			return ((data.get(offset + FLAGS_BYTE_OFFSET) & IS_EXTANT) != 0);
 		}
 		static final byte HAS_ORIGINAL_PARENT = ((byte) 0x08);
-		static boolean hasOriginalParent(byte[] data, int offset) {
-			return ((data[offset + FLAGS_BYTE_OFFSET] & HAS_ORIGINAL_PARENT) != 0);
+		static boolean hasOriginalParent(ByteBuffer data, int offset) {
+			return ((data.get(offset + FLAGS_BYTE_OFFSET) & HAS_ORIGINAL_PARENT) != 0);
 		}
 		static final byte HAS_CHILDREN = ((byte) 0x10);
-		static boolean hasChildren(byte[] data, int offset) {
-			return ((data[offset + FLAGS_BYTE_OFFSET] & HAS_CHILDREN) != 0);
+		static boolean hasChildren(ByteBuffer data, int offset) {
+			return ((data.get(offset + FLAGS_BYTE_OFFSET) & HAS_CHILDREN) != 0);
 		}
 		static final byte HAS_SYNONYMS = ((byte) 0x20);
-		static boolean hasSynonyms(byte[] data, int offset) {
-			return ((data[offset + FLAGS_BYTE_OFFSET] & HAS_SYNONYMS) != 0);
+		static boolean hasSynonyms(ByteBuffer data, int offset) {
+			return ((data.get(offset + FLAGS_BYTE_OFFSET) & HAS_SYNONYMS) != 0);
 		}
 		static final byte STORES_VERBATIM_AUTHORITY = ((byte) 0x40);
-		static boolean storesVerbatimAuthority(byte[] data, int offset) {
-			return ((data[offset + FLAGS_BYTE_OFFSET] & STORES_VERBATIM_AUTHORITY) != 0);
+		static boolean storesVerbatimAuthority(ByteBuffer data, int offset) {
+			return ((data.get(offset + FLAGS_BYTE_OFFSET) & STORES_VERBATIM_AUTHORITY) != 0);
 		}
 		static final int EPITHET_LENGTH_OFFSET = 10; // position of epithet value length from start of record
 		static final int VALUE_LENGTH_SIZE = 1; // number of bytes used to store length of epithet and authority values
 		static final int EPITHET_VALUE_OFFSET = 12; // start position of epithet value from start of record
-		static String getEpithet(byte[] data, int offset) {
+		static String getEpithet(ByteBuffer data, int offset) {
 			int epithetLength = getInt(data, (offset + EPITHET_LENGTH_OFFSET), VALUE_LENGTH_SIZE);
 			return getString(data, (offset + EPITHET_VALUE_OFFSET), epithetLength);
 		}
-		static byte[] getEpithetBytes(byte[] data, int offset) {
+		static byte[] getEpithetBytes(ByteBuffer data, int offset) {
 			int epithetLength = getInt(data, (offset + EPITHET_LENGTH_OFFSET), VALUE_LENGTH_SIZE);
-			byte[] epithetBytes = new byte[epithetLength];
-			System.arraycopy(data, (offset + EPITHET_VALUE_OFFSET), epithetBytes, 0, epithetBytes.length);
-			return epithetBytes;
+			return getBytes(data, (offset + EPITHET_VALUE_OFFSET), epithetLength);
 		}
 //		static boolean doesEpithetStartWith(byte[] data, int offset, byte[] prefix, boolean caseSensitive) {
 //			int epithetLength = getInt(data, (offset + EPITHET_LENGTH_OFFSET), VALUE_LENGTH_SIZE);
 //			return (compareStringBytes(data, (offset + EPITHET_VALUE_OFFSET), Math.min(epithetLength, prefix.length), prefix, 0, prefix.length, caseSensitive) == 0);
 //		}
-		static int compareEpithetTo(byte[] data, int offset, byte[] epithet, boolean prefixMatch, boolean caseSensitive) {
+		static int compareEpithetTo(ByteBuffer data, int offset, byte[] epithet, boolean prefixMatch, boolean caseSensitive) {
 			int epithetLength = getInt(data, (offset + EPITHET_LENGTH_OFFSET), VALUE_LENGTH_SIZE);
 			return compareStringBytes(data, (offset + EPITHET_VALUE_OFFSET), (prefixMatch ? Math.min(epithetLength, epithet.length) : epithetLength), epithet, 0, epithet.length, caseSensitive);
 		}
 		static final int RANK_BYTE_OFFSET = 9; // position of rank byte from start of record
-		static byte getRank(byte[] data, int offset) {
-			return data[offset + RANK_BYTE_OFFSET];
+		static byte getRank(ByteBuffer data, int offset) {
+			return data.get(offset + RANK_BYTE_OFFSET);
 		}
 		static final int AUTHORITY_LENGTH_OFFSET = 11; // position of authority value length from start of record
-		static byte[] getAuthorityBytes(byte[] data, int offset) {
+		static byte[] getAuthorityBytes(ByteBuffer data, int offset) {
 			int authorityLength = getInt(data, (offset + AUTHORITY_LENGTH_OFFSET), VALUE_LENGTH_SIZE);
 			if (authorityLength == 0)
 				return null;
 			int epithetLength = getInt(data, (offset + EPITHET_LENGTH_OFFSET), VALUE_LENGTH_SIZE);
-			byte[] authorityBytes = new byte[authorityLength];
-			System.arraycopy(data, (offset + EPITHET_VALUE_OFFSET + epithetLength), authorityBytes, 0, authorityLength);
-			return authorityBytes;
+			return getBytes(data, (offset + EPITHET_VALUE_OFFSET + epithetLength), authorityLength);
 		}
 		static final int ID_LIST_LENGTH_SIZE = 2; // number of bytes used to store length of ID list in bytes
-		static int[] getChildIDs(byte[] data, int offset) {
+		static int[] getChildIDs(ByteBuffer data, int offset) {
 			if (!hasChildren(data, offset))
 				return null;
 			int epithetLength = getInt(data, (offset + EPITHET_LENGTH_OFFSET), VALUE_LENGTH_SIZE);
@@ -2053,7 +3015,7 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			int childIdListLength = getInt(data, (offset + EPITHET_VALUE_OFFSET + epithetLength + authorityLength), ID_LIST_LENGTH_SIZE);
 			return getInts(data, (offset + EPITHET_VALUE_OFFSET + epithetLength + authorityLength + ID_LIST_LENGTH_SIZE), childIdListLength);
 		}
-		static String getOriginalParentEpithets(byte[] data, int offset) {
+		static String getOriginalParentEpithets(ByteBuffer data, int offset) {
 			if (!hasOriginalParent(data, offset))
 				return null;
 			int epithetLength = getInt(data, (offset + EPITHET_LENGTH_OFFSET), VALUE_LENGTH_SIZE);
@@ -2061,7 +3023,7 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			int originalParentLength = getInt(data, (offset + EPITHET_VALUE_OFFSET + epithetLength + authorityLength), VALUE_LENGTH_SIZE);
 			return getString(data, (offset + EPITHET_VALUE_OFFSET + epithetLength + authorityLength + VALUE_LENGTH_SIZE), originalParentLength);
 		}
-		static int[] getSynonymIDs(byte[] data, int offset) {
+		static int[] getSynonymIDs(ByteBuffer data, int offset) {
 			if (!hasSynonyms(data, offset))
 				return null;
 			int epithetLength = getInt(data, (offset + EPITHET_LENGTH_OFFSET), VALUE_LENGTH_SIZE);
@@ -2076,13 +3038,16 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 		}
 	}
 	
+	private boolean isDataAvailable(String fileName) {
+		if (this.dataProvider == null)
+			return (CatalogOfLifeLocal.class.getClassLoader().getResource(getResourceName(fileName)) != null);
+		else return this.dataProvider.isDataAvailable(fileName);
+	}
+	
 	private InputStream getInputStream(String fileName) throws IOException {
 		InputStream in;
 		if (this.dataProvider == null) {
-			String resName = CatalogOfLifeLocal.class.getName();
-			resName = resName.substring(0, resName.lastIndexOf("."));
-			resName = resName.replace('.', '/');
-			resName = (resName + "/data/" + fileName);
+			String resName = getResourceName(fileName);
 			in = CatalogOfLifeLocal.class.getClassLoader().getResourceAsStream(resName);
 			if (in == null)
 				throw new FileNotFoundException(resName);
@@ -2091,6 +3056,44 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 		return new BufferedInputStream(in);
 	}
 	
+	/* Get the size of a data file, or -1 if it is not available as a local
+	 * file, which is how we can tell outdated binary tiles at no cost */
+	private long getDataSize(String fileName) {
+		try {
+			File file = this.getDataFile(fileName);
+			return (file.isFile() ? file.length() : -1);
+		}
+		catch (IOException ioe) {
+			return -1;
+		}
+	}
+	
+	private File getDataFile(String binFileName) throws IOException {
+		URL binUrl;
+		if (this.dataProvider == null)
+			binUrl = CatalogOfLifeLocal.class.getClassLoader().getResource(getResourceName(binFileName));
+		else if (this.dataProvider.isDataAvailable(binFileName))
+			binUrl = this.dataProvider.getURL(binFileName);
+		else binUrl = null;
+		if (binUrl == null)
+			throw new FileNotFoundException(binFileName);
+		if (!"file".equals(binUrl.getProtocol()))
+			throw new IOException("Cannot map " + binFileName + " from non-file URL " + binUrl);
+		try {
+			return new File(binUrl.toURI());
+		}
+		catch (URISyntaxException use) {
+			return new File(binUrl.getPath());
+		}
+	}
+	
+	private static String getResourceName(String fileName) {
+		String resName = CatalogOfLifeLocal.class.getName();
+		resName = resName.substring(0, resName.lastIndexOf("."));
+		resName = resName.replace('.', '/');
+		return (resName + "/data/" + fileName);
+	}
+	
 	private static final String base29chars = "23456789BCDFGHJKLMNPQRSTVWXYZ"; // characters from https://github.com/CatalogueOfLife/backend/blob/master/api/src/main/java/life/catalogue/common/id/IdConverter.java
 	static String encodeIntBase29(int intPlain) {
 		StringBuffer intBase29 = new StringBuffer();
@@ -2135,11 +3138,11 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 //	private static int getInt(byte[] data, int offset) {
 //		return getInt(data, offset, 4);
 //	}
-	static int getInt(byte[] data, int offset, int length) {
+	static int getInt(ByteBuffer data, int offset, int length) {
 		int i = 0;
 		for (int b = 0; b < length; b++) {
 			i <<= 8;
-			i |= (data[offset + b] & 0xFF);
+			i |= (data.get(offset + b) & 0xFF);
 		}
 		return i;
 	}
@@ -2157,17 +3160,17 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 		}
 	}
 	
-	static int[] getInts(byte[] data, int offset, int listLength) {
+	static int[] getInts(ByteBuffer data, int offset, int listLength) {
 		return getInts(data, offset, listLength, 4);
 	}
-	private static int[] getInts(byte[] data, int offset, int listLength, int intLength) {
+	private static int[] getInts(ByteBuffer data, int offset, int listLength, int intLength) {
 		IntBuffer ints = new IntBuffer();
 		for (int i = 0; i < listLength;) {
 			int s = getInt(data, (offset + i), intLength);
 			i += intLength;
 			ints.add(s);
-			if ((i < listLength) && (data[offset + i] < 0)) {
-				int c = (data[offset + i] & 0x7F);
+			if ((i < listLength) && (data.get(offset + i) < 0)) {
+				int c = (data.get(offset + i) & 0x7F);
 				i++;
 				for (; c > 0; c--) {
 					s++;
@@ -2211,6 +3214,19 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			str[c] = ((char) (data[offset + c] & 0x00FF));
 		return new String(str);
 	}
+	static String getString(ByteBuffer data, int offset, int length) {
+		char[] str = new char[length];
+		for (int c = 0; c < str.length; c++)
+			str[c] = ((char) (data.get(offset + c) & 0x00FF));
+		return new String(str);
+	}
+	
+	static byte[] getBytes(ByteBuffer data, int offset, int length) {
+		byte[] bytes = new byte[length];
+		for (int b = 0; b < bytes.length; b++)
+			bytes[b] = data.get(offset + b);
+		return bytes;
+	}
 	
 	static int compareStringBytes(byte[] data1, int offset1, int length1, byte[] data2, int offset2, int length2, boolean caseSensitive) {
 		for (int b = 0; b < Math.min(length1, length2); b++) {
@@ -2232,6 +3248,26 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 		}
 		return (length1 - length2);
 	}
+	static int compareStringBytes(ByteBuffer data1, int offset1, int length1, byte[] data2, int offset2, int length2, boolean caseSensitive) {
+		for (int b = 0; b < Math.min(length1, length2); b++) {
+			byte b1 = data1.get(offset1 + b);
+			byte b2 = data2[offset2 + b];
+			if (b1 == b2)
+				continue;
+			if (caseSensitive)
+				return (b1 - b2);
+			/* setting 32-bit (0x20), the 'lower case bit', is basically
+			 * Character.toLowerCase() in Basic Latin, but way faster */
+			if (isLetter(b1) && isLetter(b2)) {
+				b1 = ((byte) (b1 | 0x20));
+				b2 = ((byte) (b2 | 0x20));
+				if (b1 == b2)
+					continue;
+			}
+			return (b1 - b2);
+		}
+		return (length1 - length2);
+	}
 	static boolean isLetter(byte ch) {
 		/* going high-to-low evaluates fewer conditions for lower case
 		 * letters, which are far more frequent than upper case ones */
@@ -2307,47 +3343,161 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 	/**
 	 * Set the maximum number of species tiles to simultaneously hold in memory
 	 * without evicting any. If this number is negative or 0, the number is not
-	 * limited, and all tiles remain in memory once they have been loaded.
-	 * Setting this threshold to a positive number enacts a least recently used
-	 * eviction strategy. The default value for this limit is -1. Setting it to
-	 * 0 will pre-fetch all tiles.
+	 * limited, and all tiles remain in memory once they have been loaded,
+	 * unless the limit set via <code>setMaxSpeciesTileBytes()</code> requires
+	 * otherwise. Setting this threshold to a positive number limits the number
+	 * of tiles in addition to their size. The default value for this limit is
+	 * -1. Setting it to 0 will pre-fetch all tiles.
 	 * @param msst the maximum number of species tiles to simultaneously hold
 	 */
 	public void setMaxSimultaneousSpeciesTiles(int msst) {
-		if (this.maxSimultaneousSpeciesTiles == msst)
+		if (this.speciesTileCache.getMaxTiles() == msst)
 			return;
-		boolean checkEvictions = ((0 < msst) && ((this.maxSimultaneousSpeciesTiles < 1) || (msst < this.maxSimultaneousSpeciesTiles)));
-		this.maxSimultaneousSpeciesTiles = msst;
-		if (checkEvictions)
-			this.trimSpeciesTiles();
-		else if (this.maxSimultaneousSpeciesTiles == 0) {
+		this.speciesTileCache.setMaxTiles(msst);
+		if (msst == 0) {
 			for (int t = 0; t < this.speciesTiles.length; t++)
 				this.speciesTiles[t].getTile();
 		}
 	}
 	
+	/**
+	 * Set the maximum number of bytes the species tiles held in memory may
+	 * occupy. If this number is negative or 0, the size is not limited. If
+	 * loading a species tile pushes the total size over the limit, the least
+	 * recently used tiles are evicted until the total size is back within the
+	 * limit, with frequently used tiles being favored over ones used only once
+	 * in a while. The default value for this limit is -1.
+	 * @param mstb the maximum number of bytes of species tiles to hold
+	 */
+	public void setMaxSpeciesTileBytes(long mstb) {
+		this.speciesTileCache.setMaxBytes(mstb);
+	}
+	
+	/**
+	 * Retrieve the cache holding the species tiles currently loaded, mainly
+	 * for monitoring its hit, miss, load time, and eviction statistics.
+	 * @return the species tile cache
+	 */
+	public TileCache getSpeciesTileCache() {
+		return this.speciesTileCache;
+	}
+	
 	/**
 	 * Set the maximum number of index tiles to simultaneously hold in memory
 	 * without evicting any. If this number is negative or 0, the number is not
-	 * limited, and all tiles remain in memory once they have been loaded.
-	 * Setting this threshold to a positive number enacts a least recently used
-	 * eviction strategy. The default value for this limit is -1. Setting it to
-	 * 0 will pre-fetch all tiles.
+	 * limited, and all tiles remain in memory once they have been loaded,
+	 * unless the limit set via <code>setMaxIndexTileBytes()</code> requires
+	 * otherwise. Setting this threshold to a positive number limits the number
+	 * of tiles in addition to their size. The default value for this limit is
+	 * -1. Setting it to 0 will pre-fetch all tiles.
 	 * @param msit the maximum number of index tiles to simultaneously hold
 	 */
 	public void setMaxSimultaneousIndexTiles(int msit) {
-		if (this.maxSimultaneousIndexTiles == msit)
+		if (this.indexTileCache.getMaxTiles() == msit)
 			return;
-		boolean checkEvictions = ((0 < msit) && ((this.maxSimultaneousIndexTiles < 1) || (msit < this.maxSimultaneousIndexTiles)));
-		this.maxSimultaneousIndexTiles = msit;
-		if (checkEvictions)
-			this.trimIndexTiles();
-		else if (this.maxSimultaneousIndexTiles == 0) {
+		this.indexTileCache.setMaxTiles(msit);
+		if (msit == 0) {
 			for (int t = 0; t < this.indexTiles.length; t++)
 				this.indexTiles[t].getTile();
 		}
 	}
 	
+	/**
+	 * Set the maximum number of bytes the index tiles held in memory may
+	 * occupy. If this number is negative or 0, the size is not limited. If
+	 * loading an index tile pushes the total size over the limit, the least
+	 * recently used tiles are evicted until the total size is back within the
+	 * limit, with frequently used tiles being favored over ones used only once
+	 * in a while. The name index counts towards this limit as well, and is
+	 * only loaded if it fits within it. The default value for this limit is
+	 * -1.
+	 * @param mitb the maximum number of bytes of index tiles to hold
+	 */
+	public void setMaxIndexTileBytes(long mitb) {
+		if (this.indexTileCache.getMaxBytes() == mitb)
+			return;
+		synchronized (this) {
+			if (!this.memoryMapped) {
+				this.nameIndex = null; // check again against new limit on next lookup
+				this.nameIndexChecked = false;
+				this.indexTileCache.setReservedBytes(0);
+			}
+		}
+		this.indexTileCache.setMaxBytes(mitb);
+	}
+	
+	/**
+	 * Retrieve the cache holding the index tiles currently loaded, mainly for
+	 * monitoring its hit, miss, load time, and eviction statistics.
+	 * @return the index tile cache
+	 */
+	public TileCache getIndexTileCache() {
+		return this.indexTileCache;
+	}
+	
+	/**
+	 * Map the whole compiled data set, i.e., all species data tiles and all
+	 * index tiles, as well as the name index if present, into memory instead
+	 * of loading tiles individually. This requires the binary tile files
+	 * produced by the 'compile' command of the data tool to be available as
+	 * local files. Once the data set is mapped, records and index entries
+	 * resolve directly against the mapped files, without any tile loading or
+	 * eviction, and the tile count and size limits cease to apply; it is up to
+	 * the operating system to keep the frequently used parts of the data set
+	 * in physical memory. If any binary tile file is missing, outdated, or
+	 * fails to map, this method returns false and leaves tile loading as it
+	 * is.
+	 * @return true if the data set is memory mapped, false otherwise
+	 */
+	public synchronized boolean mapDataSet() {
+		if (this.memoryMapped)
+			return true;
+		
+		//	map all tiles up front, so we either switch over completely or not at all
+		DataTile[] speciesTiles = new DataTile[this.speciesTiles.length];
+		IndexTile[] indexTiles = new IndexTile[this.indexTiles.length];
+		NameIndex nameIndex = null;
+		try {
+			for (int t = 0; t < this.speciesTiles.length; t++) {
+				System.out.println("Mapping data tile " + this.speciesTiles[t].fileName);
+				speciesTiles[t] = mapBinaryDataTile(this.getDataFile(getBinaryTileFileName(this.speciesTiles[t].fileName)), this.speciesTiles[t].minId, this.speciesTiles[t].maxId, this.getDataSize(this.speciesTiles[t].fileName), this);
+			}
+			for (int t = 0; t < this.indexTiles.length; t++) {
+				System.out.println("Mapping index tile " + this.indexTiles[t].fileName);
+				indexTiles[t] = mapBinaryIndexTile(this.getDataFile(getBinaryTileFileName(this.indexTiles[t].fileName)), this.indexTiles[t].minStr, this.indexTiles[t].maxStr, this.getDataSize(this.indexTiles[t].fileName), this);
+			}
+			if (this.isDataAvailable(NAME_INDEX_FILE_NAME)) {
+				System.out.println("Mapping name index " + NAME_INDEX_FILE_NAME);
+				nameIndex = mapNameIndex(this.getDataFile(NAME_INDEX_FILE_NAME), this);
+			}
+		}
+		catch (IOException ioe) {
+			System.out.println("Error mapping data set: " + ioe.getMessage());
+			ioe.printStackTrace(System.out);
+			return false;
+		}
+		
+		//	switch over to mapped tiles (no more loading or eviction from here on)
+		this.speciesTileCache.pin(speciesTiles);
+		this.indexTileCache.pin(indexTiles);
+		if (nameIndex != null) {
+			this.nameIndex = nameIndex;
+			this.nameIndexChecked = true;
+		}
+		this.memoryMapped = true;
+		return true;
+	}
+	
+	/**
+	 * Check whether or not the data set is memory mapped, i.e., whether or not
+	 * a call to <code>mapDataSet()</code> was successful.
+	 * @return true if the data set is memory mapped, false otherwise
+	 */
+	public boolean isDataSetMapped() {
+		return this.memoryMapped;
+	}
+	private boolean memoryMapped = false;
+	
 	/**
 	 * Retrieve a taxon record from the Catalog of Life via its original base
 	 * 29 identifier. If the argument identifier does not match any taxon
@@ -2370,8 +3520,8 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 		for (int t = 0; t < this.speciesTiles.length; t++) {
 			if (!this.speciesTiles[t].spansColRecord(colId))
 				continue;
-			if (this.speciesTiles[t].isTileLoaded()) {
-				DataTile tile = this.speciesTiles[t].getTile();
+			DataTile tile = this.speciesTiles[t].getLoadedTile();
+			if (tile != null) {
 				TaxonRecord tr = tile.colGetRecord(colId);
 				if (tr != null)
 					return tr;
@@ -2406,10 +3556,43 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 	public IndexEntry[] searchTaxonRecords(String query, boolean prefixMatch) {
 		String lQuery = query.toLowerCase();
 		byte[] qQuery = getQueryBytes(lQuery);
+		return this.findIndexEntries(qQuery, prefixMatch);
+	}
+	
+	private IndexEntry[] findIndexEntries(byte[] qQuery, boolean prefixMatch) {
+		
+		//	use name index if available
+		NameIndex nameIndex = this.getNameIndex();
+		if (nameIndex != null)
+			return nameIndex.findMatches(qQuery, prefixMatch);
+		
+		//	fall back to index tiles otherwise
 		IndexTile indexTile = this.getIndexTileForString(qQuery);
 		return ((indexTile == null) ? null : indexTile.findMatches(qQuery, prefixMatch));
 	}
 	
+	private NameIndex getNameIndex() {
+		if (this.nameIndexChecked)
+			return this.nameIndex;
+		synchronized (this) {
+			if (this.nameIndexChecked)
+				return this.nameIndex;
+			if (this.isDataAvailable(NAME_INDEX_FILE_NAME)) try {
+				System.out.println("Loading name index " + NAME_INDEX_FILE_NAME);
+				this.nameIndex = loadNameIndex(getInputStream(NAME_INDEX_FILE_NAME), this.getDataSize(NAME_INDEX_FILE_NAME), this.indexTileCache.getMaxBytes(), this);
+				if (this.nameIndex != null)
+					this.indexTileCache.setReservedBytes(this.nameIndex.getByteSize()); // weigh name index against index tiles
+			}
+			catch (IOException ioe) {
+				System.out.println("Error loading name index " + NAME_INDEX_FILE_NAME + ", falling back to index tiles: " + ioe.getMessage());
+			}
+			this.nameIndexChecked = true;
+			return this.nameIndex;
+		}
+	}
+	private volatile NameIndex nameIndex = null;
+	private volatile boolean nameIndexChecked = false;
+	
 	/**
 	 * Find taxon records in the Catalog of Life. This method only searches
 	 * through taxon names, however, not through authorities. The argument
@@ -2526,10 +3709,7 @@ Provide hard coded IDs and expansion for specific frequent authorities (especial
 			//	do lookup
 			String lQuery = query.toLowerCase();
 			byte[] qQuery = getQueryBytes(lQuery);
-			IndexTile indexTile = this.getIndexTileForString(qQuery);
-			if (indexTile == null)
-				return null;
-			IndexEntry[] qResults = indexTile.findMatches(qQuery, prefixMatch);
+			IndexEntry[] qResults = this.findIndexEntries(qQuery, prefixMatch);
 			if (qResults == null)
 				return null;
 			